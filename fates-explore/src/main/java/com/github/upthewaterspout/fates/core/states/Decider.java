@@ -16,6 +16,7 @@
 
 package com.github.upthewaterspout.fates.core.states;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -33,4 +34,38 @@ public interface Decider {
    * @return The decision
    */
   <K> K decide(Object label, Set<K> options);
+
+  /**
+   * Choose between a number of options identified by their index. This avoids creating a set
+   * of options for every decision, so it is cheaper when the options are just positions in a list.
+   *
+   * Explorers that don't implement this directly decide between a set of the indexes instead, so
+   * either way the decisions seen by the explorer are the integers 0 to optionCount - 1.
+   *
+   * @param label A textual description of this decision for debugging output
+   * @param optionCount The number of possible choices
+   * @return The index of the choice, between 0 and optionCount - 1
+   */
+  default int decide(Object label, int optionCount) {
+    return decide(label, OptionSets.range(optionCount));
+  }
+
+  /**
+   * Choose one of a list of distinct options and return its index. This lets a caller that
+   * already keeps its options in a list make a decision without copying them into a set, while
+   * explorers that need to know what the options are can still look at them.
+   *
+   * The list may be a view that the caller reuses for later decisions, so it should only be read
+   * during this call.
+   *
+   * Explorers that don't implement this directly decide between a set view of the list instead.
+   *
+   * @param <K> The type of the possible choices
+   * @param label A textual description of this decision for debugging output
+   * @param options The possible choices, which must not contain duplicates
+   * @return The index of the choice in the list
+   */
+  default <K> int decideIndex(Object label, List<K> options) {
+    return options.indexOf(decide(label, OptionSets.asSet(options)));
+  }
 }
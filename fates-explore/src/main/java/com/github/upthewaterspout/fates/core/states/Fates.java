@@ -17,7 +17,9 @@
 package com.github.upthewaterspout.fates.core.states;
 
 import java.io.Serializable;
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
 
@@ -33,6 +35,9 @@ import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFi
  * algorithm. Currently the only implementation of {@link StateExplorer} is {@link
  * DepthFirstExplorer}, which explores all possible decisions.
  * <p>
+ * Tests with an expensive set up phase can implement {@link SnapshotTest}, in which case the set
+ * up is only done once and each iteration starts from a copy of the resulting state.
+ * <p>
  * This harness assumes that each time the test is run, if the same decision is made twice in a row
  * it will lead to the same test state. If a the explorer makes the same choice twice, but is
  * presented with different results, the test will fail.
@@ -75,10 +80,66 @@ public class Fates implements Serializable {
    * @throws Exception if the test fails
    */
   public void explore(RepeatedTest test) throws Exception {
-    StateExplorer explorer = explorerSupplier.get();
+    explore(test, explorerSupplier.get());
+  }
+
+  /**
+   * Execute a test multiple times with the given explorer, rather than the configured explorer.
+   * This is useful for exploring several parts of the same test at the same time, with a separate
+   * explorer for each part.
+   * @param test the test to explore. It will be run many times.
+   * @param explorer the explorer to use
+   * @throws Exception if the test fails
+   */
+  public void explore(RepeatedTest test, StateExplorer explorer) throws Exception {
+    explore(test, explorer, () -> false);
+  }
+
+  /**
+   * Run a test with a {@link DepthFirstExplorer} until the unexplored part of the test can be
+   * divided into at least the given number of disjoint prefixes. The prefixes can then be
+   * explored independently, for example in parallel, using
+   * {@link DepthFirstExplorer#DepthFirstExplorer(List)}.
+   *
+   * The configured explorer is not used by this method.
+   *
+   * @param test the test to explore. It will be run until enough prefixes are found.
+   * @param count the number of prefixes to look for
+   * @return the unexplored prefixes. This may be fewer than count if the test does not have enough
+   * decisions, or empty if the test was completely explored while splitting.
+   * @throws Exception if the test fails
+   */
+  public List<List<Object>> split(RepeatedTest test, int count) throws Exception {
+    return split(test, count, Function.identity());
+  }
 
+  /**
+   * Split a test like {@link #split(RepeatedTest, int)}, with the {@link DepthFirstExplorer}
+   * wrapped in another explorer. The wrapper must pass decisions through to the
+   * {@link DepthFirstExplorer}, for example to change how errors from the explorer are reported.
+   *
+   * @param test the test to explore. It will be run until enough prefixes are found.
+   * @param count the number of prefixes to look for
+   * @param wrapper creates the explorer to run the test with, from the depth first explorer
+   * @return the unexplored prefixes
+   * @throws Exception if the test fails
+   */
+  public List<List<Object>> split(RepeatedTest test, int count,
+                                  Function<? super DepthFirstExplorer, ? extends StateExplorer> wrapper)
+      throws Exception {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explore(test, wrapper.apply(explorer),
+        () -> explorer.getUnexploredPrefixes().size() >= count);
+    return explorer.getUnexploredPrefixes();
+  }
+
+  private void explore(RepeatedTest test, StateExplorer explorer, BooleanSupplier stop)
+      throws Exception {
+    if(test instanceof SnapshotTest) {
+      test = cacheSnapshot((SnapshotTest<?>) test);
+    }
     int count = 0;
-    while(!explorer.isCompletelyTested()) {
+    while(!explorer.isCompletelyTested() && !stop.getAsBoolean()) {
       try {
         test.doOnce(explorer);
       } catch(Throwable e) {
@@ -100,6 +161,15 @@ public class Fates implements Serializable {
 
   }
 
+  /**
+   * Take the snapshot of a {@link SnapshotTest} once, and restore it at the start of each
+   * iteration
+   */
+  private static <S> RepeatedTest cacheSnapshot(SnapshotTest<S> test) throws Exception {
+    S snapshot = test.takeSnapshot();
+    return decider -> test.doOnce(test.restore(snapshot), decider);
+  }
+
   /**
    * Enable execution traces. When this is turned on, a trace of all thread scheduling points from
    * the first pass through the test will be printed to standard out. This is useful for debugging
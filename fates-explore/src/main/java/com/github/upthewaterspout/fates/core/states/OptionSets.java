@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.states;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read only sets used by the default methods of {@link Decider} to present index and list based
+ * decisions to explorers that only decide between sets, without copying the options.
+ */
+final class OptionSets {
+
+  private OptionSets() {
+  }
+
+  /**
+   * @return the set of the integers 0 to count - 1
+   */
+  static Set<Integer> range(int count) {
+    return new AbstractSet<Integer>() {
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof Integer && (Integer) o >= 0 && (Integer) o < count;
+      }
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < count;
+          }
+
+          @Override
+          public Integer next() {
+            if (next >= count) {
+              throw new NoSuchElementException();
+            }
+            return next++;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return Math.max(count, 0);
+      }
+    };
+  }
+
+  /**
+   * @return a set view of a list that doesn't contain duplicates
+   */
+  static <K> Set<K> asSet(List<K> options) {
+    return new AbstractSet<K>() {
+      @Override
+      public boolean contains(Object o) {
+        return options.contains(o);
+      }
+
+      @Override
+      public Iterator<K> iterator() {
+        return options.iterator();
+      }
+
+      @Override
+      public int size() {
+        return options.size();
+      }
+    };
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states;
+
+/**
+ * A {@link RepeatedTest} with an expensive set up phase that does not involve any decisions.
+ *
+ * Rather than repeating the set up for every iteration, {@link Fates} calls {@link #takeSnapshot()}
+ * once and then calls {@link #restore(Object)} at the start of each iteration to get a fresh copy of
+ * the state that was set up. The state is then passed to {@link #doOnce(Object, Decider)}.
+ *
+ * @param <S> The type of the state created by the set up phase
+ */
+public interface SnapshotTest<S> extends RepeatedTest {
+
+  /**
+   * Perform the expensive set up of the test and return the resulting state. This is called once,
+   * and must not make any decisions.
+   *
+   * @return a snapshot of the state after set up
+   * @throws Exception if the set up fails
+   */
+  S takeSnapshot() throws Exception;
+
+  /**
+   * Create a fresh copy of the state from the snapshot. Changes made to the returned state by
+   * one iteration must not be visible to later iterations.
+   *
+   * @param snapshot the snapshot returned by {@link #takeSnapshot()}
+   * @return the state to use for a single iteration
+   * @throws Exception if the state could not be restored
+   */
+  S restore(S snapshot) throws Exception;
+
+  /**
+   * Execute the test with a state restored from the snapshot.
+   *
+   * @param state the state restored from the snapshot
+   * @param decider The decider that the test should use to make choices during the test execution
+   * @throws Exception if the test fails
+   */
+  void doOnce(S state, Decider decider) throws Exception;
+
+  /**
+   * Execute the test without a cached snapshot, performing the full set up.
+   */
+  @Override
+  default void doOnce(Decider decider) throws Exception {
+    doOnce(restore(takeSnapshot()), decider);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
+
+/**
+ * A state explorer that uses probabilistic concurrency testing (PCT) for a fixed number of
+ * iterations.
+ *
+ * Each option, typically a thread, is given a random priority the first time it is seen, and
+ * each decision picks the available option with the highest priority. In addition, depth - 1
+ * random decisions are chosen as priority change points. At a change point, the option that would
+ * have been chosen is given a priority lower than all other options before the decision is made.
+ *
+ * A bug of depth d is one that needs d specific ordering constraints between events to happen.
+ * For a test with n threads and k decisions, each iteration with a depth of at least d finds a
+ * bug of depth d with a probability of at least 1/(n * k^(d-1)). This is much better than picking
+ * options uniformly at random, which rarely keeps a thread running long enough to hit deep
+ * orderings. The expected number of decisions, k, only needs to be an estimate; it controls where
+ * the change points are placed.
+ *
+ * Like {@link RandomExplorer}, the trace includes a seed that can be passed to
+ * {@link #PctExplorer(int, int, int, long)} to reproduce an iteration.
+ */
+public class PctExplorer implements StateExplorer {
+
+  private final int maxIterations;
+  private final int depth;
+  private final int expectedSteps;
+  private final Random random;
+
+  private int iteration;
+
+  /**
+   * The random seed that started the current iteration
+   */
+  private long seed;
+
+  /**
+   * Options that have been seen in this iteration, from highest to lowest priority
+   */
+  private final List<Object> priorities = new LinkedList<>();
+
+  /**
+   * Options that have had their priority lowered by a change point, from highest to lowest
+   * priority. These are all lower priority than the options in {@link #priorities}
+   */
+  private final List<Object> lowered = new ArrayList<>();
+
+  /**
+   * The decisions that will lower the priority of the chosen option, in increasing order
+   */
+  private int[] changePoints;
+  private int nextChangePoint;
+  private int step;
+
+  /**
+   * A history of decisions made by the current iteration, used for
+   * the debugging trace
+   */
+  private final Collection<Object> history = new ArrayList<>();
+
+  /**
+   * @param iterations the number of iterations to run
+   * @param depth the depth of bugs to look for. A depth of 1 only varies the initial priorities.
+   * @param expectedSteps an estimate of the number of decisions in each iteration of the test
+   * @param seed the random seed for the first iteration
+   */
+  public PctExplorer(int iterations, int depth, int expectedSteps, long seed) {
+    if (depth < 1 || expectedSteps < 1) {
+      throw new IllegalArgumentException("Depth and expected steps must be at least 1");
+    }
+    this.maxIterations = iterations;
+    this.depth = depth;
+    this.expectedSteps = expectedSteps;
+    this.seed = seed;
+    this.random = new Random(seed);
+    chooseChangePoints();
+  }
+
+  private void chooseChangePoints() {
+    changePoints = new int[depth - 1];
+    for (int i = 0; i < changePoints.length; i++) {
+      changePoints[i] = 1 + random.nextInt(expectedSteps);
+    }
+    Arrays.sort(changePoints);
+  }
+
+  @Override
+  public void done() {
+    iteration++;
+    seed = random.nextLong();
+    random.setSeed(seed);
+    priorities.clear();
+    lowered.clear();
+    nextChangePoint = 0;
+    step = 0;
+    history.clear();
+    chooseChangePoints();
+  }
+
+  @Override
+  public boolean isCompletelyTested() {
+    return iteration >= maxIterations;
+  }
+
+  @Override
+  public long estimateIterations() {
+    return maxIterations;
+  }
+
+  @Override
+  public String getTrace() {
+    StringBuilder trace = new StringBuilder("PCT Seed: " + seed + "\n");
+    if(history.size() < 100) {
+      history.stream().forEach(line -> trace.append(line).append("\n"));
+    }
+
+    return trace.toString();
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public <K> K decide(Object label, Set<K> options) {
+    return choose(label, options);
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    return options.indexOf(choose(label, options));
+  }
+
+  private <K> K choose(Object label, Collection<K> options) {
+    step++;
+    for (K option : options) {
+      if (!priorities.contains(option) && !lowered.contains(option)) {
+        priorities.add(random.nextInt(priorities.size() + 1), option);
+      }
+    }
+
+    K choice = highestPriority(options);
+    while (nextChangePoint < changePoints.length && changePoints[nextChangePoint] == step) {
+      priorities.remove(choice);
+      lowered.remove(choice);
+      lowered.add(choice);
+      nextChangePoint++;
+      choice = highestPriority(options);
+    }
+
+    history.add(label + ": " + choice);
+    return choice;
+  }
+
+  private <K> K highestPriority(Collection<K> options) {
+    for (Object option : priorities) {
+      if (options.contains(option)) {
+        return (K) option;
+      }
+    }
+    for (Object option : lowered) {
+      if (options.contains(option)) {
+        return (K) option;
+      }
+    }
+    throw new IllegalStateException("No options to choose from");
+  }
+}
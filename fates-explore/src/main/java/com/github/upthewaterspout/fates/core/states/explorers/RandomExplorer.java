@@ -104,11 +104,23 @@ public class RandomExplorer implements StateExplorer {
 
   @Override
   public <K> K decide(Object label, Set<K> options) {
-    history.add(label);
-    int choice = random.nextInt(options.size());
+    int choice = decide(label, options.size());
 
-    return options.stream()
-        .skip(choice)
-        .findFirst().orElseThrow(IllegalStateException::new);
+    Iterator<K> iterator = options.iterator();
+    for (int i = 0; i < choice; i++) {
+      iterator.next();
+    }
+    return iterator.next();
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    return decide(label, options.size());
+  }
+
+  @Override
+  public int decide(Object label, int optionCount) {
+    history.add(label);
+    return random.nextInt(optionCount);
   }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.depthfirst;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A file that holds the unexplored parts of a depth first search, so that a long running
+ * exploration can be stopped and resumed later.
+ *
+ * The checkpoint stores the unexplored frontier as a list of disjoint prefixes of decisions. The
+ * decisions must be serializable and have an {@link Object#equals(Object)} method that
+ * is consistent between runs.
+ *
+ * The file is replaced atomically each time it is saved, so a process that is killed while
+ * saving leaves the previous checkpoint behind.
+ */
+class Checkpoint {
+  private final File file;
+
+  /**
+   * @param directory the directory to store the checkpoint in
+   * @param testId an identifier for the test. Each test must have a unique id.
+   */
+  Checkpoint(File directory, String testId) {
+    this.file = new File(directory, testId + ".checkpoint");
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Load the unexplored prefixes saved by a previous run.
+   *
+   * @return the saved prefixes, or a single empty prefix covering the whole test if there
+   * is no checkpoint.
+   */
+  List<List<Object>> load() throws IOException {
+    if (!file.exists()) {
+      return Collections.singletonList(Collections.emptyList());
+    }
+
+    try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file.toPath()))) {
+      return (List<List<Object>>) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Unable to read checkpoint " + file, e);
+    }
+  }
+
+  /**
+   * Replace the checkpoint with the given unexplored prefixes
+   */
+  void save(List<List<Object>> prefixes) throws IOException {
+    Path target = file.toPath();
+    File parent = file.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    Path temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+    try {
+      try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(temp))) {
+        out.writeObject(new ArrayList<>(prefixes));
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Remove the checkpoint, once the test is completely explored
+   */
+  void delete() throws IOException {
+    Files.deleteIfExists(file.toPath());
+  }
+}
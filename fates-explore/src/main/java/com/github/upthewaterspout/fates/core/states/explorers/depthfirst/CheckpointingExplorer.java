@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.depthfirst;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
+
+/**
+ * A depth first search that periodically saves its progress to a file, so that a long running
+ * exploration that is killed can be resumed by a later run.
+ *
+ * The progress is saved as the list of unexplored prefixes of the search, see
+ * {@link DepthFirstExplorer#getUnexploredPrefixes()}. When the explorer is created, it loads
+ * any prefixes saved by a previous run with the same test id and explores them one after another,
+ * each with a {@link DepthFirstExplorer}. The checkpoint is deleted once the test has been
+ * completely explored. If the test fails, the checkpoint is kept, so the failing part of the test
+ * will be explored again by the next run.
+ *
+ * The decisions made by the test must be serializable, and must be equal between runs of the test.
+ */
+public class CheckpointingExplorer implements StateExplorer {
+  private static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+  private final Checkpoint checkpoint;
+  private final long intervalNanos;
+  private final LinkedList<List<Object>> remainingPrefixes = new LinkedList<>();
+  private DepthFirstExplorer current;
+  private long lastSave = System.nanoTime();
+
+  /**
+   * Create an explorer that saves its progress every 10 seconds
+   *
+   * @param directory the directory to store the checkpoint in
+   * @param testId an identifier for the test, which must be unique within the directory
+   */
+  public CheckpointingExplorer(File directory, String testId) {
+    this(directory, testId, DEFAULT_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param directory the directory to store the checkpoint in
+   * @param testId an identifier for the test, which must be unique within the directory
+   * @param interval how often to save the progress
+   * @param unit the unit of the interval
+   */
+  public CheckpointingExplorer(File directory, String testId, long interval, TimeUnit unit) {
+    this.checkpoint = new Checkpoint(directory, testId);
+    this.intervalNanos = unit.toNanos(interval);
+    try {
+      if (checkpoint.getFile().exists()) {
+        System.out.println("Resuming from checkpoint " + checkpoint.getFile());
+      }
+      for (List<Object> prefix : checkpoint.load()) {
+        remainingPrefixes.add(new ArrayList<>(prefix));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to load checkpoint " + checkpoint.getFile(), e);
+    }
+    current = remainingPrefixes.isEmpty() ? null : new DepthFirstExplorer(remainingPrefixes.poll());
+  }
+
+  @Override
+  public <K> K decide(Object label, Set<K> options) {
+    return current.decide(label, options);
+  }
+
+  @Override
+  public int decide(Object label, int optionCount) {
+    return current.decide(label, optionCount);
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    return current.decideIndex(label, options);
+  }
+
+  @Override
+  public void done() {
+    current.done();
+    if (current.isCompletelyTested() && !remainingPrefixes.isEmpty()) {
+      current = new DepthFirstExplorer(remainingPrefixes.poll());
+    }
+
+    try {
+      if (isCompletelyTested()) {
+        checkpoint.delete();
+      } else if (System.nanoTime() - lastSave >= intervalNanos) {
+        checkpoint.save(getUnexploredPrefixes());
+        lastSave = System.nanoTime();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to save checkpoint " + checkpoint.getFile(), e);
+    }
+  }
+
+  @Override
+  public boolean isCompletelyTested() {
+    return current == null || current.isCompletelyTested() && remainingPrefixes.isEmpty();
+  }
+
+  @Override
+  public long estimateIterations() {
+    if (current == null) {
+      return 0;
+    }
+    return current.estimateIterations() + remainingPrefixes.size();
+  }
+
+  @Override
+  public String getTrace() {
+    return current == null ? "" : current.getTrace();
+  }
+
+  /**
+   * Get the prefixes that still need to be explored. This should only be called between
+   * iterations.
+   *
+   * @return A list of disjoint prefixes that have not been explored.
+   */
+  public List<List<Object>> getUnexploredPrefixes() {
+    List<List<Object>> prefixes = new ArrayList<>();
+    if (current != null) {
+      prefixes.addAll(current.getUnexploredPrefixes());
+    }
+    prefixes.addAll(remainingPrefixes);
+    return prefixes;
+  }
+}
@@ -16,12 +16,13 @@
 
 package com.github.upthewaterspout.fates.core.states.explorers.depthfirst;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.List;
 import java.util.Set;
 
 import com.github.upthewaterspout.fates.core.states.StateExplorer;
-import com.github.upthewaterspout.fates.core.states.tree.DecisionTree;
 import com.github.upthewaterspout.fates.core.states.tree.Trees;
 
 /**
@@ -29,44 +30,377 @@ import com.github.upthewaterspout.fates.core.states.tree.Trees;
  *
  * This explorer will exhaustively investigate all possible choices, starting by varying
  * the very last choice that was made in the test.
+ *
+ * Only the current path through the decisions is kept in memory. Each decision point on the path
+ * holds its options and the index of the current choice; the options before that index have been
+ * completely explored and the options after it have not been explored yet. Once all of the options
+ * of a decision point have been explored it is discarded, so memory use is proportional to the
+ * depth of the test rather than the number of iterations.
+ *
+ * The search can be restricted to the part of the tree that starts with a given list of decisions,
+ * see {@link #DepthFirstExplorer(List)}. Combined with {@link #getUnexploredPrefixes()}, this allows
+ * the search to be split into disjoint parts that are explored independently.
+ *
+ * Decisions made with {@link #decide(Object, int)} only keep the number of options, and the
+ * choices are the indexes of the options. Decisions made with {@link #decideIndex(Object, List)}
+ * are also replayed by index, but the chosen option is kept for the trace and to check that a
+ * later iteration chooses an equal option.
  */
 public class DepthFirstExplorer implements StateExplorer {
 
-  DecisionTree<Void> initialState = new DecisionTree<>(null, null);
-  DecisionTree<?> currentState = initialState;
+  /**
+   * The decision points on the current path
+   */
+  private final ArrayList<DecisionPoint> path = new ArrayList<>();
+
+  /**
+   * The position in the path of the next decision in the current iteration
+   */
+  private int position;
+  private boolean completelyTested;
+
+  /**
+   * Decisions that are made at the start of every iteration, before searching
+   */
+  private final List<?> prefix;
+  private int prefixPosition;
+  private final List<String> prefixHistory = new ArrayList<>();
+
+  public DepthFirstExplorer() {
+    this(Collections.emptyList());
+  }
+
+  /**
+   * Create an explorer that only explores the part of the decision tree that starts with the
+   * given decisions. The first decisions of each iteration must be presented with options that
+   * contain these decisions.
+   *
+   * @param prefix The decisions to make at the start of each iteration
+   */
+  public DepthFirstExplorer(List<?> prefix) {
+    this.prefix = new ArrayList<>(prefix);
+  }
 
   @Override
   public <K> K decide(Object label, Set<K> options) {
-    currentState.setOptions(label, options);
-    currentState = getUnexploredNextState();
-    return (K) currentState.getDecision();
+    if (prefixPosition < prefix.size()) {
+      return decideFromPrefix(label, options);
+    }
+    if (position < path.size()) {
+      return path.get(position++).replay(label, options);
+    }
+    if (options.isEmpty()) {
+      throw new IllegalStateException("No options to choose from at " + label);
+    }
+    DecisionPoint decisionPoint = new DecisionPoint(label, options.toArray(), fingerprint(options));
+    path.add(decisionPoint);
+    position++;
+    return (K) decisionPoint.getChoice();
+  }
+
+  @Override
+  public int decide(Object label, int optionCount) {
+    if (prefixPosition < prefix.size()) {
+      return decideFromPrefix(label, optionCount);
+    }
+    if (position < path.size()) {
+      return path.get(position++).replay(label, optionCount);
+    }
+    if (optionCount <= 0) {
+      throw new IllegalStateException("No options to choose from at " + label);
+    }
+    path.add(new DecisionPoint(label, optionCount));
+    position++;
+    return 0;
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    if (prefixPosition < prefix.size()) {
+      return decideFromPrefix(label, options);
+    }
+    if (position < path.size()) {
+      return path.get(position++).replay(label, options);
+    }
+    if (options.isEmpty()) {
+      throw new IllegalStateException("No options to choose from at " + label);
+    }
+    DecisionPoint decisionPoint = new DecisionPoint(label, options.size());
+    decisionPoint.chosen = options.get(0);
+    path.add(decisionPoint);
+    position++;
+    return 0;
+  }
+
+  private int decideFromPrefix(Object label, int optionCount) {
+    Object decision = prefix.get(prefixPosition++);
+    if (!(decision instanceof Integer) || (Integer) decision < 0
+        || (Integer) decision >= optionCount) {
+      throw new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Expected to choose " + decision + " at " + label + "\n"
+              + "  New choices: " + optionCount + " options");
+    }
+    if (optionCount > 1) {
+      prefixHistory.add(label + ": " + decision);
+    }
+    return (Integer) decision;
   }
 
-  private DecisionTree<?> getUnexploredNextState() {
-    Optional<DecisionTree<?>> optional = currentState.getSubTrees().stream()
-        .filter(state -> !state.isCompletelyTested())
-        .findFirst();
-    return optional.orElseThrow(() -> new IllegalStateException());
+  /**
+   * Make a list decision from the prefix. The prefix holds the index of the choice, unless it was
+   * saved when this decision was still made from a set of options.
+   */
+  private <K> int decideFromPrefix(Object label, List<K> options) {
+    Object decision = prefix.get(prefixPosition++);
+    int index = decision instanceof Integer ? (Integer) decision : options.indexOf(decision);
+    if (index < 0 || index >= options.size()) {
+      throw new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Expected to choose " + decision + " at " + label + "\n"
+              + "  New choices " + options);
+    }
+    if (options.size() > 1) {
+      prefixHistory.add(label + ": " + options.get(index));
+    }
+    return index;
+  }
+
+  private <K> K decideFromPrefix(Object label, Set<K> options) {
+    Object decision = prefix.get(prefixPosition++);
+    K choice = findOption(options, decision);
+    if (choice == null) {
+      throw new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Expected to choose " + decision + " at " + label + "\n"
+              + "  New choices " + options);
+    }
+    if (options.size() > 1) {
+      prefixHistory.add(label + ": " + choice);
+    }
+    return choice;
+  }
+
+  /**
+   * Find the option that is equal to the given decision. This returns the instance from the
+   * current iteration, rather than the decision saved from a previous iteration.
+   */
+  private static <K> K findOption(Set<K> options, Object decision) {
+    for (K option : options) {
+      if (option.equals(decision)) {
+        return option;
+      }
+    }
+    return null;
   }
 
   @Override
   public void done() {
-    currentState.setOptions("", Collections.emptySet());
-    currentState = initialState;
+    if (prefixPosition < prefix.size()) {
+      throw new IllegalStateException("Test completed before reaching the end of the prefix " + prefix);
+    }
+    if (position < path.size()) {
+      throw new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Previously: at " + path.get(position).label + "\n"
+              + "  Now: test completed");
+    }
+
+    //Discard any decision points that have no more options to explore
+    while (!path.isEmpty() && !path.get(path.size() - 1).hasNext()) {
+      path.remove(path.size() - 1);
+    }
+
+    if (path.isEmpty()) {
+      completelyTested = true;
+    } else {
+      path.get(path.size() - 1).next();
+    }
+
+    position = 0;
+    prefixPosition = 0;
+    prefixHistory.clear();
   }
 
   @Override
   public boolean isCompletelyTested() {
-    return initialState.isCompletelyTested();
+    return completelyTested;
   }
 
   @Override
   public long estimateIterations() {
-    return Trees.estimateSize(initialState);
+    if (path.isEmpty()) {
+      return completelyTested ? 1 : -1;
+    }
+
+    long size = 1;
+    for (DecisionPoint decisionPoint : path) {
+      size = size * decisionPoint.optionCount;
+    }
+    return size;
   }
 
   @Override
   public String getTrace() {
-    return Trees.showHistory(currentState);
+    List<String> history = new ArrayList<>(prefixHistory);
+    for (int i = 0; i < position; i++) {
+      DecisionPoint decisionPoint = path.get(i);
+      if (decisionPoint.optionCount > 1) {
+        history.add(decisionPoint.label + ": " + decisionPoint.describeChoice());
+      }
+    }
+    return Trees.formatHistory(history);
+  }
+
+  /**
+   * Get the decisions leading to each part of the decision tree that has not been visited yet,
+   * including the prefix of this explorer. Together with the iterations that have already run,
+   * these prefixes cover everything this explorer would explore, so each one can be explored by
+   * a separate {@link DepthFirstExplorer#DepthFirstExplorer(List)}.
+   *
+   * This should only be called between iterations.
+   *
+   * @return A list of disjoint prefixes that have not been explored.
+   */
+  public List<List<Object>> getUnexploredPrefixes() {
+    List<List<Object>> prefixes = new ArrayList<>();
+    if (completelyTested) {
+      return prefixes;
+    }
+    if (path.isEmpty()) {
+      prefixes.add(new ArrayList<>(prefix));
+      return prefixes;
+    }
+
+    //The current choice of the last decision point has not been explored yet, but the
+    //current choices of all of the earlier decision points have been partially explored
+    int last = path.size() - 1;
+    for (int depth = last; depth >= 0; depth--) {
+      DecisionPoint decisionPoint = path.get(depth);
+      int firstUnexplored = depth == last ? decisionPoint.choice : decisionPoint.choice + 1;
+      for (int option = firstUnexplored; option < decisionPoint.optionCount; option++) {
+        List<Object> unexplored = new ArrayList<>(prefix.size() + depth + 1);
+        unexplored.addAll(prefix);
+        for (int i = 0; i < depth; i++) {
+          unexplored.add(path.get(i).getChoice());
+        }
+        unexplored.add(decisionPoint.getOption(option));
+        prefixes.add(unexplored);
+      }
+    }
+    return prefixes;
+  }
+
+  /**
+   * Compute a fingerprint of a set of options that doesn't depend on the order of the set. This
+   * is a sum of a mixed hash of each option, rather than {@link Set#hashCode()}. The plain sum of
+   * the hash codes is the same for many different sets of similar options, for example
+   * {1, 2, 6} and {1, 3, 5}.
+   */
+  private static long fingerprint(Set<?> options) {
+    long fingerprint = 0;
+    for (Object option : options) {
+      long hash = option.hashCode() * 0x9E3779B97F4A7C15L;
+      hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+      hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+      fingerprint += hash ^ (hash >>> 31);
+    }
+    return fingerprint;
+  }
+
+  /**
+   * A decision point on the current path.
+   */
+  private static class DecisionPoint {
+    private final Object label;
+    /**
+     * The options, or null if this decision was made by index
+     */
+    private final Object[] options;
+    private final int optionCount;
+    /**
+     * A fingerprint of the set of options, used to check that a later iteration is presented
+     * with the same options without looking up every option. See {@link #fingerprint(Set)}
+     */
+    private final long fingerprint;
+    private int choice;
+    /**
+     * The chosen option of a decision made from a list, from the latest iteration that made it
+     */
+    private Object chosen;
+
+    private DecisionPoint(Object label, Object[] options, long fingerprint) {
+      this.label = label;
+      this.options = options;
+      this.optionCount = options.length;
+      this.fingerprint = fingerprint;
+    }
+
+    private DecisionPoint(Object label, int optionCount) {
+      this.label = label;
+      this.options = null;
+      this.optionCount = optionCount;
+      this.fingerprint = 0;
+    }
+
+    private Object getChoice() {
+      return getOption(choice);
+    }
+
+    private Object getOption(int index) {
+      return options == null ? Integer.valueOf(index) : options[index];
+    }
+
+    private Object describeChoice() {
+      return chosen == null ? getChoice() : chosen;
+    }
+
+    private boolean hasNext() {
+      return choice + 1 < optionCount;
+    }
+
+    private void next() {
+      choice++;
+      chosen = null;
+    }
+
+    /**
+     * Make the same choice as a previous iteration, after checking that the test presented
+     * the same options.
+     */
+    private <K> K replay(Object label, Set<K> newOptions) {
+      K result = options == null ? null : findOption(newOptions, getChoice());
+      if (result == null || newOptions.size() != optionCount || !label.equals(this.label)
+          || fingerprint(newOptions) != fingerprint) {
+        throw differentOptions(label, newOptions);
+      }
+      return result;
+    }
+
+    private <K> int replay(Object label, List<K> newOptions) {
+      if (options != null || newOptions.size() != optionCount || !label.equals(this.label)
+          || chosen != null && !chosen.equals(newOptions.get(choice))) {
+        throw differentOptions(label, newOptions);
+      }
+      chosen = newOptions.get(choice);
+      return choice;
+    }
+
+    private int replay(Object label, int newOptionCount) {
+      if (options != null || newOptionCount != optionCount || !label.equals(this.label)) {
+        throw differentOptions(label, newOptionCount + " options");
+      }
+      return choice;
+    }
+
+    private IllegalStateException differentOptions(Object label, Object newOptions) {
+      Object previousOptions = options == null ? optionCount + " options" : Arrays.asList(options);
+      return new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Previously: at " + this.label + "\n"
+              + "  Now: at " + label + "\n"
+              + "  Previous choices: " + previousOptions + "\n"
+              + "  New choices " + newOptions);
+    }
   }
 }
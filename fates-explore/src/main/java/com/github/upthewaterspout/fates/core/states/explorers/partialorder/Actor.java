@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.partialorder;
+
+/**
+ * An option passed to {@link com.github.upthewaterspout.fates.core.states.Decider#decide}
+ * that can describe what it will do if it is chosen.
+ *
+ * The {@link PartialOrderReductionExplorer} uses this information to avoid exploring
+ * orderings of operations that do not affect each other. Options that do not implement
+ * this interface, or that return null, are treated as dependent with every other operation.
+ */
+public interface Actor {
+
+  /**
+   * @return the operation this actor will perform next if it is chosen, or null
+   * if the operation is not known.
+   */
+  Operation getNextOperation();
+
+  /**
+   * Called at the decision after this actor was chosen, to check whether it did anything that
+   * the operation it reported did not describe, for example changing an array element. If so,
+   * the step is treated as dependent with every other operation, like an unknown operation.
+   *
+   * @return true if the actor's last step had effects other than its reported operation
+   */
+  default boolean hadUnreportedEffects() {
+    return false;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.partialorder;
+
+/**
+ * A description of an access to a shared location, used by the
+ * {@link PartialOrderReductionExplorer} to determine which choices are independent.
+ *
+ * Two operations are dependent if they access the same location of the same object and at least one
+ * of them is a write. Operations only keep the identity hash code of the object they access, so that
+ * the explorer does not hold references to objects created by previous iterations of a test.
+ */
+public final class Operation {
+  private final int owner;
+  private final String location;
+  private final boolean write;
+
+  private Operation(int owner, String location, boolean write) {
+    this.owner = owner;
+    this.location = location;
+    this.write = write;
+  }
+
+  /**
+   * Create an operation that reads a location
+   * @param owner the object that owns the location, for example the object containing a field
+   * @param location the name of the location within the owner, for example a field name
+   */
+  public static Operation read(Object owner, String location) {
+    return new Operation(System.identityHashCode(owner), location, false);
+  }
+
+  /**
+   * Create an operation that modifies a location
+   * @param owner the object that owns the location, for example the object containing a field
+   * @param location the name of the location within the owner, for example a field name
+   */
+  public static Operation write(Object owner, String location) {
+    return new Operation(System.identityHashCode(owner), location, true);
+  }
+
+  /**
+   * Check whether two operations are dependent, meaning that the result of executing them
+   * may depend on the order in which they are executed. Unknown (null) operations are dependent with
+   * everything.
+   */
+  public static boolean areDependent(Operation first, Operation second) {
+    if (first == null || second == null) {
+      return true;
+    }
+
+    return (first.write || second.write)
+        && first.owner == second.owner
+        && first.location.equals(second.location);
+  }
+
+  public boolean isWrite() {
+    return write;
+  }
+
+  @Override
+  public String toString() {
+    return (write ? "write " : "read ") + location + "@" + Integer.toHexString(owner);
+  }
+}
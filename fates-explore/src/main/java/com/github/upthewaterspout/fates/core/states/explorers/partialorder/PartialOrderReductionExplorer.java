@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.partialorder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
+import com.github.upthewaterspout.fates.core.states.tree.Trees;
+
+/**
+ * An implementation of {@link StateExplorer} that uses dynamic partial order reduction
+ * (Flanagan and Godefroid, "Dynamic partial-order reduction for model checking software").
+ *
+ * Like the {@link com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer},
+ * this explorer performs a depth first search of the possible choices. However, instead of
+ * trying every option at every decision point, it only tries alternatives that could change the
+ * order of two dependent operations. The options passed to {@link #decide(Object, Set)} or
+ * {@link #decideIndex(Object, List)} should implement
+ * {@link Actor} to describe the operation they are about to perform. Options that don't are treated
+ * as conflicting with everything, in which case this explorer degrades to an exhaustive search.
+ *
+ * Each decision is treated as a single step by the chosen option, which performs the operation
+ * it reported when it was chosen. If the option says afterwards that it also had effects it did
+ * not report, see {@link Actor#hadUnreportedEffects()}, the step is treated as an unknown operation.
+ * Happens-before between steps is tracked with vector clocks. A new option appearing for the first
+ * time is assumed to be created by the previously chosen option.
+ */
+public class PartialOrderReductionExplorer implements StateExplorer {
+
+  /**
+   * The decision points on the current path, from the first decision to the deepest
+   */
+  private final List<Node> stack = new ArrayList<>();
+
+  /**
+   * The steps taken so far by the current iteration. Step i was chosen at stack.get(i)
+   */
+  private final List<Step> steps = new ArrayList<>();
+
+  /**
+   * The vector clock of each option in the current iteration, indexed by option
+   */
+  private final Map<Object, Map<Object, Integer>> clocks = new HashMap<>();
+
+  private int depth;
+  private long iterations;
+  private boolean completelyTested;
+
+  @Override
+  public <K> K decide(Object label, Set<K> options) {
+    return choose(label, options);
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    return options.indexOf(choose(label, options));
+  }
+
+  private <K> K choose(Object label, Collection<K> options) {
+    if (options.isEmpty()) {
+      throw new IllegalStateException("No options to choose from at " + label);
+    }
+
+    Object previous = steps.isEmpty() ? null : steps.get(steps.size() - 1).actor;
+    if (previous instanceof Actor && ((Actor) previous).hadUnreportedEffects()) {
+      widenLastStep();
+    }
+    for (K option : options) {
+      clocks.computeIfAbsent(option, key -> copyClock(previous));
+    }
+
+    Node node;
+    if (depth < stack.size()) {
+      node = stack.get(depth);
+      node.validate(label, options);
+    } else {
+      node = new Node(label, options, getSleepSet());
+      node.chooseInitial(previous);
+      stack.add(node);
+      addBacktrackingPoints(options);
+    }
+
+    K choice = findOption(options, node.chosen);
+    recordStep(choice);
+    depth++;
+    return choice;
+  }
+
+  /**
+   * Compute the sleep set for a new decision point. Options that were already explored at
+   * the parent decision point, and whose next operation is independent of the option chosen
+   * at the parent, do not need to be explored again from this point.
+   */
+  private Map<Object, Operation> getSleepSet() {
+    Map<Object, Operation> sleep = new HashMap<>();
+    if (depth == 0) {
+      return sleep;
+    }
+    Node parent = stack.get(depth - 1);
+    Operation chosenOperation = parent.operations.get(parent.chosen);
+    parent.sleep.forEach((option, operation) -> {
+      if (!option.equals(parent.chosen) && !Operation.areDependent(operation, chosenOperation)) {
+        sleep.put(option, operation);
+      }
+    });
+    for (Object option : parent.done) {
+      Operation operation = parent.operations.get(option);
+      if (!Operation.areDependent(operation, chosenOperation)) {
+        sleep.put(option, operation);
+      }
+    }
+    return sleep;
+  }
+
+  /**
+   * For each option, find the most recent step that conflicts with the option's next
+   * operation and is not ordered before it. Schedule the option to be tried at that point
+   * instead.
+   */
+  private void addBacktrackingPoints(Collection<?> options) {
+    for (Object option : options) {
+      Operation operation = getOperation(option);
+      Map<Object, Integer> clock = clocks.get(option);
+      for (int i = steps.size() - 1; i >= 0; i--) {
+        Step step = steps.get(i);
+        if (step.actor.equals(option) || !Operation.areDependent(step.operation, operation)) {
+          continue;
+        }
+        if (clock.getOrDefault(step.actor, -1) >= i) {
+          //This step happens before the option's next operation, so reordering is not possible
+          continue;
+        }
+
+        //If the option is not enabled or is asleep at the racing point, we can't reorder the race
+        //directly, so conservatively try everything at that point.
+        Node racingNode = stack.get(i);
+        if (racingNode.options.contains(option) && !racingNode.sleep.containsKey(option)) {
+          racingNode.backtrack.add(option);
+        } else {
+          racingNode.backtrack.addAll(racingNode.options);
+        }
+        break;
+      }
+    }
+  }
+
+  private void recordStep(Object actor) {
+    Operation operation = getOperation(actor);
+    Map<Object, Integer> clock = new HashMap<>(clocks.get(actor));
+    for (int i = 0; i < steps.size(); i++) {
+      Step step = steps.get(i);
+      if (Operation.areDependent(step.operation, operation)) {
+        join(clock, step.clock);
+      }
+    }
+    clock.put(actor, steps.size());
+    steps.add(new Step(actor, operation, clock));
+    clocks.put(actor, clock);
+  }
+
+  /**
+   * Treat the last step as an unknown operation, because it did more than it reported. It is
+   * ordered after every earlier step, and its operation at the decision point where it was
+   * chosen is unknown, so it is not put to sleep or reordered as if it were independent.
+   */
+  private void widenLastStep() {
+    int index = steps.size() - 1;
+    Step last = steps.get(index);
+    if (last.operation == null) {
+      return;
+    }
+    Map<Object, Integer> clock = last.clock;
+    for (int i = 0; i < index; i++) {
+      join(clock, steps.get(i).clock);
+    }
+    last.operation = null;
+    stack.get(index).operations.put(last.actor, null);
+  }
+
+  private Map<Object, Integer> copyClock(Object actor) {
+    if (actor == null) {
+      return new HashMap<>();
+    }
+    return new HashMap<>(clocks.get(actor));
+  }
+
+  private static void join(Map<Object, Integer> clock, Map<Object, Integer> other) {
+    other.forEach((actor, time) -> clock.merge(actor, time, Math::max));
+  }
+
+  private static Operation getOperation(Object option) {
+    return option instanceof Actor ? ((Actor) option).getNextOperation() : null;
+  }
+
+  /**
+   * Find the instance of the chosen option from the current set of options. This
+   * returns the object from the current iteration, rather than one recorded in a previous
+   * iteration.
+   */
+  private static <K> K findOption(Collection<K> options, Object chosen) {
+    for (K option : options) {
+      if (option.equals(chosen)) {
+        return option;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public void done() {
+    iterations++;
+    while (!stack.isEmpty()) {
+      Node node = stack.get(stack.size() - 1);
+      node.done.add(node.chosen);
+      Object next = node.getNextUnexplored();
+      if (next != null) {
+        node.chosen = next;
+        break;
+      }
+      stack.remove(stack.size() - 1);
+    }
+
+    completelyTested = stack.isEmpty();
+    depth = 0;
+    steps.clear();
+    clocks.clear();
+  }
+
+  @Override
+  public boolean isCompletelyTested() {
+    return completelyTested;
+  }
+
+  @Override
+  public long estimateIterations() {
+    long pending = stack.stream()
+        .mapToLong(node -> node.backtrack.stream()
+            .filter(node::needsExploration)
+            .count())
+        .sum();
+    return iterations + pending;
+  }
+
+  @Override
+  public String getTrace() {
+    List<String> decisionChanges = new ArrayList<>();
+    for (int i = 0; i < depth; i++) {
+      Node node = stack.get(i);
+      if (node.options.size() > 1) {
+        decisionChanges.add(node.label + ": " + steps.get(i).actor);
+      }
+    }
+    return Trees.formatHistory(decisionChanges);
+  }
+
+  /**
+   * A decision point on the current path of the search
+   */
+  private static class Node {
+    private final Object label;
+    private final Set<Object> options;
+    /**
+     * The next operation of each option at this point
+     */
+    private final Map<Object, Operation> operations = new HashMap<>();
+    /**
+     * Options that do not need to be explored from this point, because an equivalent
+     * ordering was already explored from an earlier decision point
+     */
+    private final Map<Object, Operation> sleep;
+    /**
+     * Options that need to be tried at this point
+     */
+    private final Set<Object> backtrack = new LinkedHashSet<>();
+    /**
+     * Options that have already been completely explored at this point
+     */
+    private final Set<Object> done = new LinkedHashSet<>();
+    private Object chosen;
+
+    private Node(Object label, Collection<?> options, Map<Object, Operation> sleep) {
+      this.label = label;
+      this.options = new LinkedHashSet<>(options);
+      this.sleep = sleep;
+      options.forEach(option -> operations.put(option, getOperation(option)));
+    }
+
+    /**
+     * Pick the first choice for a new decision point. Prefer letting the previously chosen
+     * option continue, to avoid unnecessary switches. If every option is asleep, the rest of
+     * this iteration is redundant, but it still has to run to completion.
+     */
+    private void chooseInitial(Object previous) {
+      if (previous != null && options.contains(previous) && !sleep.containsKey(previous)) {
+        chosen = previous;
+      } else {
+        chosen = options.stream()
+            .filter(option -> !sleep.containsKey(option))
+            .findFirst()
+            .orElse(previous != null && options.contains(previous) ? previous
+                : options.iterator().next());
+      }
+      backtrack.add(chosen);
+    }
+
+    private boolean needsExploration(Object option) {
+      return !done.contains(option) && !sleep.containsKey(option);
+    }
+
+    private Object getNextUnexplored() {
+      return backtrack.stream()
+          .filter(this::needsExploration)
+          .findFirst()
+          .orElse(null);
+    }
+
+    private void validate(Object label, Collection<?> options) {
+      if (!Objects.equals(this.label, label) || this.options.size() != options.size()
+          || !this.options.containsAll(options)) {
+        throw new IllegalStateException(
+            "System was not presented with the same options on the second run.\n"
+                + "  Previously: at " + this.label + "\n"
+                + "  Now: at " + label + "\n"
+                + "  Previous choices: " + this.options + "\n"
+                + "  New choices: " + options);
+      }
+    }
+  }
+
+  /**
+   * A step taken in the current iteration
+   */
+  private static class Step {
+    private final Object actor;
+    private Operation operation;
+    private final Map<Object, Integer> clock;
+
+    private Step(Object actor, Operation operation, Map<Object, Integer> clock) {
+      this.actor = actor;
+      this.operation = operation;
+      this.clock = clock;
+    }
+  }
+}
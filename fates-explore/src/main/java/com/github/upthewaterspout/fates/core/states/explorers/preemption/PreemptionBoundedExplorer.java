@@ -0,0 +1,280 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.preemption;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
+import com.github.upthewaterspout.fates.core.states.tree.Trees;
+
+/**
+ * A {@link StateExplorer} that explores decisions in order of the number of preemptions they
+ * require, also known as iterative context bounding.
+ *
+ * A preemption is a decision that switches away from the previous choice while the previous
+ * choice is still one of the options. For thread scheduling, that means switching away from a
+ * thread that could have continued running. Switching away from a thread that blocked or exited
+ * is not a preemption.
+ *
+ * All of the schedules with no preemptions are explored first with a depth first search, then all
+ * of the schedules with exactly one preemption, and so on. Most concurrency bugs only need a small
+ * number of preemptions, so this finds them early. The search is exhaustive if it is allowed to
+ * continue until there are no more schedules, or it can be limited to a maximum number of
+ * preemptions.
+ *
+ * When a decision would exceed the current bound, the remaining options at that point are saved
+ * and explored when the bound is increased, so no schedule is explored twice.
+ */
+public class PreemptionBoundedExplorer implements StateExplorer {
+  private final int maxPreemptions;
+
+  private int bound;
+
+  /**
+   * Prefixes of decisions that still need to be explored with the current bound
+   */
+  private final Deque<List<Object>> pending = new ArrayDeque<>();
+
+  /**
+   * Prefixes of decisions that exceed the current bound, to explore with the next bound
+   */
+  private List<List<Object>> deferred = new ArrayList<>();
+
+  /**
+   * The decision points on the current path, after the current prefix
+   */
+  private final List<DecisionPoint> path = new ArrayList<>();
+  private List<Object> prefix = Collections.emptyList();
+  private boolean completelyTested;
+  private long iterations;
+  private long iterationsInBound;
+
+  //State of the current iteration
+  private final List<Object> decisions = new ArrayList<>();
+  private final List<String> history = new ArrayList<>();
+  private int position;
+  private int preemptions;
+  private Object previous;
+
+  /**
+   * Create an explorer that keeps increasing the number of preemptions until all schedules
+   * have been explored.
+   */
+  public PreemptionBoundedExplorer() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create an explorer that explores all schedules with at most the given number of preemptions.
+   * @param maxPreemptions the largest number of preemptions to explore
+   */
+  public PreemptionBoundedExplorer(int maxPreemptions) {
+    this.maxPreemptions = maxPreemptions;
+  }
+
+  @Override
+  public <K> K decide(Object label, Set<K> options) {
+    return choose(label, options);
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    return options.indexOf(choose(label, options));
+  }
+
+  private <K> K choose(Object label, Collection<K> options) {
+    int index = decisions.size();
+    K choice;
+    if (index < prefix.size()) {
+      choice = findOption(label, options, prefix.get(index));
+    } else if (position < path.size()) {
+      choice = path.get(position++).replay(label, options);
+    } else {
+      choice = (K) newDecisionPoint(label, options).getChoice();
+    }
+
+    if (previous != null && !previous.equals(choice) && options.contains(previous)) {
+      preemptions++;
+    }
+    previous = choice;
+    decisions.add(choice);
+    if (options.size() > 1) {
+      history.add(label + ": " + choice);
+    }
+    return choice;
+  }
+
+  private DecisionPoint newDecisionPoint(Object label, Collection<?> options) {
+    if (options.isEmpty()) {
+      throw new IllegalStateException("No options to choose from at " + label);
+    }
+
+    Object[] allowed;
+    if (preemptions >= bound && previous != null && options.contains(previous)) {
+      //Any choice other than the previous one would exceed the bound, so
+      //save those choices for later
+      allowed = new Object[] {previous};
+      for (Object option : options) {
+        if (!option.equals(previous)) {
+          List<Object> deferredPrefix = new ArrayList<>(decisions);
+          deferredPrefix.add(option);
+          deferred.add(deferredPrefix);
+        }
+      }
+    } else {
+      allowed = options.toArray();
+    }
+
+    DecisionPoint decisionPoint = new DecisionPoint(label, allowed);
+    path.add(decisionPoint);
+    position++;
+    return decisionPoint;
+  }
+
+  private static <K> K findOption(Object label, Collection<K> options, Object decision) {
+    for (K option : options) {
+      if (option.equals(decision)) {
+        return option;
+      }
+    }
+    throw new IllegalStateException(
+        "System was not presented with the same options on the second run.\n"
+            + "  Expected to choose " + decision + " at " + label + "\n"
+            + "  New choices " + options);
+  }
+
+  @Override
+  public void done() {
+    if (decisions.size() < prefix.size()) {
+      throw new IllegalStateException("Test completed before reaching the end of the prefix " + prefix);
+    }
+    if (position < path.size()) {
+      throw new IllegalStateException(
+          "System was not presented with the same options on the second run.\n"
+              + "  Previously: at " + path.get(position).label + "\n"
+              + "  Now: test completed");
+    }
+    iterations++;
+    iterationsInBound++;
+
+    while (!path.isEmpty() && !path.get(path.size() - 1).hasNext()) {
+      path.remove(path.size() - 1);
+    }
+
+    if (!path.isEmpty()) {
+      path.get(path.size() - 1).next();
+    } else if (!pending.isEmpty()) {
+      prefix = pending.poll();
+    } else {
+      finishBound();
+    }
+
+    decisions.clear();
+    history.clear();
+    position = 0;
+    preemptions = 0;
+    previous = null;
+  }
+
+  private void finishBound() {
+    System.out.println("Finished preemption bound " + bound + " after " + iterationsInBound
+        + " schedules, " + deferred.size() + " branches deferred to the next bound");
+    iterationsInBound = 0;
+    if (deferred.isEmpty() || bound >= maxPreemptions) {
+      completelyTested = true;
+      return;
+    }
+    bound++;
+    pending.addAll(deferred);
+    deferred = new ArrayList<>();
+    prefix = pending.poll();
+  }
+
+  @Override
+  public boolean isCompletelyTested() {
+    return completelyTested;
+  }
+
+  @Override
+  public long estimateIterations() {
+    long size = 1;
+    for (DecisionPoint decisionPoint : path) {
+      size = size * decisionPoint.options.length;
+    }
+    return iterations + size + pending.size() + deferred.size();
+  }
+
+  /**
+   * @return the number of preemptions allowed for the schedules currently being explored
+   */
+  public int getCurrentBound() {
+    return bound;
+  }
+
+  @Override
+  public String getTrace() {
+    List<String> trace = new ArrayList<>();
+    trace.add("Preemption bound: " + bound);
+    trace.addAll(history);
+    return Trees.formatHistory(trace);
+  }
+
+  /**
+   * A decision point on the current path, with the options that are allowed by the bound.
+   */
+  private static class DecisionPoint {
+    private final Object label;
+    private final Object[] options;
+    private int choice;
+
+    private DecisionPoint(Object label, Object[] options) {
+      this.label = label;
+      this.options = options;
+    }
+
+    private Object getChoice() {
+      return options[choice];
+    }
+
+    private boolean hasNext() {
+      return choice + 1 < options.length;
+    }
+
+    private void next() {
+      choice++;
+    }
+
+    private <K> K replay(Object label, Collection<K> newOptions) {
+      if (!label.equals(this.label) || !newOptions.containsAll(Arrays.asList(options))) {
+        throw new IllegalStateException(
+            "System was not presented with the same options on the second run.\n"
+                + "  Previously: at " + this.label + "\n"
+                + "  Now: at " + label + "\n"
+                + "  Previous choices: " + Arrays.asList(options) + "\n"
+                + "  New choices " + newOptions);
+      }
+      return findOption(label, newOptions, getChoice());
+    }
+  }
+}
@@ -53,6 +53,16 @@ public class Trees {
    * @return a human readable view of the history of decisions that lead to this tree
    */
   public static String showHistory(DecisionTree<?> tree) {
+    return formatHistory(getHistory(tree));
+  }
+
+  /**
+   * Get the decisions that lead to the given tree, in the format used by {@link #showHistory(DecisionTree)}.
+   * Only decision points with more than one choice are included.
+   * @param tree the tree to examine
+   * @return a list of decisions, each of the form "label: decision"
+   */
+  public static List<String> getHistory(DecisionTree<?> tree) {
 
     LinkedList<String> decisionChanges = new LinkedList<>();
 
@@ -63,12 +73,23 @@ public class Trees {
       tree = tree.getParent();
     }
 
+    return decisionChanges;
+  }
 
+  /**
+   * Format a list of decisions in the same human readable format used by
+   * {@link #showHistory(DecisionTree)}.
+   *
+   * This allows explorers that do not keep a {@link DecisionTree} to produce the same
+   * traces.
+   * @param decisionChanges the decisions, in order, each of the form "label: decision"
+   * @return a human readable view of the decisions
+   */
+  public static String formatHistory(List<String> decisionChanges) {
     return "\n========================================" +
         "\nTest Choices:" +
         "\n========================================" +
         "\n" + String.join("\n", decisionChanges) +
         "\n========================================";
-
   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.states;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DeciderJUnitTest {
+
+  /**
+   * A decider that only implements the set based decision, and picks the last option
+   */
+  private final Decider lastOption = new Decider() {
+    @Override
+    public <K> K decide(Object label, Set<K> options) {
+      List<K> list = new ArrayList<>(options);
+      return list.get(list.size() - 1);
+    }
+  };
+
+  @Test
+  public void indexDecisionsDefaultToASetOfTheIndexes() {
+    assertEquals(4, lastOption.decide("label", 5));
+  }
+
+  @Test
+  public void listDecisionsDefaultToASetOfTheOptions() {
+    assertEquals(2, lastOption.decideIndex("label", Arrays.asList("a", "b", "c")));
+  }
+}
@@ -16,14 +16,18 @@
 
 package com.github.upthewaterspout.fates.core.states;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -32,6 +36,8 @@ import java.util.stream.IntStream;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
+
 public class FatesTest {
 
   @Test
@@ -55,6 +61,98 @@ public class FatesTest {
       });
   }
 
+  @Test
+  public void splitPrefixesCoverAllChoices() throws Exception {
+    RepeatedTest test = decider -> {
+      decider.decide("a", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+      decider.decide("b", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+    };
+
+    List<List<Object>> prefixes = new Fates().split(test, 4);
+    assertEquals(4, prefixes.size());
+
+    int[] count = new int[1];
+    for (List<Object> prefix : prefixes) {
+      new Fates()
+          .setExplorer(() -> new DepthFirstExplorer(prefix))
+          .explore(decider -> {
+            test.doOnce(decider);
+            count[0]++;
+          });
+    }
+
+    //The first iteration was used for splitting, so the rest of the 9 iterations
+    //should be run by the prefixes
+    assertEquals(8, count[0]);
+  }
+
+  @Test
+  public void splitUsesWrappedExplorer() throws Exception {
+    RepeatedTest test = decider -> {
+      decider.decide("a", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+      decider.decide("b", new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+    };
+
+    List<Object> labels = new ArrayList<>();
+    List<List<Object>> prefixes = new Fates().split(test, 4, explorer -> new StateExplorer() {
+      @Override
+      public void done() {
+        explorer.done();
+      }
+
+      @Override
+      public boolean isCompletelyTested() {
+        return explorer.isCompletelyTested();
+      }
+
+      @Override
+      public long estimateIterations() {
+        return explorer.estimateIterations();
+      }
+
+      @Override
+      public String getTrace() {
+        return explorer.getTrace();
+      }
+
+      @Override
+      public <K> K decide(Object label, Set<K> options) {
+        labels.add(label);
+        return explorer.decide(label, options);
+      }
+    });
+
+    assertEquals(Arrays.asList("a", "b"), labels);
+    assertEquals(4, prefixes.size());
+  }
+
+  @Test
+  public void snapshotIsOnlyTakenOnce() throws Exception {
+    int[] snapshots = new int[1];
+    int[] iterations = new int[1];
+    new Fates().explore(new SnapshotTest<List<Integer>>() {
+      @Override
+      public List<Integer> takeSnapshot() {
+        snapshots[0]++;
+        return Arrays.asList(1, 2, 3);
+      }
+
+      @Override
+      public List<Integer> restore(List<Integer> snapshot) {
+        return new ArrayList<>(snapshot);
+      }
+
+      @Override
+      public void doOnce(List<Integer> state, Decider decider) {
+        assertEquals(Arrays.asList(1, 2, 3), state);
+        state.remove(decider.decide("remove", new LinkedHashSet<>(state)));
+        iterations[0]++;
+      }
+    });
+
+    assertEquals(1, snapshots[0]);
+    assertEquals(3, iterations[0]);
+  }
 
   /**
    * A test state explorer that tells the harness to do the test N times.
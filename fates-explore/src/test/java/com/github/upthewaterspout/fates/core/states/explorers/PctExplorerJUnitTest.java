@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class PctExplorerJUnitTest {
+
+  @Test
+  public void exploresFixedNumberOfIterations() {
+    PctExplorer explorer = new PctExplorer(2, 3, 10, 0);
+    explorer.done();
+    assertFalse(explorer.isCompletelyTested());
+    explorer.done();
+    assertTrue(explorer.isCompletelyTested());
+    assertEquals(2, explorer.estimateIterations());
+  }
+
+  @Test
+  public void seedReproducesSameChoices() {
+    PctExplorer explorer = new PctExplorer(2, 3, 10, 10);
+
+    //Do an iteration to make sure we get a new seed
+    explorer.decide("something", setOf(3));
+    explorer.done();
+
+    List<Integer> choices = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      choices.add(explorer.decide("something", setOf(100)));
+    }
+    long foundSeed = explorer.getSeed();
+
+    assertNotEquals(10, foundSeed);
+
+    //Create a new explorer
+    explorer = new PctExplorer(1, 3, 10, foundSeed);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(choices.get(i), explorer.decide("something", setOf(100)));
+    }
+  }
+
+  @Test
+  public void keepsRunningHighestPriorityOptionWithoutChangePoints() {
+    PctExplorer explorer = new PctExplorer(1, 1, 10, 5);
+    Integer first = explorer.decide("something", setOf(5));
+    for (int i = 0; i < 20; i++) {
+      assertEquals(first, explorer.decide("something", setOf(5)));
+    }
+  }
+
+  @Test
+  public void findsDepthTwoBugWithExpectedProbability() {
+    int steps = 10;
+    int iterations = 400;
+    PctExplorer explorer = new PctExplorer(iterations, 2, 2 * steps, 0);
+
+    int found = 0;
+    while (!explorer.isCompletelyTested()) {
+      //Two threads with 10 steps each. The bug requires thread 1 to run its first step
+      //after thread 0 has run 5 steps, but before thread 0 runs its 6th step.
+      int[] position = new int[2];
+      boolean bug = false;
+      while (position[0] < steps || position[1] < steps) {
+        Set<Integer> runnable = new HashSet<>();
+        for (int thread = 0; thread < 2; thread++) {
+          if (position[thread] < steps) {
+            runnable.add(thread);
+          }
+        }
+        int thread = explorer.decide("step", runnable);
+        if (thread == 1 && position[1] == 0 && position[0] == 5) {
+          bug = true;
+        }
+        position[thread]++;
+      }
+      if (bug) {
+        found++;
+      }
+      explorer.done();
+    }
+
+    //PCT guarantees a probability of 1/(n * k^(d-1)) = 1/40 per iteration. Allow
+    //some slack for randomness, although the fixed seed makes this deterministic.
+    assertTrue("Found the bug " + found + " times", found >= iterations / 40 / 2);
+  }
+
+  private Set<Integer> setOf(int size) {
+    return IntStream.range(0, size).mapToObj(Integer::valueOf).collect(
+        Collectors.toSet());
+  }
+
+}
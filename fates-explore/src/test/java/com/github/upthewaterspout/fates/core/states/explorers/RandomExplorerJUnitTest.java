@@ -57,6 +57,17 @@ public class RandomExplorerJUnitTest {
     assertThat(randomExplorer.decide("something", setOf100())).isEqualTo(choice2);
   }
 
+  @Test
+  public void indexChoicesMatchSetChoicesWithTheSameSeed() {
+    RandomExplorer setExplorer = new RandomExplorer(1, 5);
+    RandomExplorer indexExplorer = new RandomExplorer(1, 5);
+
+    for (int i = 0; i < 10; i++) {
+      int choice = indexExplorer.decide("something", 100);
+      assertThat(choice).isEqualTo(setExplorer.decide("something", setOf100()));
+    }
+  }
+
   private Set<Integer> setOf100() {
     return IntStream.range(0, 100).mapToObj(Integer::valueOf).collect(
         Collectors.toSet());
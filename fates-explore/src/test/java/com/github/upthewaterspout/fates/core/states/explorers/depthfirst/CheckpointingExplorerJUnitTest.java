@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.depthfirst;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointingExplorerJUnitTest {
+  private static final Set<Integer> OPTIONS = new LinkedHashSet<>(Arrays.asList(1, 2, 3));
+
+  private File directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("checkpoint").toFile();
+  }
+
+  @After
+  public void deleteDirectory() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void resumesWhereThePreviousExplorerStopped() {
+    Set<String> explored = new HashSet<>();
+    CheckpointingExplorer first = createExplorer();
+    explored.add(runOnce(first));
+    explored.add(runOnce(first));
+    assertTrue(new File(directory, "test.checkpoint").exists());
+
+    CheckpointingExplorer second = createExplorer();
+    while (!second.isCompletelyTested()) {
+      assertTrue(explored.add(runOnce(second)));
+    }
+
+    assertEquals(9, explored.size());
+    assertFalse(new File(directory, "test.checkpoint").exists());
+  }
+
+  @Test
+  public void startsFromTheBeginningWithoutACheckpoint() {
+    CheckpointingExplorer explorer = createExplorer();
+    int count = 0;
+    while (!explorer.isCompletelyTested()) {
+      runOnce(explorer);
+      count++;
+    }
+
+    assertEquals(9, count);
+  }
+
+  private CheckpointingExplorer createExplorer() {
+    return new CheckpointingExplorer(directory, "test", 0, TimeUnit.MILLISECONDS);
+  }
+
+  private String runOnce(CheckpointingExplorer explorer) {
+    int a = explorer.decide("a", OPTIONS);
+    int b = explorer.decide("b", OPTIONS);
+    explorer.done();
+    return a + "," + b;
+  }
+}
@@ -20,7 +20,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -97,4 +100,182 @@ public class DepthFirstExplorerJUnitTest {
     assertEquals(expected, trace);
   }
 
+  @Test
+  public void willOnlyExploreChoicesAfterPrefix() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer(Arrays.asList("two"));
+    Set<String> options1 = Sets.newLinkedHashSet("one", "two");
+    Set<String> options2 = Sets.newLinkedHashSet("three", "four");
+
+    assertEquals("two", explorer.decide("", options1));
+    assertEquals("three", explorer.decide("", options2));
+    explorer.done();
+    assertFalse(explorer.isCompletelyTested());
+
+    assertEquals("two", explorer.decide("", options1));
+    assertEquals("four", explorer.decide("", options2));
+    explorer.done();
+    assertTrue(explorer.isCompletelyTested());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfPrefixIsNotAnOption() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer(Arrays.asList("five"));
+    explorer.decide("", Sets.newLinkedHashSet("one", "two"));
+  }
+
+  @Test
+  public void unexploredPrefixesCoverRemainingChoices() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    Set<String> options1 = Sets.newLinkedHashSet("one", "two");
+    Set<String> options2 = Sets.newLinkedHashSet("three", "four");
+
+    assertEquals(Collections.singletonList(Collections.emptyList()),
+        explorer.getUnexploredPrefixes());
+
+    explorer.decide("", options1);
+    explorer.decide("", options2);
+    explorer.done();
+
+    List<List<Object>> expected = Arrays.asList(
+        Arrays.asList("one", "four"),
+        Arrays.asList("two"));
+    assertEquals(expected, explorer.getUnexploredPrefixes());
+  }
+
+  @Test
+  public void unexploredPrefixesIncludeThePrefixOfTheExplorer() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer(Arrays.asList("two"));
+    explorer.decide("", Sets.newLinkedHashSet("one", "two"));
+    explorer.decide("", Sets.newLinkedHashSet("three", "four"));
+    explorer.done();
+
+    assertEquals(Collections.singletonList(Arrays.asList("two", "four")),
+        explorer.getUnexploredPrefixes());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfOptionsChangeOnReplay() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explorer.decide("label1", Sets.newLinkedHashSet(1, 2));
+    explorer.decide("label2", Sets.newLinkedHashSet(1, 2));
+    explorer.done();
+
+    explorer.decide("label1", Sets.newLinkedHashSet(1, 3));
+  }
+
+  @Test
+  public void willReturnOptionsFromTheCurrentIteration() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explorer.decide("label1", Sets.newLinkedHashSet(new String("one"), "two"));
+    explorer.decide("label2", Sets.newLinkedHashSet(1, 2));
+    explorer.done();
+
+    String one = new String("one");
+    assertTrue(one == explorer.decide("label1", Sets.newLinkedHashSet(one, "two")));
+  }
+
+  @Test
+  public void willExploreAllIndexChoices() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+
+    assertEquals(0, explorer.decide("label1", 2));
+    assertEquals(0, explorer.decide("label2", 3));
+    explorer.done();
+    assertEquals(6, explorer.estimateIterations());
+    assertEquals(0, explorer.decide("label1", 2));
+    assertEquals(1, explorer.decide("label2", 3));
+    explorer.done();
+    assertEquals(0, explorer.decide("label1", 2));
+    assertEquals(2, explorer.decide("label2", 3));
+    explorer.done();
+    assertEquals(1, explorer.decide("label1", 2));
+    assertEquals(0, explorer.decide("label2", 3));
+    explorer.done();
+
+    assertEquals(Arrays.asList(Arrays.asList(1, 1), Arrays.asList(1, 2)),
+        explorer.getUnexploredPrefixes());
+  }
+
+  @Test
+  public void indexChoicesCanBeResumedFromAPrefix() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer(Arrays.asList(1));
+
+    assertEquals(1, explorer.decide("label1", 2));
+    assertEquals(0, explorer.decide("label2", 2));
+    explorer.done();
+    assertEquals(1, explorer.decide("label1", 2));
+    assertEquals(1, explorer.decide("label2", 2));
+    explorer.done();
+    assertTrue(explorer.isCompletelyTested());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfOptionCountChangesOnReplay() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explorer.decide("label1", 2);
+    explorer.decide("label2", 2);
+    explorer.done();
+
+    explorer.decide("label1", 3);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfReplayEndsBeforePreviousDecisions() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explorer.decide("label1", Sets.newLinkedHashSet(1, 2));
+    explorer.decide("label2", Sets.newLinkedHashSet(1, 2));
+    explorer.done();
+
+    explorer.decide("label1", Sets.newLinkedHashSet(1, 2));
+    explorer.done();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfOptionsWithTheSameHashCodeChangeOnReplay() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    Set<Integer> options = Sets.newLinkedHashSet(1, 2, 6);
+    Set<Integer> sameHashCode = Sets.newLinkedHashSet(1, 3, 5);
+    assertEquals(options.hashCode(), sameHashCode.hashCode());
+
+    explorer.decide("label1", options);
+    explorer.decide("label2", Sets.newLinkedHashSet(1, 2));
+    explorer.done();
+
+    explorer.decide("label1", sameHashCode);
+  }
+
+  @Test
+  public void willExploreAllListChoicesAndTraceTheChosenOptions() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+
+    assertEquals(0, explorer.decideIndex("label1", Arrays.asList("a", "b")));
+    explorer.done();
+    assertEquals(1, explorer.decideIndex("label1", Arrays.asList("a", "b")));
+    assertEquals("\n========================================\n" +
+        "Test Choices:\n" +
+        "========================================\n" +
+        "label1: b\n" +
+        "========================================", explorer.getTrace());
+    explorer.done();
+    assertTrue(explorer.isCompletelyTested());
+  }
+
+  @Test
+  public void listChoicesCanBeResumedFromAPrefixOfOptions() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer(Arrays.asList("b"));
+
+    assertEquals(1, explorer.decideIndex("label1", Arrays.asList("a", "b")));
+    explorer.done();
+    assertTrue(explorer.isCompletelyTested());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void willFailIfChosenListOptionChangesOnReplay() {
+    DepthFirstExplorer explorer = new DepthFirstExplorer();
+    explorer.decideIndex("label1", Arrays.asList("a", "b"));
+    explorer.decideIndex("label2", Arrays.asList("a", "b"));
+    explorer.done();
+
+    explorer.decideIndex("label1", Arrays.asList("c", "b"));
+  }
 }
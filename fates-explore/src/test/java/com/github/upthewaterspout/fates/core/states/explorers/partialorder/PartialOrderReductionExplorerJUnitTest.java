@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.partialorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
+import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
+
+public class PartialOrderReductionExplorerJUnitTest {
+
+  private final Object x = new Object();
+  private final Object y = new Object();
+
+  @Test
+  public void independentOperationsAreOnlyExploredOnce() {
+    List<Set<String>> results = explore(PartialOrderReductionExplorer::new,
+        new String[] {"write x"}, new String[] {"write y"});
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void readsOfTheSameLocationAreOnlyExploredOnce() {
+    List<Set<String>> results = explore(PartialOrderReductionExplorer::new,
+        new String[] {"read x", "read y"}, new String[] {"read x", "read y"});
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void conflictingWritesAreExploredInBothOrders() {
+    List<Set<String>> results = explore(PartialOrderReductionExplorer::new,
+        new String[] {"write x"}, new String[] {"write x"});
+    assertEquals(2, results.size());
+  }
+
+  @Test
+  public void findsLostUpdate() {
+    String[] increment = new String[] {"read x", "write x"};
+    List<Set<String>> reduced = explore(PartialOrderReductionExplorer::new, increment, increment);
+    List<Set<String>> exhaustive = explore(DepthFirstExplorer::new, increment, increment);
+
+    assertEquals(new HashSet<>(exhaustive), new HashSet<>(reduced));
+    assertTrue(reduced.size() + " " + exhaustive.size(), reduced.size() < exhaustive.size());
+  }
+
+  @Test
+  public void findsSameOutcomesAsExhaustiveSearchWithMixedOperations() {
+    String[] first = new String[] {"write x", "read y", "write y"};
+    String[] second = new String[] {"read y", "read x", "write x"};
+    String[] third = new String[] {"write y", "read x"};
+    List<Set<String>> reduced = explore(PartialOrderReductionExplorer::new, first, second, third);
+    List<Set<String>> exhaustive = explore(DepthFirstExplorer::new, first, second, third);
+
+    assertEquals(new HashSet<>(exhaustive), new HashSet<>(reduced));
+    assertTrue(reduced.size() + " " + exhaustive.size(), reduced.size() < exhaustive.size());
+  }
+
+  @Test
+  public void unknownOperationsAreExploredExhaustively() {
+    String[] thread = new String[] {"unknown", "unknown"};
+    List<Set<String>> reduced = explore(PartialOrderReductionExplorer::new, thread, thread);
+    List<Set<String>> exhaustive = explore(DepthFirstExplorer::new, thread, thread);
+
+    assertEquals(exhaustive.size(), reduced.size());
+  }
+
+  @Test
+  public void unreportedWritesAreExploredInBothOrders() {
+    String[] thread = new String[] {"read x and hidden write y"};
+    List<Set<String>> reduced = explore(PartialOrderReductionExplorer::new, thread, thread);
+    List<Set<String>> exhaustive = explore(DepthFirstExplorer::new, thread, thread);
+
+    assertEquals(2, new HashSet<>(exhaustive).size());
+    assertEquals(new HashSet<>(exhaustive), new HashSet<>(reduced));
+  }
+
+  @Test
+  public void findsSameOutcomesAsExhaustiveSearchWithUnreportedWrites() {
+    String[] first = new String[] {"write x", "read x and hidden write y"};
+    String[] second = new String[] {"read y", "write x"};
+    List<Set<String>> reduced = explore(PartialOrderReductionExplorer::new, first, second);
+    List<Set<String>> exhaustive = explore(DepthFirstExplorer::new, first, second);
+
+    assertEquals(new HashSet<>(exhaustive), new HashSet<>(reduced));
+  }
+
+  @Test
+  public void findsSameOutcomesWhenDecidingByIndex() {
+    String[] first = new String[] {"write x", "read y", "write y"};
+    String[] second = new String[] {"read y", "read x", "write x"};
+    List<Set<String>> bySet = explore(PartialOrderReductionExplorer::new, first, second);
+    List<Set<String>> byIndex = explore(PartialOrderReductionExplorer::new, true, first, second);
+
+    assertEquals(bySet, byIndex);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failsIfOptionsChangeOnReplay() {
+    PartialOrderReductionExplorer explorer = new PartialOrderReductionExplorer();
+    explorer.decide("label", new LinkedHashSet<>(Arrays.asList("one", "two")));
+    explorer.decide("label", new LinkedHashSet<>(Arrays.asList("one", "two")));
+    explorer.done();
+    assertFalse(explorer.isCompletelyTested());
+    explorer.decide("label", new LinkedHashSet<>(Arrays.asList("one", "three")));
+  }
+
+  @Test
+  public void generatesADebuggingTrace() {
+    PartialOrderReductionExplorer explorer = new PartialOrderReductionExplorer();
+    explorer.decide("label1", new LinkedHashSet<>(Arrays.asList(1, 2)));
+    explorer.decide("label2", new LinkedHashSet<>(Arrays.asList(1)));
+    explorer.decide("label3", new LinkedHashSet<>(Arrays.asList(1, 2)));
+    String expected = "\n========================================\n" +
+        "Test Choices:\n" +
+        "========================================\n" +
+        "label1: 1\n" +
+        "label3: 1\n" +
+        "========================================";
+    assertEquals(expected, explorer.getTrace());
+  }
+
+  /**
+   * Simulate a set of threads, each of which performs a list of operations, exploring all
+   * of the schedules the explorer chooses.
+   *
+   * @return for each iteration, the set of read operations annotated with the write they observed
+   */
+  private List<Set<String>> explore(Supplier<StateExplorer> explorerSupplier, String[]... threads) {
+    return explore(explorerSupplier, false, threads);
+  }
+
+  /**
+   * @param byIndex true to present the options with {@link StateExplorer#decideIndex(Object, List)}
+   */
+  private List<Set<String>> explore(Supplier<StateExplorer> explorerSupplier, boolean byIndex,
+                                    String[]... threads) {
+    StateExplorer explorer = explorerSupplier.get();
+    List<Set<String>> results = new ArrayList<>();
+    while (!explorer.isCompletelyTested()) {
+      results.add(runOnce(explorer, byIndex, threads));
+      explorer.done();
+    }
+    return results;
+  }
+
+  private Set<String> runOnce(StateExplorer explorer, boolean byIndex, String[][] threads) {
+    List<TestActor> actors = new ArrayList<>();
+    for (int i = 0; i < threads.length; i++) {
+      actors.add(new TestActor(i, threads[i]));
+    }
+    String lastWriteX = "initial";
+    String lastWriteY = "initial";
+    Set<String> observed = new HashSet<>();
+    while (true) {
+      Set<TestActor> options = new LinkedHashSet<>();
+      for (TestActor actor : actors) {
+        if (actor.hasNext()) {
+          options.add(actor);
+        }
+      }
+      if (options.isEmpty()) {
+        break;
+      }
+      TestActor chosen;
+      if (byIndex) {
+        List<TestActor> optionList = new ArrayList<>(options);
+        chosen = optionList.get(explorer.decideIndex("step", optionList));
+      } else {
+        //The explorer may return an equal actor from a previous iteration
+        chosen = actors.get(explorer.decide("step", options).id);
+      }
+      String operation = chosen.next();
+      String description = chosen.id + ":" + chosen.position;
+      switch (operation) {
+        case "write x":
+          lastWriteX = description;
+          break;
+        case "write y":
+          lastWriteY = description;
+          break;
+        case "read x":
+          observed.add(description + " saw " + lastWriteX);
+          break;
+        case "read y":
+          observed.add(description + " saw " + lastWriteY);
+          break;
+        case "read x and hidden write y":
+          observed.add(description + " saw " + lastWriteX);
+          lastWriteY = description;
+          break;
+        default:
+          observed.add(description + " at " + lastWriteX + "," + lastWriteY);
+      }
+    }
+    observed.add("final " + lastWriteX + "," + lastWriteY);
+    return observed;
+  }
+
+  private class TestActor implements Actor {
+    private final int id;
+    private final String[] operations;
+    private int position;
+    private boolean unreportedEffects;
+
+    private TestActor(int id, String[] operations) {
+      this.id = id;
+      this.operations = operations;
+    }
+
+    private boolean hasNext() {
+      return position < operations.length;
+    }
+
+    private String next() {
+      String operation = operations[position++];
+      unreportedEffects = operation.equals("read x and hidden write y");
+      return operation;
+    }
+
+    @Override
+    public Operation getNextOperation() {
+      switch (operations[position]) {
+        case "write x":
+          return Operation.write(x, "value");
+        case "write y":
+          return Operation.write(y, "value");
+        case "read x":
+        case "read x and hidden write y":
+          return Operation.read(x, "value");
+        case "read y":
+          return Operation.read(y, "value");
+        default:
+          return null;
+      }
+    }
+
+    @Override
+    public boolean hadUnreportedEffects() {
+      return unreportedEffects;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TestActor && ((TestActor) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return "Thread " + id;
+    }
+  }
+}
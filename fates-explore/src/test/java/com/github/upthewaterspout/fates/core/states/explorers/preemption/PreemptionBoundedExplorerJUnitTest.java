@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.states.explorers.preemption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PreemptionBoundedExplorerJUnitTest {
+
+  @Test
+  public void exploresSchedulesWithoutPreemptionsFirst() {
+    List<String> schedules = explore(new PreemptionBoundedExplorer(0), 2, 2);
+    assertEquals(Arrays.asList("0011", "1100"), schedules);
+  }
+
+  @Test
+  public void exploresAllSchedulesInOrderOfPreemptions() {
+    List<String> schedules = explore(new PreemptionBoundedExplorer(), 3, 2);
+
+    //There are 6!/(2!2!2!) = 90 ways to interleave three threads with two steps each
+    assertEquals(90, schedules.size());
+    assertEquals(90, new HashSet<>(schedules).size());
+
+    int previousPreemptions = 0;
+    for (String schedule : schedules) {
+      int preemptions = countPreemptions(schedule, 2);
+      assertTrue(schedule + " came after a schedule with more preemptions",
+          preemptions >= previousPreemptions);
+      previousPreemptions = preemptions;
+    }
+  }
+
+  @Test
+  public void exploresOnlySchedulesWithinTheBound() {
+    List<String> schedules = explore(new PreemptionBoundedExplorer(1), 3, 2);
+
+    for (String schedule : schedules) {
+      assertTrue(countPreemptions(schedule, 2) <= 1);
+    }
+    long expected = explore(new PreemptionBoundedExplorer(), 3, 2).stream()
+        .filter(schedule -> countPreemptions(schedule, 2) <= 1)
+        .count();
+    assertEquals(expected, schedules.size());
+  }
+
+  @Test
+  public void traceIncludesTheBound() {
+    PreemptionBoundedExplorer explorer = new PreemptionBoundedExplorer();
+    explorer.decide("label1", new LinkedHashSet<>(Arrays.asList(1, 2)));
+    String expected = "\n========================================\n" +
+        "Test Choices:\n" +
+        "========================================\n" +
+        "Preemption bound: 0\n" +
+        "label1: 1\n" +
+        "========================================";
+    assertEquals(expected, explorer.getTrace());
+  }
+
+  /**
+   * Simulate threads that each take a number of steps, with a decision before each step about
+   * which thread should take the next step.
+   *
+   * @return the order of the steps for each iteration, as a string of thread numbers
+   */
+  private List<String> explore(PreemptionBoundedExplorer explorer, int threads, int steps) {
+    List<String> schedules = new ArrayList<>();
+    while (!explorer.isCompletelyTested()) {
+      int[] remaining = new int[threads];
+      Arrays.fill(remaining, steps);
+      StringBuilder schedule = new StringBuilder();
+      for (int step = 0; step < threads * steps; step++) {
+        Set<Integer> runnable = new LinkedHashSet<>();
+        for (int thread = 0; thread < threads; thread++) {
+          if (remaining[thread] > 0) {
+            runnable.add(thread);
+          }
+        }
+        int thread = explorer.decide("step" + step, runnable);
+        remaining[thread]--;
+        schedule.append(thread);
+      }
+      explorer.done();
+      schedules.add(schedule.toString());
+    }
+    return schedules;
+  }
+
+  private int countPreemptions(String schedule, int steps) {
+    int preemptions = 0;
+    int[] taken = new int[10];
+    for (int i = 1; i < schedule.length(); i++) {
+      int previous = schedule.charAt(i - 1) - '0';
+      taken[previous]++;
+      if (schedule.charAt(i) - '0' != previous && taken[previous] < steps) {
+        preemptions++;
+      }
+    }
+    return preemptions;
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failsIfReplayEndsBeforePreviousDecisions() {
+    PreemptionBoundedExplorer explorer = new PreemptionBoundedExplorer();
+    explorer.decide("label1", new LinkedHashSet<>(Arrays.asList(1, 2)));
+    explorer.decide("label2", new LinkedHashSet<>(Arrays.asList(3, 4)));
+    explorer.done();
+
+    explorer.decide("label1", new LinkedHashSet<>(Arrays.asList(1, 2)));
+    explorer.done();
+  }
+}
@@ -144,6 +144,13 @@ public interface ExecutionEventListener {
   void beforeSetField(Object owner, Object fieldValue, String fieldName, String className,
                       String methodName, int lineNumber);
 
+  /**
+   * Called before an array element is changed
+   * @param array The array being changed
+   * @param value the new value of the element, or null if the array is primitive
+   */
+  void beforeSetArrayElement(Object array, Object value);
+
   /**
    * Called when a method call starts
    * @param className the name of the class
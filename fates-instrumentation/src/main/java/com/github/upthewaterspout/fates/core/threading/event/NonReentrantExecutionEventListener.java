@@ -24,16 +24,16 @@ package com.github.upthewaterspout.fates.core.threading.event;
  * This listener delegates to a passed in listener. All of the code in that listener may
  * have bytecode instrumentation, but this listener ensures that for the duration of calls
  * to to the passed in listener, all of that instrumentation is disabled.
+ *
+ * Whether the current thread is inside a listener is tracked in the {@link ThreadContext} of the
+ * thread, which is shared by all instances of this class. This listener also attaches the
+ * {@link ThreadContext} of each thread it sees to itself, so that the listeners it delegates to
+ * can record state there.
  */
 public class NonReentrantExecutionEventListener implements ExecutionEventListener {
   private final ExecutionEventListener delegate;
 
-  private final ThreadLocal<Boolean> disabled = new ThreadLocal<Boolean>() {
-    @Override
-    protected Boolean initialValue() {
-      return Boolean.FALSE;
-    }
-  };
+  private volatile boolean installed = true;
 
   private RuntimeException lastError;
 
@@ -53,22 +53,34 @@ public class NonReentrantExecutionEventListener implements ExecutionEventListene
   public void beforeGetField(Object owner, String fieldName, String className,
                              String methodName,
                              int lineNumber) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeGetField(owner, fieldName, className, methodName, lineNumber);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
-  private boolean disabled() {
-    return disabled.get() == Boolean.TRUE;
+  /**
+   * Start processing an event on the current thread.
+   *
+   * @return the context of the current thread, or null if the current thread is already
+   * processing an event and this event should be ignored
+   */
+  private ThreadContext enter() {
+    ThreadContext context = ThreadContext.current();
+    if(context.isInListener()) {
+      return null;
+    }
+    context.attach(this);
+    context.setInListener(true);
+    return context;
   }
 
   @Override
@@ -76,318 +88,335 @@ public class NonReentrantExecutionEventListener implements ExecutionEventListene
                              String className,
                              String methodName,
                              int lineNumber) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    ThreadContext context = enter();
+    if(context == null) {
+      return;
+    }
+    try {
+      delegate.beforeSetArrayElement(array, value);
+    } catch(RuntimeException t) {
+      t.printStackTrace();
+      lastError = t;
+    } finally {
+      context.setInListener(false);
+    }
+  }
+
   @Override
   public void beforeMethod(String className, String methodName) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeMethod(className, methodName);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void afterMethod(String className, String methodName) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.afterMethod(className, methodName);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void beforeThreadStart(Thread thread) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeThreadStart(thread);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override
   public void afterThreadStart(Thread thread) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.afterThreadStart(thread);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override public void beforeThreadExit() {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeThreadExit();
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override public void beforeSynchronization(final Object sync) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.beforeSynchronization(sync);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override public void afterSynchronization(final Object sync) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.afterSynchronization(sync);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replaceWait(final ExecutionEventListener defaultAction, final Object sync, final long timeout, int nanos)
       throws InterruptedException {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceWait(defaultAction, sync, timeout, nanos);
       return;
     }
-    disable();
     try {
       delegate.replaceWait(defaultAction, sync, timeout, nanos);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replaceNotify(final ExecutionEventListener defaultAction, final Object sync) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceNotify(defaultAction, sync);
       return;
     }
-    disable();
     try {
       delegate.replaceNotify(defaultAction, sync);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replaceNotifyAll(final ExecutionEventListener defaultAction, final Object sync) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceNotifyAll(defaultAction, sync);
       return;
     }
-    disable();
     try {
       delegate.replaceNotifyAll(defaultAction, sync);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replaceUnpark(final ExecutionEventListener defaultAction, final Thread thread) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceUnpark(defaultAction, thread);
       return;
     }
-    disable();
     try {
       delegate.replaceUnpark(defaultAction, thread);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replacePark(final ExecutionEventListener defaultAction, final Object blocker) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replacePark(defaultAction, blocker);
       return;
     }
-    disable();
     try {
       delegate.replacePark(defaultAction, blocker);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override
   public void replaceJoin(ExecutionEventListener defaultAction, Thread thread, long timeout, int nanos) throws InterruptedException {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceJoin(defaultAction, thread, timeout, nanos);
       return;
     }
-    disable();
     try {
       delegate.replaceJoin(defaultAction, thread, timeout, nanos);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override
   public void replaceParkNanos(ExecutionEventListener defaultAction, Object blocker, long timeout) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceParkNanos(defaultAction, blocker, timeout);
       return;
     }
-    disable();
     try {
       delegate.replaceParkNanos(defaultAction, blocker, timeout);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override
   public void replaceParkUntil(ExecutionEventListener defaultAction, Object blocker, long deadline) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       defaultAction.replaceParkUntil(defaultAction, blocker, deadline);
       return;
     }
-    disable();
     try {
       delegate.replaceParkUntil(defaultAction, blocker, deadline);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
 
   @Override
   public void afterNew(final Object object) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.afterNew(object);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void postValidation() {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return;
     }
-    disable();
     try {
       delegate.postValidation();
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   @Override
   public void replaceInterrupt(ExecutionEventListener noopHook, Thread thread) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       noopHook.replaceInterrupt(noopHook, thread);
+      return;
     }
-    disable();
     try {
       delegate.replaceInterrupt(noopHook, thread);
     } catch(RuntimeException t) {
       t.printStackTrace();
       lastError = t;
     } finally {
-      enable();
+      context.setInListener(false);
     }
 
   }
@@ -395,10 +424,10 @@ public class NonReentrantExecutionEventListener implements ExecutionEventListene
   @Override
   public boolean replaceIsInterrupted(ExecutionEventListener noopHook, Thread thread,
                                       boolean clearInterrupt) {
-    if(disabled()) {
+    ThreadContext context = enter();
+    if(context == null) {
       return noopHook.replaceIsInterrupted(noopHook, thread, clearInterrupt);
     }
-    disable();
     try {
       return delegate.replaceIsInterrupted(noopHook, thread, clearInterrupt);
     } catch(RuntimeException t) {
@@ -406,16 +435,28 @@ public class NonReentrantExecutionEventListener implements ExecutionEventListene
       lastError = t;
       return false;
     } finally {
-      enable();
+      context.setInListener(false);
     }
   }
 
   public void disable() {
-    disabled.set(Boolean.TRUE);
+    ThreadContext.current().setInListener(true);
   }
 
   public void enable() {
-    disabled.set(Boolean.FALSE);
+    ThreadContext.current().setInListener(false);
+  }
+
+  /**
+   * Mark this listener as no longer installed. Any state recorded in a {@link ThreadContext}
+   * while this listener was installed is ignored from now on.
+   */
+  public void uninstall() {
+    installed = false;
+  }
+
+  public boolean isInstalled() {
+    return installed;
   }
 
 }
@@ -44,6 +44,11 @@ public class NoopExecutionEventListener implements ExecutionEventListener {
     //do nothing
   }
 
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    //do nothing
+  }
+
   @Override
   public void beforeMethod(String className, String methodName) {
     //do nothing
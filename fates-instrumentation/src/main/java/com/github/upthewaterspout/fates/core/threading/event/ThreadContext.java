@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+
+/**
+ * Per thread state that decides whether an execution event from that thread needs to be
+ * passed to the installed {@link ExecutionEventListener} at all.
+ *
+ * Every instrumented field access in the JVM goes through {@link ExecutionEventSingleton}, including
+ * field accesses from threads that are not part of a test, and from code inside atomic classes. The
+ * listeners in the pipeline that filter out these events record what they know about the current
+ * thread here, in plain fields, so that {@link ExecutionEventSingleton} can drop those events with
+ * a single thread local lookup, rather than passing them through every listener in the pipeline.
+ *
+ * The recorded state belongs to the {@link NonReentrantExecutionEventListener} that last
+ * dispatched an event from this thread. It is only trusted while that listener is still
+ * installed, and it is cleared when an event from this thread is dispatched by a different
+ * listener.
+ */
+public final class ThreadContext {
+  private static final ThreadLocal<ThreadContext> CONTEXT =
+      ThreadLocal.withInitial(ThreadContext::new);
+
+  /**
+   * True while a listener is processing an event on this thread
+   */
+  private boolean inListener;
+
+  /**
+   * The listener that the state below belongs to
+   */
+  private NonReentrantExecutionEventListener owner;
+
+  private boolean outsideTest;
+  private boolean inAtomicMethod;
+  private boolean inClassInitialization;
+  private Object confinementOwner;
+  private Set<Object> confinedObjects;
+
+  private ThreadContext() {
+  }
+
+  /**
+   * @return the context for the current thread
+   */
+  public static ThreadContext current() {
+    return CONTEXT.get();
+  }
+
+  public boolean isInListener() {
+    return inListener;
+  }
+
+  public void setInListener(boolean inListener) {
+    this.inListener = inListener;
+  }
+
+  /**
+   * Record that an event from this thread is being dispatched by the given listener,
+   * forgetting any state recorded for a different listener.
+   */
+  void attach(NonReentrantExecutionEventListener listener) {
+    if(owner != listener) {
+      owner = listener;
+      outsideTest = false;
+      inAtomicMethod = false;
+      inClassInitialization = false;
+      confinementOwner = null;
+      confinedObjects = null;
+    }
+  }
+
+  /**
+   * Record whether the current thread is part of the test. Events from threads
+   * outside of the test are ignored.
+   */
+  public void setOutsideTest(boolean outsideTest) {
+    this.outsideTest = outsideTest;
+  }
+
+  /**
+   * Record whether the current thread is inside a method of a class that should be treated
+   * as atomic.
+   */
+  public void setInAtomicMethod(boolean inAtomicMethod) {
+    this.inAtomicMethod = inAtomicMethod;
+  }
+
+  /**
+   * Record whether the current thread is running a class initializer, which is
+   * treated as atomic.
+   */
+  public void setInClassInitialization(boolean inClassInitialization) {
+    this.inClassInitialization = inClassInitialization;
+  }
+
+  /**
+   * Get the set of objects that have only been seen by the current thread, as tracked by the
+   * given listener.
+   */
+  public Set<Object> getConfinedObjects(Object listener) {
+    if(confinementOwner != listener) {
+      confinementOwner = listener;
+      confinedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+    return confinedObjects;
+  }
+
+  /**
+   * @return true if events from this thread should not reach the listener
+   */
+  public boolean ignoresEvents() {
+    return inListener || (isAttached() && outsideTest);
+  }
+
+  /**
+   * @return true if a read of a field of the given object should not reach the listener
+   */
+  public boolean ignoresFieldRead(Object object) {
+    return inListener
+        || (isAttached() && (outsideTest || isAtomic() || isConfined(object)));
+  }
+
+  /**
+   * @return true if an update to a field of the given object should not reach the listener
+   */
+  public boolean ignoresFieldUpdate(Object object) {
+    return inListener || (isAttached() && (outsideTest || isConfined(object)));
+  }
+
+  /**
+   * @return true if entering or leaving a monitor should not reach the listener
+   */
+  public boolean ignoresSynchronization() {
+    return inListener || (isAttached() && (outsideTest || isAtomic()));
+  }
+
+  private boolean isAttached() {
+    return owner != null && owner.isInstalled();
+  }
+
+  private boolean isAtomic() {
+    return inAtomicMethod || inClassInitialization;
+  }
+
+  private boolean isConfined(Object object) {
+    if(confinedObjects == null) {
+      return false;
+    }
+    //The set is instrumented JDK code, so ignore the events it generates while checking it
+    inListener = true;
+    try {
+      return confinedObjects.contains(object);
+    } finally {
+      inListener = false;
+    }
+  }
+}
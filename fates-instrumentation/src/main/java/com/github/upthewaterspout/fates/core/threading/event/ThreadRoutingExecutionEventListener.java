@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link ExecutionEventListener} that routes each event to a listener chosen by the thread
+ * that generated the event.
+ *
+ * A listener is registered for a thread with {@link #register(Thread, ExecutionEventListener)}.
+ * Any thread started by a routed thread is routed to the same listener, so a listener receives
+ * the events from the whole tree of threads started by the registered thread. Events from threads
+ * that have no listener are passed to a {@link NoopExecutionEventListener}.
+ *
+ * This allows several independent tests to run in the same JVM at the same time, each with
+ * its own listener.
+ *
+ * The routing table is itself instrumented code, so events generated while looking up or updating
+ * a route are ignored using the {@link ThreadContext} of the thread. The registered listeners are
+ * expected to protect themselves in the same way, for example by being wrapped in a
+ * {@link NonReentrantExecutionEventListener}.
+ */
+public class ThreadRoutingExecutionEventListener implements ExecutionEventListener {
+  private static final ExecutionEventListener NOOP = new NoopExecutionEventListener();
+
+  private final Map<Thread, ExecutionEventListener> routes = new ConcurrentHashMap<>();
+
+  /**
+   * Route events from the given thread, and any threads it starts, to the given listener
+   */
+  public void register(Thread thread, ExecutionEventListener listener) {
+    ThreadContext context = ThreadContext.current();
+    boolean inListener = context.isInListener();
+    context.setInListener(true);
+    try {
+      routes.put(thread, listener);
+    } finally {
+      context.setInListener(inListener);
+    }
+  }
+
+  /**
+   * Stop routing events to the listener for the given thread. Any threads that were
+   * started by the given thread and are still running will also stop being routed.
+   *
+   * @return the listener that was registered for the thread, or null if there was none.
+   */
+  public ExecutionEventListener unregister(Thread thread) {
+    ThreadContext context = ThreadContext.current();
+    boolean inListener = context.isInListener();
+    context.setInListener(true);
+    try {
+      ExecutionEventListener listener = routes.remove(thread);
+      if(listener != null) {
+        routes.values().removeIf(value -> value == listener);
+      }
+      return listener;
+    } finally {
+      context.setInListener(inListener);
+    }
+  }
+
+  public boolean isEmpty() {
+    return routes.isEmpty();
+  }
+
+  private ExecutionEventListener route() {
+    ThreadContext context = ThreadContext.current();
+    if(context.isInListener()) {
+      return NOOP;
+    }
+    context.setInListener(true);
+    try {
+      return routes.getOrDefault(Thread.currentThread(), NOOP);
+    } finally {
+      context.setInListener(false);
+    }
+  }
+
+  @Override
+  public void beforeThreadStart(Thread thread) {
+    ExecutionEventListener listener = route();
+    if(listener != NOOP) {
+      register(thread, listener);
+      listener.beforeThreadStart(thread);
+    }
+  }
+
+  @Override
+  public void afterThreadStart(Thread thread) {
+    route().afterThreadStart(thread);
+  }
+
+  @Override
+  public void beforeThreadExit() {
+    ExecutionEventListener listener = route();
+    try {
+      listener.beforeThreadExit();
+    } finally {
+      if(listener != NOOP) {
+        ThreadContext context = ThreadContext.current();
+        context.setInListener(true);
+        try {
+          routes.remove(Thread.currentThread(), listener);
+        } finally {
+          context.setInListener(false);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void replaceJoin(ExecutionEventListener defaultAction, Thread thread, long timeout,
+                          int nanos) throws InterruptedException {
+    route().replaceJoin(defaultAction, thread, timeout, nanos);
+  }
+
+  @Override
+  public void replacePark(ExecutionEventListener defaultAction, Object blocker) {
+    route().replacePark(defaultAction, blocker);
+  }
+
+  @Override
+  public void replaceParkNanos(ExecutionEventListener defaultAction, Object blocker, long timeout) {
+    route().replaceParkNanos(defaultAction, blocker, timeout);
+  }
+
+  @Override
+  public void replaceParkUntil(ExecutionEventListener defaultAction, Object blocker,
+                               long deadline) {
+    route().replaceParkUntil(defaultAction, blocker, deadline);
+  }
+
+  @Override
+  public void replaceUnpark(ExecutionEventListener defaultAction, Thread thread) {
+    route().replaceUnpark(defaultAction, thread);
+  }
+
+  @Override
+  public void replaceWait(ExecutionEventListener defaultAction, Object sync, long timeout,
+                          int nanos) throws InterruptedException {
+    route().replaceWait(defaultAction, sync, timeout, nanos);
+  }
+
+  @Override
+  public void replaceNotify(ExecutionEventListener defaultAction, Object sync) {
+    route().replaceNotify(defaultAction, sync);
+  }
+
+  @Override
+  public void replaceNotifyAll(ExecutionEventListener defaultAction, Object sync) {
+    route().replaceNotifyAll(defaultAction, sync);
+  }
+
+  @Override
+  public void beforeSynchronization(Object sync) {
+    route().beforeSynchronization(sync);
+  }
+
+  @Override
+  public void afterSynchronization(Object sync) {
+    route().afterSynchronization(sync);
+  }
+
+  @Override
+  public void beforeGetField(Object owner, String fieldName, String className, String methodName,
+                             int lineNumber) {
+    route().beforeGetField(owner, fieldName, className, methodName, lineNumber);
+  }
+
+  @Override
+  public void beforeSetField(Object owner, Object fieldValue, String fieldName, String className,
+                             String methodName, int lineNumber) {
+    route().beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
+  }
+
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    route().beforeSetArrayElement(array, value);
+  }
+
+  @Override
+  public void beforeMethod(String className, String methodName) {
+    route().beforeMethod(className, methodName);
+  }
+
+  @Override
+  public void afterMethod(String className, String methodName) {
+    route().afterMethod(className, methodName);
+  }
+
+  @Override
+  public void afterNew(Object object) {
+    route().afterNew(object);
+  }
+
+  @Override
+  public void postValidation() {
+    route().postValidation();
+  }
+
+  @Override
+  public void replaceInterrupt(ExecutionEventListener noopHook, Thread thread) {
+    route().replaceInterrupt(noopHook, thread);
+  }
+
+  @Override
+  public boolean replaceIsInterrupted(ExecutionEventListener noopHook, Thread thread,
+                                      boolean clearInterrupt) {
+    return route().replaceIsInterrupted(noopHook, thread, clearInterrupt);
+  }
+}
@@ -16,9 +16,16 @@
 
 package com.github.upthewaterspout.fates.core.threading.instrument;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListener;
 import com.github.upthewaterspout.fates.core.threading.event.NonReentrantExecutionEventListener;
 import com.github.upthewaterspout.fates.core.threading.event.NoopExecutionEventListener;
+import com.github.upthewaterspout.fates.core.threading.event.ThreadContext;
+import com.github.upthewaterspout.fates.core.threading.event.ThreadRoutingExecutionEventListener;
 
 /**
  * Static methods that should be called from instrumented bytecode to control the execution of
@@ -30,52 +37,245 @@ import com.github.upthewaterspout.fates.core.threading.event.NoopExecutionEventL
  *
  * This class will atomically decorate the passed in listener with a {@link
  * NonReentrantExecutionEventListener}
+ *
+ * Alternatively, several listeners can be installed at the same time with {@link
+ * #setThreadListener(ExecutionEventListener)}. Each of those listeners only receives events
+ * from the thread that installed it and the threads started by that thread.
+ *
+ * Field accesses, method entry and exit, object creation and synchronization are by far the most
+ * common events. Before passing those to the listener, this class checks the {@link ThreadContext}
+ * of the current thread, which allows events from threads outside of the test, from atomic
+ * sections and from the listener itself to be dropped without going through the whole pipeline.
+ * Where possible those hooks are emitted as invokedynamic call sites linked by {@link
+ * HookCallSites}, which are switched off entirely while no listener is installed and no
+ * exploration is running.
  */
 public class ExecutionEventSingleton {
 
-  private static volatile boolean available = false;
+  /**
+   * System property that marks the classes in this JVM as already instrumented at build time,
+   * so the hooks are available without the java agent.
+   */
+  public static final String PREINSTRUMENTED_PROPERTY = "fates.preinstrumented";
+
+  /**
+   * System property with the file of field access sites saved by the build time instrumentation,
+   * which is loaded into the {@link SiteTable} when {@link #PREINSTRUMENTED_PROPERTY} is set.
+   */
+  public static final String PREINSTRUMENTED_SITES_PROPERTY = "fates.preinstrumentedSites";
+
+  /**
+   * Whether the hooks are available, or null until this is first needed. With a JDK instrumented
+   * at build time, this class is initialized while the JVM is still booting, before the system
+   * properties can be read or most of the JDK can be used. So initializing this class must not do
+   * any more than create the no-op listener.
+   */
+  private static volatile Boolean available;
 
   private static final ExecutionEventListener NOOP_HOOK = new NoopExecutionEventListener();
   private static ExecutionEventListener instance = NOOP_HOOK;
+  private static int explorations;
+
+  /**
+   * Holds the listener for {@link #setThreadListener(ExecutionEventListener)}, which is only
+   * created once it is used
+   */
+  private static class Routing {
+    private static final ThreadRoutingExecutionEventListener ROUTER =
+        new ThreadRoutingExecutionEventListener();
+  }
 
   public static boolean setAvailable() {
     return setAvailable(true);
   }
 
   public static boolean setAvailable(boolean value) {
-    boolean oldValue = available;
+    boolean oldValue = isAvailable();
     available = value;
     return oldValue;
   }
 
   public static boolean isAvailable() {
+    Boolean result = available;
+    if(result == null) {
+      result = initAvailable();
+    }
+    return result;
+  }
+
+  private static synchronized boolean initAvailable() {
+    if(available == null) {
+      boolean preinstrumented = Boolean.getBoolean(PREINSTRUMENTED_PROPERTY);
+      if(preinstrumented) {
+        loadPreinstrumentedSites();
+      }
+      available = preinstrumented;
+    }
     return available;
   }
 
-  public static void setListener(ExecutionEventListener hook) {
-    if(!available) {
+  private static void loadPreinstrumentedSites() {
+    String sites = System.getProperty(PREINSTRUMENTED_SITES_PROPERTY);
+    if(sites == null) {
+      throw new IllegalStateException(
+          "Classes instrumented at build time need the system property "
+              + PREINSTRUMENTED_SITES_PROPERTY + " set to the sites file written by OfflineWeaver");
+    }
+    try (InputStream in = new BufferedInputStream(new FileInputStream(sites))) {
+      SiteTable.load(in);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not load instrumented sites from " + sites, e);
+    }
+  }
+
+  /**
+   * Install a listener that receives events from every thread.
+   *
+   * This cannot be combined with {@link #setThreadListener(ExecutionEventListener)}.
+   *
+   * @param hook the listener, or null to remove the listener
+   */
+  public static synchronized void setListener(ExecutionEventListener hook) {
+    if(!isAvailable()) {
       throw new IllegalStateException("No instrumentation agent registered");
     }
+    if(!Routing.ROUTER.isEmpty()) {
+      throw new IllegalStateException("Listeners are already installed for individual threads");
+    }
     ExecutionEventListener oldInstance = instance;
 
     if(hook == null) {
-      instance = NOOP_HOOK;
+      install(NOOP_HOOK);
     } else {
-      instance = new NonReentrantExecutionEventListener(hook);
+      install(new NonReentrantExecutionEventListener(hook));
     }
 
     if(oldInstance instanceof NonReentrantExecutionEventListener) {
+      ((NonReentrantExecutionEventListener) oldInstance).uninstall();
       ((NonReentrantExecutionEventListener) oldInstance).checkForError();
     }
 
   }
 
+  /**
+   * Install a listener for the current thread, and any threads started by the current thread.
+   * Unlike {@link #setListener(ExecutionEventListener)}, this does not affect other threads, so
+   * several threads can install their own listeners and run at the same time.
+   *
+   * This cannot be combined with {@link #setListener(ExecutionEventListener)}.
+   *
+   * @param hook the listener, or null to remove the listener for the current thread
+   */
+  public static synchronized void setThreadListener(ExecutionEventListener hook) {
+    if(!isAvailable()) {
+      throw new IllegalStateException("No instrumentation agent registered");
+    }
+    Thread thread = Thread.currentThread();
+    ExecutionEventListener oldListener = Routing.ROUTER.unregister(thread);
+
+    if(hook != null) {
+      if(instance != Routing.ROUTER && instance != NOOP_HOOK) {
+        throw new IllegalStateException("A global listener is already installed");
+      }
+      Routing.ROUTER.register(thread, new NonReentrantExecutionEventListener(hook));
+      install(Routing.ROUTER);
+    } else if(Routing.ROUTER.isEmpty()) {
+      install(NOOP_HOOK);
+    }
+
+    if(oldListener instanceof NonReentrantExecutionEventListener) {
+      ((NonReentrantExecutionEventListener) oldListener).uninstall();
+      ((NonReentrantExecutionEventListener) oldListener).checkForError();
+    }
+  }
+
+  /**
+   * Called when an exploration starts, before its first listener is installed. This links the
+   * {@link HookCallSites} once for the whole exploration, rather than every time a listener is
+   * installed and removed. Explorations may be nested or run concurrently; the call sites are
+   * switched off again when the last one ends.
+   */
+  public static synchronized void beginExploration() {
+    if(explorations++ == 0) {
+      HookCallSites.setEnabled(true);
+    }
+  }
+
+  /**
+   * Called when an exploration finishes, after its last listener is removed
+   */
+  public static synchronized void endExploration() {
+    if(explorations == 0) {
+      throw new IllegalStateException("endExploration called without a matching beginExploration");
+    }
+    if(--explorations == 0 && instance == NOOP_HOOK) {
+      HookCallSites.setEnabled(false);
+    }
+  }
+
+  private static void install(ExecutionEventListener listener) {
+    //Relinking the call sites runs instrumented JDK code, so only do it while no listener can see
+    //the events. Listeners installed outside of an exploration still need the call sites linked
+    if(listener != NOOP_HOOK) {
+      HookCallSites.setEnabled(true);
+    }
+    instance = listener;
+    if(listener == NOOP_HOOK && explorations == 0) {
+      HookCallSites.setEnabled(false);
+    }
+  }
+
+  /**
+   * Called before a field read, with the id of the read in the {@link SiteTable}
+   */
+  public static void beforeGetField(Object owner, int siteId) {
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresFieldRead(owner)) {
+      return;
+    }
+    SiteTable.Site site = SiteTable.get(siteId);
+    listener.beforeGetField(owner, site.getFieldName(), site.getClassName(), site.getMethodName(),
+        site.getLineNumber());
+  }
+
+  /**
+   * Called before a field update, with the id of the update in the {@link SiteTable}
+   */
+  public static void beforeSetField(Object owner, Object fieldValue, int siteId) {
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresFieldUpdate(owner)) {
+      return;
+    }
+    SiteTable.Site site = SiteTable.get(siteId);
+    listener.beforeSetField(owner, fieldValue, site.getFieldName(), site.getClassName(),
+        site.getMethodName(), site.getLineNumber());
+  }
+
+  /**
+   * Called before an array element is changed, with the new value if the array holds objects
+   */
+  public static void beforeSetArrayElement(Object array, Object value) {
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresFieldUpdate(array)) {
+      return;
+    }
+    listener.beforeSetArrayElement(array, value);
+  }
+
   public static void beforeGetField(Object owner, String fieldName, String className, String methodName, int lineNumber) {
-    instance.beforeGetField(owner, fieldName, className, methodName, lineNumber);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresFieldRead(owner)) {
+      return;
+    }
+    listener.beforeGetField(owner, fieldName, className, methodName, lineNumber);
   }
 
   public static void beforeSetField(Object owner, Object fieldValue, String fieldName, String className, String methodName, int lineNumber) {
-    instance.beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresFieldUpdate(owner)) {
+      return;
+    }
+    listener.beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
   }
 
   public static void beforeThreadStart(Thread thread) {
@@ -119,11 +319,19 @@ public class ExecutionEventSingleton {
   }
 
   public static void beforeSynchronization(final Object sync) {
-    instance.beforeSynchronization(sync);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresSynchronization()) {
+      return;
+    }
+    listener.beforeSynchronization(sync);
   }
 
   public static void afterSynchronization(final Object sync) {
-    instance.afterSynchronization(sync);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresSynchronization()) {
+      return;
+    }
+    listener.afterSynchronization(sync);
   }
 
   public static void replaceWait(final Object sync) throws InterruptedException {
@@ -160,15 +368,27 @@ public class ExecutionEventSingleton {
   }
 
   public static void beforeMethod(String className, String methodName) {
-    instance.beforeMethod(className, methodName);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresEvents()) {
+      return;
+    }
+    listener.beforeMethod(className, methodName);
   }
 
   public static void afterMethod(String className, String methodName) {
-    instance.afterMethod(className, methodName);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresEvents()) {
+      return;
+    }
+    listener.afterMethod(className, methodName);
   }
 
   public static void afterNew(Object object) {
-    instance.afterNew(object);
+    ExecutionEventListener listener = instance;
+    if(listener == NOOP_HOOK || ThreadContext.current().ignoresEvents()) {
+      return;
+    }
+    listener.afterNew(object);
   }
 
   public static void replaceInterrupt(Thread thread) {
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bootstrap for hooks that are emitted as invokedynamic call sites.
+ *
+ * Each distinct hook (name and signature) is backed by a single {@link MutableCallSite} that is
+ * shared by every instrumented call site for that hook. While no listener is installed the call
+ * sites point to a method handle that does nothing, so the JIT can drop the hook entirely. When a
+ * listener is installed with {@link ExecutionEventSingleton}, the call sites are switched to the
+ * corresponding static method in {@link ExecutionEventSingleton}.
+ */
+public class HookCallSites {
+
+  private static final MethodHandle NOOP;
+
+  static {
+    try {
+      NOOP = MethodHandles.lookup().findStatic(HookCallSites.class, "noop",
+          MethodType.methodType(void.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final Map<String, MutableCallSite> sites = new HashMap<>();
+  private static boolean enabled = false;
+
+  /**
+   * Bootstrap method referenced by the invokedynamic instructions added during instrumentation.
+   */
+  public static synchronized CallSite bootstrap(MethodHandles.Lookup caller, String name,
+                                                MethodType type) {
+    String key = name + type.toMethodDescriptorString();
+    MutableCallSite site = sites.get(key);
+    if (site == null) {
+      site = new MutableCallSite(type);
+      site.setTarget(target(name, type, enabled));
+      sites.put(key, site);
+    }
+    return site;
+  }
+
+  /**
+   * Point all of the hooks either at {@link ExecutionEventSingleton} or at a method that does
+   * nothing.
+   */
+  static synchronized void setEnabled(boolean value) {
+    if (enabled == value) {
+      return;
+    }
+    enabled = value;
+    if (sites.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<String, MutableCallSite> entry : sites.entrySet()) {
+      String key = entry.getKey();
+      MutableCallSite site = entry.getValue();
+      site.setTarget(target(key.substring(0, key.indexOf('(')), site.type(), value));
+    }
+    MutableCallSite.syncAll(sites.values().toArray(new MutableCallSite[0]));
+  }
+
+  static synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  private static MethodHandle target(String name, MethodType type, boolean enabled) {
+    if (!enabled) {
+      return MethodHandles.dropArguments(NOOP, 0, type.parameterList());
+    }
+    try {
+      return MethodHandles.lookup().findStatic(ExecutionEventSingleton.class, name, type);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException("No hook " + name + type, e);
+    }
+  }
+
+  private static void noop() {
+  }
+}
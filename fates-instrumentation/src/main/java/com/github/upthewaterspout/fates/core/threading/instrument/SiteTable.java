@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A table of the field access sites in instrumented code.
+ *
+ * When a class is transformed, each instrumented field access is registered here and given a
+ * small integer id. The instrumented code only passes that id to {@link ExecutionEventSingleton},
+ * rather than pushing the field, class and method names and the line number on every access.
+ * The names are looked up from the table when a listener actually needs them.
+ *
+ * Identical sites share an id, so retransforming a class does not grow the table.
+ *
+ * Classes instrumented ahead of time embed the ids from the JVM that instrumented them, so that
+ * table is saved with {@link #save(OutputStream)} and loaded into the JVM running those classes
+ * with {@link #load(InputStream)}.
+ */
+public final class SiteTable {
+
+  private static final Map<Site, Integer> ids = new HashMap<>();
+
+  /**
+   * All registered sites, indexed by id. Written while holding the lock on {@link SiteTable},
+   * but read without locking.
+   */
+  private static volatile Site[] sites = new Site[1024];
+  private static int size;
+
+  /**
+   * Ids returned to the current thread since {@link #startRecording()}, if recording.
+   */
+  private static final ThreadLocal<List<Integer>> recording = new ThreadLocal<>();
+
+  private SiteTable() {
+  }
+
+  /**
+   * Register a field access site
+   * @return the id of the site
+   */
+  public static synchronized int register(String fieldName, String className, String methodName,
+                                          int lineNumber) {
+    Site site = new Site(fieldName, className, methodName, lineNumber);
+    Integer existing = ids.get(site);
+    if(existing != null) {
+      record(existing);
+      return existing;
+    }
+
+    int id = size++;
+    Site[] current = sites;
+    if(id == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[id] = site;
+    sites = current;
+    ids.put(site, id);
+    record(id);
+    return id;
+  }
+
+  /**
+   * Start recording the ids of the sites registered by the current thread. Used to find out which
+   * sites are referenced by a class that is being transformed.
+   */
+  public static void startRecording() {
+    recording.set(new ArrayList<>());
+  }
+
+  /**
+   * Stop recording sites for the current thread
+   * @return the ids registered since {@link #startRecording()}, in order
+   */
+  public static List<Integer> stopRecording() {
+    List<Integer> recorded = recording.get();
+    recording.remove();
+    return recorded == null ? new ArrayList<>() : recorded;
+  }
+
+  private static void record(int id) {
+    List<Integer> recorded = recording.get();
+    if(recorded != null) {
+      recorded.add(id);
+    }
+  }
+
+  /**
+   * Write out all of the registered sites, in id order
+   */
+  public static synchronized void save(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(size);
+    for (int id = 0; id < size; id++) {
+      Site site = sites[id];
+      data.writeUTF(site.fieldName);
+      data.writeUTF(site.className);
+      data.writeUTF(site.methodName);
+      data.writeInt(site.lineNumber);
+    }
+    data.flush();
+  }
+
+  /**
+   * Register the sites written by {@link #save(OutputStream)}, giving each site the same id it had
+   * when it was saved. This has to happen before any other sites are registered.
+   *
+   * @throws IllegalStateException if a site can't be given the same id
+   */
+  public static synchronized void load(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int count = data.readInt();
+    for (int id = 0; id < count; id++) {
+      Site site = new Site(data.readUTF(), data.readUTF(), data.readUTF(), data.readInt());
+      int registered = register(site.fieldName, site.className, site.methodName, site.lineNumber);
+      if (registered != id) {
+        throw new IllegalStateException(
+            "Site " + site + " was saved with id " + id + " but was registered with id " + registered);
+      }
+    }
+  }
+
+  /**
+   * @return the site with the given id
+   */
+  public static Site get(int id) {
+    return sites[id];
+  }
+
+  /**
+   * A field access in instrumented code
+   */
+  public static final class Site {
+    private final String fieldName;
+    private final String className;
+    private final String methodName;
+    private final int lineNumber;
+
+    private Site(String fieldName, String className, String methodName, int lineNumber) {
+      this.fieldName = fieldName;
+      this.className = className;
+      this.methodName = methodName;
+      this.lineNumber = lineNumber;
+    }
+
+    public String getFieldName() {
+      return fieldName;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public String getMethodName() {
+      return methodName;
+    }
+
+    public int getLineNumber() {
+      return lineNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Site site = (Site) o;
+      return lineNumber == site.lineNumber &&
+          Objects.equals(fieldName, site.fieldName) &&
+          Objects.equals(className, site.className) &&
+          Objects.equals(methodName, site.methodName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(fieldName, className, methodName, lineNumber);
+    }
+
+    @Override
+    public String toString() {
+      return className + "." + methodName + ":" + lineNumber + " " + fieldName;
+    }
+  }
+}
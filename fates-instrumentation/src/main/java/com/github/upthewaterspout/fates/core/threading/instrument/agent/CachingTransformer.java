@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.SiteTable;
+
+/**
+ * A {@link ClassFileTransformer} that caches the output of another transformer on disk.
+ *
+ * Entries are keyed on a hash of the original class bytes, the version of the agent and the agent
+ * arguments, so a changed class or a new agent simply misses the cache. Each entry holds the
+ * transformed bytes along with the {@link SiteTable} sites the transformed class refers to. On a
+ * hit those sites are registered again, and the entry is only used if they get the same ids as
+ * when the entry was written. Otherwise the class is transformed again and the entry replaced.
+ *
+ * Several JVMs can share the same cache directory. Entries are written to a temporary file and
+ * then moved into place. Any problem reading or writing the cache just falls back to
+ * transforming the class.
+ */
+public class CachingTransformer implements ClassFileTransformer {
+  private static final int FORMAT = 1;
+
+  private final ClassFileTransformer delegate;
+  private final File directory;
+  private final byte[] version;
+  private final Predicate<String> cacheable;
+
+  /**
+   * @param delegate the transformer to cache the results of
+   * @param directory the directory to store cached classes in
+   * @param version the version of the agent and its arguments. Entries written with a
+   * different version are never used.
+   */
+  public CachingTransformer(ClassFileTransformer delegate, File directory, String version) {
+    this(delegate, directory, version, className -> true);
+  }
+
+  /**
+   * @param cacheable classes that are not cacheable are always passed to the delegate, for classes
+   * whose transformation depends on more than the version and the class bytes
+   */
+  public CachingTransformer(ClassFileTransformer delegate, File directory, String version,
+                            Predicate<String> cacheable) {
+    this.delegate = delegate;
+    this.directory = directory;
+    this.version = version.getBytes(StandardCharsets.UTF_8);
+    this.cacheable = cacheable;
+    directory.mkdirs();
+    warmUp();
+  }
+
+  /**
+   * Go through a write and a read of the cache, so that the JDK classes used by the cache are
+   * loaded before this transformer is installed, rather than while transforming another class.
+   */
+  private void warmUp() {
+    File entry = new File(directory, key(getClass().getClassLoader(), "warmup", null, new byte[0]));
+    write(entry, new byte[0], Collections.emptyList());
+    read(entry);
+    entry.delete();
+  }
+
+  @Override
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                          ProtectionDomain protectionDomain, byte[] classfileBuffer)
+      throws IllegalClassFormatException {
+    if (!cacheable.test(className)) {
+      return delegate.transform(loader, className, classBeingRedefined, protectionDomain,
+          classfileBuffer);
+    }
+
+    File entry = new File(directory, key(loader, className, classBeingRedefined, classfileBuffer));
+    byte[] cached = read(entry);
+    if (cached != null) {
+      return cached;
+    }
+
+    SiteTable.startRecording();
+    byte[] result;
+    List<Integer> sites;
+    try {
+      result = delegate.transform(loader, className, classBeingRedefined, protectionDomain,
+          classfileBuffer);
+    } finally {
+      sites = SiteTable.stopRecording();
+    }
+
+    if (result != null) {
+      write(entry, result, sites);
+    }
+    return result;
+  }
+
+  /**
+   * The transformation depends on whether the class is being loaded by the bootstrap loader and
+   * whether it is being redefined, as well as the class bytes, so all of those go into the key
+   */
+  String key(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                     byte[] classfileBuffer) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(version);
+    digest.update(String.valueOf(className).getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) (loader == null ? 0 : 1));
+    digest.update((byte) (classBeingRedefined == null ? 0 : 1));
+    digest.update(classfileBuffer);
+
+    StringBuilder name = new StringBuilder();
+    for (byte b : digest.digest()) {
+      name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return name.toString();
+  }
+
+  private byte[] read(File entry) {
+    if (!entry.exists()) {
+      return null;
+    }
+    try (InputStream stream = Files.newInputStream(entry.toPath());
+         DataInputStream in = new DataInputStream(stream)) {
+      if (in.readInt() != FORMAT) {
+        return null;
+      }
+      int siteCount = in.readInt();
+      for (int i = 0; i < siteCount; i++) {
+        int id = in.readInt();
+        String fieldName = in.readUTF();
+        String className = in.readUTF();
+        String methodName = in.readUTF();
+        int lineNumber = in.readInt();
+        if (SiteTable.register(fieldName, className, methodName, lineNumber) != id) {
+          return null;
+        }
+      }
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return bytes;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void write(File entry, byte[] bytes, List<Integer> sites) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + 64 * sites.size());
+    try (DataOutputStream out = new DataOutputStream(buffer)) {
+      out.writeInt(FORMAT);
+      out.writeInt(sites.size());
+      for (int id : sites) {
+        SiteTable.Site site = SiteTable.get(id);
+        out.writeInt(id);
+        out.writeUTF(site.getFieldName());
+        out.writeUTF(site.getClassName());
+        out.writeUTF(site.getMethodName());
+        out.writeInt(site.getLineNumber());
+      }
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } catch (IOException e) {
+      return;
+    }
+
+    Path target = entry.toPath();
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(directory.toPath(), entry.getName(), ".tmp");
+      Files.write(temp, buffer.toByteArray());
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      if (temp != null) {
+        temp.toFile().delete();
+      }
+    }
+  }
+}
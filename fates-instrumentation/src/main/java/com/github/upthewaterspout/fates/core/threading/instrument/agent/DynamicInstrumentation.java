@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.security.ProtectionDomain;
+
+/**
+ * A {@link ClassFileTransformer} that only instruments classes while a test is running.
+ *
+ * {@link #begin()} retransforms the loaded classes into their instrumented form, and
+ * {@link #end()} retransforms them back to their original bytecode, so that the JIT compiles
+ * unmodified code between tests. Calls may be nested, for tests that run concurrently in the
+ * same JVM; the classes are only restored when the last test ends.
+ *
+ * Each test can choose the filter that decides how classes are instrumented. Tests that overlap
+ * share the filter of the test that started first.
+ */
+public class DynamicInstrumentation implements ClassFileTransformer {
+  private final Instrumentation instrumentation;
+  private final FilterTransformer delegate;
+  private volatile FilterTransformer current;
+  private volatile boolean enabled;
+  private int runningTests;
+
+  public DynamicInstrumentation(Instrumentation instrumentation, FilterTransformer delegate) {
+    this.instrumentation = instrumentation;
+    this.delegate = delegate;
+    this.current = delegate;
+  }
+
+  @Override
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                          ProtectionDomain protectionDomain, byte[] classfileBuffer)
+      throws IllegalClassFormatException {
+    if(!enabled) {
+      return null;
+    }
+    return current.transform(loader, className, classBeingRedefined, protectionDomain,
+        classfileBuffer);
+  }
+
+  /**
+   * Instrument all loaded classes, and any classes loaded until {@link #end()} is called
+   */
+  public void begin() {
+    begin(delegate);
+  }
+
+  /**
+   * Instrument all loaded classes with the given filter, and any classes loaded until
+   * {@link #end()} is called. If other tests are already running, the classes stay instrumented
+   * with the filter the first of them started with.
+   *
+   * @return the filter the classes are instrumented with
+   */
+  public synchronized FilterTransformer begin(FilterTransformer filter) {
+    if(runningTests == 0) {
+      current = filter;
+      enabled = true;
+      try {
+        retransform();
+      } catch (RuntimeException e) {
+        enabled = false;
+        throw e;
+      }
+    }
+    runningTests++;
+    return current;
+  }
+
+  /**
+   * Restore the original bytecode of the instrumented classes, once no tests are running
+   */
+  public synchronized void end() {
+    if(runningTests == 0) {
+      throw new IllegalStateException("end called without a matching begin");
+    }
+    if(--runningTests == 0) {
+      enabled = false;
+      retransform();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  private void retransform() {
+    try {
+      instrumentation.retransformClasses(FatesAgent.findClassesToTransform(instrumentation, current));
+    } catch (UnmodifiableClassException e) {
+      throw new IllegalStateException("Could not retransform classes", e);
+    }
+  }
+}
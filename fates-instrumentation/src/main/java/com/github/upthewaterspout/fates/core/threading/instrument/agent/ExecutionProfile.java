@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of classes that threads under test actually executed, and the tests that were
+ * recorded. It is stored in a file with a line for each class, with a hash of the class file,
+ * and a line for each test.
+ *
+ * If the file does not exist yet, the profile is recording. Every class is instrumented as usual,
+ * with method entry hooks on every method, and the classes seen by the test threads are added
+ * to the profile and saved at the end of the test. Once the file exists, only the classes in the
+ * profile are instrumented. If any of the classes has changed since it was recorded, the file is
+ * ignored and a new profile is recorded in its place.
+ *
+ * Class files are looked up with the system class loader. Classes it can't find, such as
+ * generated classes, are stored without a hash and don't invalidate the profile. A class whose
+ * file has been deleted is left out of the profile.
+ */
+public class ExecutionProfile {
+  private static final String CLASS = "class";
+  private static final String TEST = "test";
+  private static final String NO_CLASS_FILE = "-";
+
+  private final File file;
+  private final boolean recording;
+  private final Set<String> classes = ConcurrentHashMap.newKeySet();
+  private final Set<String> tests = ConcurrentHashMap.newKeySet();
+
+  private ExecutionProfile(File file, boolean recording) {
+    this.file = file;
+    this.recording = recording;
+  }
+
+  /**
+   * Load a profile from a file. If the file does not exist or any of its classes have changed,
+   * the profile is empty and recording.
+   */
+  public static ExecutionProfile load(File file) throws IOException {
+    if(!file.exists()) {
+      return new ExecutionProfile(file, true);
+    }
+    ExecutionProfile profile = new ExecutionProfile(file, false);
+    if(!profile.read()) {
+      System.err.println("Classes in the execution profile " + file
+          + " have changed, recording a new profile");
+      return new ExecutionProfile(file, true);
+    }
+    return profile;
+  }
+
+  /**
+   * @return true if there was no current profile when this was loaded, so it is recording the
+   * classes that are executed rather than being used to choose which classes to instrument
+   */
+  public boolean isRecording() {
+    return recording;
+  }
+
+  /**
+   * @return the binary names of the classes in the profile
+   */
+  public Set<String> getClasses() {
+    return Collections.unmodifiableSet(classes);
+  }
+
+  /**
+   * @return true if the classes the test executes were recorded with every class instrumented,
+   * so they are all in the profile
+   */
+  public boolean covers(String test) {
+    return tests.contains(test);
+  }
+
+  /**
+   * Record that a thread under test executed code in a class
+   * @param className the binary name of the class
+   */
+  public void record(String className) {
+    classes.add(className);
+  }
+
+  /**
+   * Record that the classes a test executes are all in the profile. See {@link #covers(String)}
+   */
+  public void addTest(String test) {
+    tests.add(test);
+  }
+
+  /**
+   * Write the profile to its file, merged with anything already written to that file by another
+   * JVM. An existing file whose classes have changed is replaced rather than merged.
+   */
+  public synchronized void save() throws IOException {
+    if(file.exists()) {
+      read();
+    }
+
+    List<String> lines = new ArrayList<>();
+    for(String className : new TreeSet<>(classes)) {
+      lines.add(CLASS + " " + className + " " + hash(className));
+    }
+    for(String test : new TreeSet<>(tests)) {
+      lines.add(TEST + " " + test);
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    Path temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+    Files.write(temp, lines, StandardCharsets.UTF_8);
+    try {
+      Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Add the classes and tests in the file to this profile, unless any of the classes have
+   * changed or the file is in an older format
+   * @return true if the file was added
+   */
+  private boolean read() throws IOException {
+    Set<String> fileClasses = new HashSet<>();
+    Set<String> fileTests = new HashSet<>();
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    for(String line : lines) {
+      String[] fields = line.trim().split("\\s+");
+      if(fields.length == 3 && fields[0].equals(CLASS)) {
+        String hash = hash(fields[1]);
+        if(hash.equals(fields[2])) {
+          fileClasses.add(fields[1]);
+        } else if(!hash.equals(NO_CLASS_FILE)) {
+          return false;
+        }
+      } else if(fields.length == 2 && fields[0].equals(TEST)) {
+        fileTests.add(fields[1]);
+      } else if(!line.trim().isEmpty()) {
+        return false;
+      }
+    }
+    classes.addAll(fileClasses);
+    tests.addAll(fileTests);
+    return true;
+  }
+
+  /**
+   * @return a SHA-256 hash of the class file, or {@link #NO_CLASS_FILE} if it can't be found
+   */
+  static String hash(String className) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    try(InputStream in =
+            ClassLoader.getSystemResourceAsStream(className.replace('.', '/') + ".class")) {
+      if(in == null) {
+        return NO_CLASS_FILE;
+      }
+      byte[] buffer = new byte[8192];
+      int read;
+      while((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -16,46 +16,468 @@
 
 package com.github.upthewaterspout.fates.core.threading.instrument.agent;
 
+import static com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesMethodEntryExitFilter.DEFAULT_ATOMIC_CLASS_NAMES;
+
+import java.io.File;
 import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.AsmTransformer;
-import com.github.upthewaterspout.fates.core.threading.instrument.asm.MethodEntryExitFilter;
+import com.github.upthewaterspout.fates.core.threading.instrument.asm.SynchronizedMethodTransformer;
 
 /**
  * Java agent class to initialize our bytecode manipulating agent.
  */
 public class FatesAgent {
-  public static void premain(String agentArgs, Instrumentation inst) {
+  /**
+   * System property with a directory to cache transformed classes in. See
+   * {@link CachingTransformer}
+   */
+  public static final String CACHE_DIRECTORY_PROPERTY = "fates.transformCache";
+
+  /**
+   * System property with a comma separated list of packages to instrument. If this is set, only
+   * classes in these packages, {@link #CONCURRENCY_PACKAGES} and the atomic classes are fully
+   * instrumented. All other code only gets the hooks for synchronization, so the scheduler never
+   * sees its field accesses and treats it as atomic unless it blocks.
+   */
+  public static final String INSTRUMENTED_PACKAGES_PROPERTY = "fates.instrumentedPackages";
+
+  /**
+   * JDK classes that are always instrumented when {@link #INSTRUMENTED_PACKAGES_PROPERTY} is set,
+   * because the scheduler needs to see the synchronization inside them.
+   */
+  static final String[] CONCURRENCY_PACKAGES = {"java/util/concurrent/", "java/lang/Thread"};
+
+  /**
+   * Packages of the attach API, which is loaded to attach the agent to a running JVM but is
+   * never used by tests.
+   */
+  private static final String[] ATTACH_PACKAGES = {"com.sun.tools.attach.", "sun.tools.attach.",
+      "sun.jvmstat."};
+
+  /**
+   * System property with the file to keep an {@link ExecutionProfile} in. If this is set, either
+   * a profile of the classes the test threads execute is recorded, or only the classes in an
+   * existing profile are instrumented.
+   */
+  public static final String PROFILE_PROPERTY = "fates.profile";
+
+  /**
+   * System property that enables dynamic instrumentation. If this is true, classes are only
+   * instrumented while a test is running and are restored to their original bytecode afterwards.
+   * See {@link DynamicInstrumentation}
+   */
+  public static final String DYNAMIC_PROPERTY = "fates.dynamicInstrumentation";
+
+  /**
+   * System property with the comma separated atomic classes that were passed to the {@link
+   * OfflineWeaver}, when the classes are instrumented at build time rather than by the agent.
+   */
+  public static final String PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY =
+      "fates.preinstrumentedAtomicClasses";
+
+  private static ExecutionProfile profile;
+  private static DynamicInstrumentation dynamicInstrumentation;
+  private static Instrumentation instrumentation;
+  private static FatesMethodEntryExitFilter methodFilter;
+  private static FilterTransformer filterTransformer;
+  private static volatile FilterTransformer profiledTransformer;
+  private static ClassFileTransformer asmTransformer;
+  private static ClassFileTransformer synchronizationTransformer;
+  private static String agentArgs;
+  private static String attachFailure;
+
+  public static void premain(String agentArgs, Instrumentation inst) throws IOException {
+    install(agentArgs, inst, loadProfile());
+  }
+
+  /**
+   * Install the agent in a JVM that is already running. The classes that are already loaded can
+   * only be retransformed, which can't turn their synchronized methods into synchronized blocks
+   * with hooks. A thread blocked on one of those methods would hang the scheduler, so if any of
+   * the classes to instrument have synchronized methods the agent is not installed, and
+   * {@link #getAttachFailure()} says why.
+   */
+  public static void agentmain(String agentArgs, Instrumentation inst) throws IOException {
+    ExecutionProfile profile = loadProfile();
+    ClassFileTransformer unchanged = (loader, className, classBeingRedefined, protectionDomain,
+                                      classfileBuffer) -> null;
+    List<String> synchronizedClasses =
+        findSynchronizedClasses(inst,
+            createFilter(unchanged, unchanged, agentArgs, getRecordedClasses(profile)));
+    if(!synchronizedClasses.isEmpty()) {
+      attachFailure = "Classes with synchronized methods were loaded before the agent was"
+          + " attached, so they can't be instrumented: " + synchronizedClasses
+          + ". Start the JVM with -javaagent instead.";
+      return;
+    }
+    install(agentArgs, inst, profile);
+  }
+
+  /**
+   * @return why {@link #agentmain(String, Instrumentation)} did not install the agent, or null
+   */
+  public static String getAttachFailure() {
+    return attachFailure;
+  }
+
+  private static ExecutionProfile loadProfile() throws IOException {
+    String profileFile = System.getProperty(PROFILE_PROPERTY, "");
+    if(profileFile.isEmpty()) {
+      return null;
+    }
+    return ExecutionProfile.load(new File(profileFile));
+  }
+
+  private static void install(String agentArgs, Instrumentation inst, ExecutionProfile profile)
+      throws IOException {
+    FatesAgent.profile = profile;
+    boolean dynamic = Boolean.getBoolean(DYNAMIC_PROPERTY);
+    FatesMethodEntryExitFilter methodFilter = new FatesMethodEntryExitFilter(agentArgs.split(","));
+    ClassFileTransformer asmTransformer = new AsmTransformer(methodFilter, dynamic);
+    ClassFileTransformer synchronizationTransformer =
+        new AsmTransformer(methodFilter, dynamic, true);
+    //While a test is recorded into the profile, every method gets entry and exit hooks. Field
+    //reads of objects confined to one thread are not reported, so those alone would miss classes
+    boolean recording = profile != null && (dynamic || profile.isRecording());
+    ClassFileTransformer recordingTransformer = asmTransformer;
+    if(recording) {
+      recordingTransformer = new AsmTransformer((className, methodName) -> true, dynamic);
+    }
+    String cacheDirectory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+    String agentVersion = getAgentVersion();
+    if(cacheDirectory != null && !cacheDirectory.isEmpty() && agentVersion != null) {
+      String version = agentVersion + "=" + agentArgs + (dynamic ? ":dynamic" : "");
+      //Classes made atomic by addAtomicClasses are not covered by the version
+      asmTransformer = new CachingTransformer(asmTransformer, new File(cacheDirectory), version,
+          className -> !methodFilter.isAdded(className.replace('/', '.')));
+      if(recording) {
+        recordingTransformer = new CachingTransformer(recordingTransformer,
+            new File(cacheDirectory), version + ":profiling", className -> true);
+      } else {
+        recordingTransformer = asmTransformer;
+      }
+      synchronizationTransformer = new CachingTransformer(synchronizationTransformer,
+          new File(cacheDirectory), version + ":synchronization", className -> true);
+    }
+    //With dynamic instrumentation each test chooses whether to use the profile when it starts
+    FilterTransformer transformer = createFilter(recordingTransformer, synchronizationTransformer,
+        agentArgs, dynamic ? null : getRecordedClasses(profile));
+    FatesAgent.instrumentation = inst;
+    FatesAgent.methodFilter = methodFilter;
+    FatesAgent.filterTransformer = transformer;
+    FatesAgent.asmTransformer = asmTransformer;
+    FatesAgent.synchronizationTransformer = synchronizationTransformer;
+    FatesAgent.agentArgs = agentArgs;
+    if(dynamic) {
+      //Retransforming can't turn synchronized methods into synchronized blocks, so that is done
+      //once as classes are loaded. The retransformations then add hooks to those blocks
+      ClassFileTransformer synchronizedMethodTransformer = new SynchronizedMethodTransformer();
+      inst.addTransformer(createFilter(synchronizedMethodTransformer,
+          synchronizedMethodTransformer, agentArgs, null), false);
+      //Leave the loaded classes alone until a test starts
+      dynamicInstrumentation = new DynamicInstrumentation(inst, transformer);
+      Set<String> recordedClasses = getRecordedClasses(profile);
+      if(recordedClasses != null) {
+        profiledTransformer = createFilter(asmTransformer, synchronizationTransformer, agentArgs,
+            recordedClasses);
+      }
+      inst.addTransformer(dynamicInstrumentation, true);
+    } else {
+      inst.addTransformer(transformer, true);
+      try {
+        inst.retransformClasses(findClassesToTransform(inst, transformer));
+      } catch (UnmodifiableClassException e) {
+        throw new RuntimeException("Could not transform previously defined classes: " + e);
+      }
+    }
 
-    String[] methodEntryExitEnabledClasses = agentArgs.split(",");
+    ExecutionEventSingleton.setAvailable();
+  }
+
+  /**
+   * @return the profile set with {@link #PROFILE_PROPERTY}, or null if there is no profile
+   */
+  public static ExecutionProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Called when a test that was recorded into the profile finishes, to save the profile. With
+   * {@link #DYNAMIC_PROPERTY} set, the tests the profile covers then only instrument the classes
+   * in the profile. Otherwise the classes are already instrumented, and the profile is only used
+   * by the next JVM.
+   *
+   * @param test the name of the test
+   * @param covered true if every class was instrumented while the test ran, so that the profile
+   * now covers the test. See {@link ExecutionProfile#covers(String)}
+   */
+  public static synchronized void saveProfile(String test, boolean covered) throws IOException {
+    if(covered) {
+      profile.addTest(test);
+    }
+    profile.save();
+    if(dynamicInstrumentation != null) {
+      FilterTransformer narrowed = createFilter(asmTransformer, synchronizationTransformer,
+          agentArgs, profile.getClasses());
+      for(String className : methodFilter.getAddedClasses()) {
+        narrowed.includeClass(className.replace('.', '/'));
+      }
+      profiledTransformer = narrowed;
+    }
+  }
 
-    MethodEntryExitFilter filter = new FatesMethodEntryExitFilter(methodEntryExitEnabledClasses);
-    FilterTransformer transformer = new FilterTransformer(
-        new AsmTransformer(filter), "com/github/upthewaterspout/fates/core", "com/intellij", "java/lang/ThreadLocal", "java/lang/ref/WeakReference", "java/lang/ref/Reference", "java/lang/VerifyError", "java/lang/LinkageError");
-    inst.addTransformer(transformer, true);
+  /**
+   * Add method entry and exit hooks to more classes, so that they can be treated as atomic.
+   * Classes that are already loaded are retransformed. This allows one JVM to run tests with
+   * different atomic classes, rather than fixing them in the agent arguments.
+   *
+   * Classes instrumented at build time by the {@link OfflineWeaver} can't be changed, so in that
+   * case every class must already have been given to the weaver.
+   *
+   * @param classNames the binary names of the classes
+   * @throws IllegalStateException if the classes are preinstrumented and some of them don't have
+   * the hooks
+   */
+  public static synchronized void addAtomicClasses(Collection<String> classNames) {
+    if(methodFilter == null) {
+      checkPreinstrumented(classNames);
+      return;
+    }
+    Set<String> added = new HashSet<>();
+    for(String className : classNames) {
+      if(methodFilter.addClass(className)) {
+        filterTransformer.includeClass(className.replace('.', '/'));
+        if(profiledTransformer != null) {
+          profiledTransformer.includeClass(className.replace('.', '/'));
+        }
+        added.add(className);
+      }
+    }
+    if(added.isEmpty()) {
+      return;
+    }
 
+    List<Class<?>> loaded = new ArrayList<>();
+    for(Class<?> clazz : findClassesToTransform(instrumentation, filterTransformer)) {
+      if(added.contains(clazz.getName())) {
+        loaded.add(clazz);
+      }
+    }
+    if(!loaded.isEmpty()) {
+      try {
+        instrumentation.retransformClasses(loaded.toArray(new Class[0]));
+      } catch (UnmodifiableClassException e) {
+        throw new IllegalStateException("Could not add hooks to atomic classes", e);
+      }
+    }
+  }
+
+  /**
+   * Without the agent there is no way to add hooks to a class. If the classes were instrumented
+   * at build time, make sure the weaver already treated all of these classes as atomic, rather
+   * than silently running with them instrumented like any other class.
+   */
+  private static void checkPreinstrumented(Collection<String> classNames) {
+    if(!Boolean.getBoolean(ExecutionEventSingleton.PREINSTRUMENTED_PROPERTY)) {
+      return;
+    }
+    Set<String> hooked = new HashSet<>(DEFAULT_ATOMIC_CLASS_NAMES);
+    hooked.addAll(
+        Arrays.asList(System.getProperty(PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY, "").split(",")));
+    List<String> missing = new ArrayList<>();
+    for(String className : classNames) {
+      if(!hooked.contains(className)) {
+        missing.add(className);
+      }
+    }
+    if(!missing.isEmpty()) {
+      throw new IllegalStateException("Atomic classes " + missing
+          + " were not instrumented by the OfflineWeaver. Pass them to the weaver with --args and"
+          + " list them in the " + PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY + " system property");
+    }
+  }
+
+  /**
+   * Called when a test starts. With {@link #DYNAMIC_PROPERTY} set, this instruments the loaded
+   * classes, otherwise they are already instrumented and this does nothing.
+   *
+   * @param profiled true if the profile covers the test, so that only the classes in the profile
+   * need to be instrumented
+   * @return true if every class is instrumented for the test, so that it can be recorded into the
+   * profile
+   */
+  public static boolean beginInstrumentation(boolean profiled) {
+    if(dynamicInstrumentation == null) {
+      return getRecordedClasses(profile) == null;
+    }
+    FilterTransformer filter = profiledTransformer;
+    if(!profiled || filter == null) {
+      filter = filterTransformer;
+    }
+    return dynamicInstrumentation.begin(filter) == filterTransformer;
+  }
+
+  /**
+   * Called when a test finishes. With {@link #DYNAMIC_PROPERTY} set, this restores the original
+   * classes once no other tests are running.
+   */
+  public static void endInstrumentation() {
+    if(dynamicInstrumentation != null) {
+      dynamicInstrumentation.end();
+    }
+  }
+
+  /**
+   * @return the loaded classes that the transformer should be applied to
+   */
+  static Class<?>[] findClassesToTransform(Instrumentation inst, FilterTransformer transformer) {
     ArrayList<Class<?>> toTransform = new ArrayList<>();
     for(Class<?> clazz : inst.getAllLoadedClasses()) {
-      if(!clazz.isPrimitive() && !clazz.isArray() && !clazz.equals(Object.class)) {
+      //VM anonymous classes such as lambdas have a '/' in their name, and on Java 8 they claim to
+      //be modifiable but crash the JVM when retransformed
+      String name = clazz.getName();
+      if(inst.isModifiableClass(clazz) && !clazz.equals(Object.class) && name.indexOf('/') < 0
+          && !transformer.isExcluded(name.replace('.', '/'))) {
         toTransform.add(clazz);
       }
     }
+    return toTransform.toArray(new Class[0]);
+  }
 
+  /**
+   * @return the names of the loaded application classes that the filter would instrument and that
+   * have synchronized methods. Classes from the bootstrap class loader are left out, because they
+   * are loaded before an agent given with -javaagent starts as well, and so is the attach API that
+   * loaded the agent.
+   */
+  static List<String> findSynchronizedClasses(Instrumentation inst, FilterTransformer filter) {
+    List<String> synchronizedClasses = new ArrayList<>();
+    for(Class<?> clazz : findClassesToTransform(inst, filter)) {
+      if(clazz.getClassLoader() != null && !isAttachClass(clazz.getName())
+          && hasSynchronizedMethods(clazz)) {
+        synchronizedClasses.add(clazz.getName());
+      }
+    }
+    return synchronizedClasses;
+  }
+
+  private static boolean isAttachClass(String className) {
+    for(String pakage : ATTACH_PACKAGES) {
+      if(className.startsWith(pakage)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasSynchronizedMethods(Class<?> clazz) {
     try {
-      inst.retransformClasses(toTransform.toArray(new Class[0]));
-    } catch (UnmodifiableClassException e) {
-      throw new RuntimeException("Could not transform previously defined classes: " + e);
+      for(Method method : clazz.getDeclaredMethods()) {
+        if(Modifier.isSynchronized(method.getModifiers())) {
+          return true;
+        }
+      }
+    } catch(LinkageError e) {
+      //The class can't be linked, so none of its methods can be running
     }
+    return false;
+  }
 
-    ExecutionEventSingleton.setAvailable();
+  /**
+   * @return the classes in the profile, or null if there is no profile or it is still being
+   * recorded
+   */
+  private static Set<String> getRecordedClasses(ExecutionProfile profile) {
+    if(profile == null || profile.isRecording()) {
+      return null;
+    }
+    return profile.getClasses();
   }
 
-  public static void agentmain(String agentArgs, Instrumentation inst) throws IOException {
-    premain(agentArgs, inst);
+  /**
+   * Wrap the transformers so that they skip fates itself and the JDK classes fates depends on.
+   *
+   * If {@link #INSTRUMENTED_PACKAGES_PROPERTY} is set or profiled classes are given, only those
+   * packages and classes are instrumented, along with {@link #CONCURRENCY_PACKAGES}. The atomic
+   * classes are always instrumented, because they need their method entry and exit hooks to be
+   * treated as atomic. All other classes are given to the synchronization transformer instead.
+   * Code that isn't instrumented may still block on a monitor while it calls back into code that
+   * is, so the scheduler has to see every monitor to avoid waiting on a blocked thread.
+   *
+   * The method handle implementation in java.lang.invoke is skipped, because the hooks themselves
+   * are invoked through it. Linking call sites is still atomic, because
+   * java.lang.invoke.MethodHandleNatives is an atomic class.
+   */
+  static FilterTransformer createFilter(ClassFileTransformer transformer,
+                                        ClassFileTransformer synchronizationTransformer,
+                                        String agentArgs, Collection<String> profiledClasses) {
+    List<String> packages = getIncludedPackages();
+    Set<String> classes = new HashSet<>();
+    if(profiledClasses != null) {
+      for(String className : profiledClasses) {
+        classes.add(className.replace('.', '/'));
+      }
+    }
+    if(!packages.isEmpty() || profiledClasses != null) {
+      packages.addAll(Arrays.asList(CONCURRENCY_PACKAGES));
+    }
+    List<String> atomicClasses = new ArrayList<>(DEFAULT_ATOMIC_CLASS_NAMES);
+    atomicClasses.addAll(Arrays.asList(agentArgs.split(",")));
+    for(String className : atomicClasses) {
+      if(!className.isEmpty()) {
+        classes.add(className.replace('.', '/'));
+      }
+    }
+
+    return new FilterTransformer(
+        transformer, synchronizationTransformer, packages.toArray(new String[0]), classes, "com/github/upthewaterspout/fates/core", "com/intellij", "java/lang/ThreadLocal", "java/lang/ref/WeakReference", "java/lang/ref/Reference", "java/lang/VerifyError", "java/lang/LinkageError", "java/lang/invoke/");
+  }
+
+  private static List<String> getIncludedPackages() {
+    List<String> included = new ArrayList<>();
+    String packages = System.getProperty(INSTRUMENTED_PACKAGES_PROPERTY, "");
+    for(String pakage : packages.split(",")) {
+      if(!pakage.trim().isEmpty()) {
+        included.add(pakage.trim().replace('.', '/'));
+      }
+    }
+    return included;
+  }
+
+  /**
+   * Identify the agent jar, so that classes cached by a different build of the agent are not used.
+   * @return a version string, or null if the agent was not loaded from a jar
+   */
+  private static String getAgentVersion() {
+    //The agent is on the boot classpath, so it has no code source. Find the jar from the class file
+    URL classFile = ClassLoader.getSystemResource(FatesAgent.class.getName().replace('.', '/') + ".class");
+    if(classFile == null || !classFile.getProtocol().equals("jar")) {
+      return null;
+    }
+    try {
+      String path = classFile.getPath();
+      File jar = new File(new URI(path.substring(0, path.indexOf("!/"))));
+      return FatesAgent.class.getPackage().getImplementationVersion() + ":" + jar.length() + ":"
+          + jar.lastModified();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
   }
 
 }
@@ -24,9 +24,9 @@ import java.security.AccessController;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.MethodEntryExitFilter;
 
@@ -53,14 +53,43 @@ public class FatesMethodEntryExitFilter implements MethodEntryExitFilter {
   }
 
   private final Set<String> allInstrumentedClasses;
+  private final Set<String> addedClasses = ConcurrentHashMap.newKeySet();
 
   public FatesMethodEntryExitFilter(String ... instrumentedClasses) {
 
-    allInstrumentedClasses = new HashSet<>();
+    allInstrumentedClasses = ConcurrentHashMap.newKeySet();
     allInstrumentedClasses.addAll(Arrays.asList(instrumentedClasses));
     allInstrumentedClasses.addAll(DEFAULT_ATOMIC_CLASS_NAMES);
   }
 
+  /**
+   * Add method entry and exit hooks to another class, after the filter was created
+   * @return true if the class did not already have hooks
+   */
+  public boolean addClass(String className) {
+    if(allInstrumentedClasses.contains(className)) {
+      return false;
+    }
+    //Record the class as added first, so that it is never transformed with hooks without
+    //being known as added
+    addedClasses.add(className);
+    return allInstrumentedClasses.add(className);
+  }
+
+  /**
+   * @return true if the class was added with {@link #addClass(String)}
+   */
+  public boolean isAdded(String className) {
+    return addedClasses.contains(className);
+  }
+
+  /**
+   * @return the classes added with {@link #addClass(String)}
+   */
+  public Set<String> getAddedClasses() {
+    return Collections.unmodifiableSet(addedClasses);
+  }
+
   @Override
   public boolean test(String className, String methodName) {
     if(methodName.equals(CLASS_INITIALIZER_METHOD_NAME)) {
@@ -19,27 +19,81 @@ package com.github.upthewaterspout.fates.core.threading.instrument.agent;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
  * A {@link ClassFileTransformer} that only transforms classes that match
  * specific patterns.
+ *
+ * Classes in the excluded packages are not transformed. If any included packages are given, only
+ * classes in those packages are transformed, otherwise all classes that are not excluded are
+ * transformed. Individually included classes are always transformed, even if they are in an
+ * excluded package.
+ *
+ * Classes that are neither excluded nor included can be given to a second transformer, rather
+ * than being left alone.
  */
 public class FilterTransformer implements ClassFileTransformer {
 
+  private final String[] includedPackages;
+  private final Set<String> includedClasses;
   private final String[] excludedPackages;
   private ClassFileTransformer delegate;
+  private ClassFileTransformer notIncludedDelegate;
 
   public FilterTransformer(ClassFileTransformer delegate, String ... excludedPackages) {
+    this(delegate, new String[0], excludedPackages);
+  }
+
+  public FilterTransformer(ClassFileTransformer delegate, String[] includedPackages,
+                           String ... excludedPackages) {
+    this(delegate, includedPackages, Collections.emptySet(), excludedPackages);
+  }
+
+  /**
+   * @param includedClasses internal names of individual classes to transform regardless of the
+   * included and excluded packages
+   */
+  public FilterTransformer(ClassFileTransformer delegate, String[] includedPackages,
+                           Set<String> includedClasses, String ... excludedPackages) {
+    this(delegate, null, includedPackages, includedClasses, excludedPackages);
+  }
+
+  /**
+   * @param notIncludedDelegate the transformer for classes outside of the included packages that
+   * are not excluded, or null to leave them alone
+   * @param includedClasses internal names of individual classes to transform regardless of the
+   * included and excluded packages
+   */
+  public FilterTransformer(ClassFileTransformer delegate, ClassFileTransformer notIncludedDelegate,
+                           String[] includedPackages, Set<String> includedClasses,
+                           String ... excludedPackages) {
+    this.includedPackages = includedPackages;
+    this.includedClasses = ConcurrentHashMap.newKeySet();
+    this.includedClasses.addAll(includedClasses);
     this.excludedPackages = excludedPackages;
     this.delegate = delegate;
+    this.notIncludedDelegate = notIncludedDelegate;
   }
+
+  /**
+   * Transform another class regardless of the included and excluded packages
+   * @param className the internal name of the class
+   */
+  public void includeClass(String className) {
+    includedClasses.add(className);
+  }
+
   @Override
   public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
                           ProtectionDomain protectionDomain, byte[] classfileBuffer)
       throws IllegalClassFormatException {
-    if(!isExcluded(className)) {
-      return delegate.transform(loader,
+    ClassFileTransformer transformer = getTransformer(className);
+    if(transformer != null) {
+      return transformer.transform(loader,
           className,
           classBeingRedefined,
           protectionDomain,
@@ -49,7 +103,27 @@ public class FilterTransformer implements ClassFileTransformer {
   }
 
   public boolean isExcluded(String className) {
-    for(String pakage : excludedPackages) {
+    return getTransformer(className) == null;
+  }
+
+  private ClassFileTransformer getTransformer(String className) {
+    if(includedClasses.contains(className)) {
+      return delegate;
+    }
+
+    if(matches(className, excludedPackages)) {
+      return null;
+    }
+
+    if(includedPackages.length > 0 && !matches(className, includedPackages)) {
+      return notIncludedDelegate;
+    }
+
+    return delegate;
+  }
+
+  private boolean matches(String className, String[] packages) {
+    for(String pakage : packages) {
       if(className.startsWith(pakage)) {
         return true;
       }
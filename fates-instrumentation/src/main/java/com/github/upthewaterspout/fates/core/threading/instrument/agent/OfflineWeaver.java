@@ -0,0 +1,244 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.SiteTable;
+import com.github.upthewaterspout.fates.core.threading.instrument.asm.AsmTransformer;
+
+/**
+ * Adds the fates instrumentation to classes at build time, rather than with the java agent.
+ *
+ * This runs the same transformation as {@link FatesAgent} over jars and class directories and
+ * writes out instrumented jars. It can also instrument the classes of the JDK itself. Tests can
+ * then run in process against the instrumented jars without the agent, as long as the JVM is
+ * started with
+ *
+ * <ul>
+ *   <li>The instrumented JDK classes prepended to the boot classpath</li>
+ *   <li>The fates-instrumentation jar appended to the boot classpath</li>
+ *   <li>The system property {@link ExecutionEventSingleton#PREINSTRUMENTED_PROPERTY} set to true</li>
+ *   <li>The system property {@link ExecutionEventSingleton#PREINSTRUMENTED_SITES_PROPERTY} set to
+ *   the sites file written by the weaver, which maps the ids compiled into the instrumented
+ *   classes back to the field accesses</li>
+ *   <li>The system property {@link FatesAgent#PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY} set to the
+ *   agentArgs given to the weaver, if the tests add atomic classes</li>
+ * </ul>
+ *
+ * Usage: OfflineWeaver [--args agentArgs] [--jdk output.jar] --sites sites [input output]...
+ */
+public class OfflineWeaver {
+
+  private final ClassFileTransformer transformer;
+
+  /**
+   * @param agentArgs the same arguments that would be passed to the java agent
+   */
+  public OfflineWeaver(String agentArgs) {
+    FatesMethodEntryExitFilter methodFilter = new FatesMethodEntryExitFilter(agentArgs.split(","));
+    this.transformer = FatesAgent.createFilter(
+        new AsmTransformer(methodFilter, false),
+        new AsmTransformer(methodFilter, false, true), agentArgs, null);
+  }
+
+  public static void main(String[] args) throws IOException {
+    String agentArgs = "";
+    String jdkOutput = null;
+    String sitesOutput = null;
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--args")) {
+        agentArgs = args[++i];
+      } else if (args[i].equals("--jdk")) {
+        jdkOutput = args[++i];
+      } else if (args[i].equals("--sites")) {
+        sitesOutput = args[++i];
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.size() % 2 != 0 || sitesOutput == null) {
+      throw new IllegalStateException(
+          "Usage: OfflineWeaver [--args agentArgs] [--jdk output.jar] --sites sites [input output]...");
+    }
+
+    OfflineWeaver weaver = new OfflineWeaver(agentArgs);
+    if (jdkOutput != null) {
+      weaver.weaveJdk(new File(jdkOutput));
+    }
+    for (int i = 0; i < paths.size(); i += 2) {
+      weaver.weave(new File(paths.get(i)), new File(paths.get(i + 1)));
+    }
+    weaver.saveSites(new File(sitesOutput));
+  }
+
+  /**
+   * Write out the field access sites of all of the classes instrumented so far. The instrumented
+   * classes only refer to these sites by id, so the JVM that runs them needs this file.
+   * @param output the file to write the sites to
+   */
+  public void saveSites(File output) throws IOException {
+    File parent = output.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+      SiteTable.save(out);
+    }
+  }
+
+  /**
+   * Instrument the classes in a jar or a directory of classes
+   * @param input a jar or a directory
+   * @param output the jar to write the instrumented classes to
+   */
+  public void weave(File input, File output) throws IOException {
+    try (ZipOutputStream out = open(output)) {
+      copy(input, out, new HashSet<>(), false);
+    }
+  }
+
+  /**
+   * Instrument the classes on the boot classpath of this JVM. The result should be prepended to
+   * the boot classpath with -Xbootclasspath/p, so this only works with java 8.
+   * @param output the jar to write the instrumented classes to
+   */
+  public void weaveJdk(File output) throws IOException {
+    String bootClassPath = System.getProperty("sun.boot.class.path");
+    if (bootClassPath == null) {
+      throw new IllegalStateException(
+          "The JDK classes can only be instrumented ahead of time on java 8");
+    }
+
+    try (ZipOutputStream out = open(output)) {
+      Set<String> written = new HashSet<>();
+      for (String path : bootClassPath.split(File.pathSeparator)) {
+        File input = new File(path);
+        if (input.exists() && !isFatesJar(input)) {
+          copy(input, out, written, true);
+        }
+      }
+    }
+  }
+
+  private boolean isFatesJar(File input) {
+    return input.getName().startsWith("fates-instrumentation");
+  }
+
+  private ZipOutputStream open(File output) throws IOException {
+    File parent = output.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    return new ZipOutputStream(new FileOutputStream(output));
+  }
+
+  private void copy(File input, ZipOutputStream out, Set<String> written, boolean bootstrap)
+      throws IOException {
+    if (input.isDirectory()) {
+      Path root = input.toPath();
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(root)) {
+        files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+        write(name, Files.readAllBytes(file), out, written, bootstrap);
+      }
+    } else {
+      try (ZipFile zip = new ZipFile(input)) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          if (!entry.isDirectory()) {
+            write(entry.getName(), read(zip.getInputStream(entry)), out, written, bootstrap);
+          }
+        }
+      }
+    }
+  }
+
+  private void write(String name, byte[] bytes, ZipOutputStream out, Set<String> written,
+                     boolean bootstrap) throws IOException {
+    if (isSignature(name) || !written.add(name)) {
+      return;
+    }
+    if (name.endsWith(".class") && !name.equals("module-info.class")) {
+      bytes = transform(name.substring(0, name.length() - ".class".length()), bytes, bootstrap);
+    }
+    out.putNextEntry(new ZipEntry(name));
+    out.write(bytes);
+    out.closeEntry();
+  }
+
+  /**
+   * Transform a single class. Classes that can't be transformed are left as they are, the same as
+   * they would be by the java agent.
+   */
+  private byte[] transform(String className, byte[] bytes, boolean bootstrap) {
+    //The agent never transforms Object
+    if (className.equals("java/lang/Object")) {
+      return bytes;
+    }
+
+    //The loader is only used to tell whether the class will be on the boot classpath
+    ClassLoader loader = bootstrap ? null : ClassLoader.getSystemClassLoader();
+    try {
+      byte[] result = transformer.transform(loader, className, null, null, bytes);
+      return result == null ? bytes : result;
+    } catch (Throwable t) {
+      return bytes;
+    }
+  }
+
+  /**
+   * Signatures of signed jars won't match the instrumented classes, so they are dropped
+   */
+  private boolean isSignature(String name) {
+    String upperCase = name.toUpperCase();
+    return upperCase.startsWith("META-INF/") && (upperCase.endsWith(".SF")
+        || upperCase.endsWith(".RSA") || upperCase.endsWith(".DSA") || upperCase.endsWith(".EC"));
+  }
+
+  private byte[] read(InputStream in) throws IOException {
+    try (InputStream stream = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+}
@@ -32,15 +32,28 @@ public abstract class AbstractClassVisitor extends ClassVisitor {
   private String methodName;
   private int lastLineNumber;
   private String sourceFile;
+  private final boolean dynamicHooks;
+  private int classVersion;
 
   public AbstractClassVisitor(ClassVisitor cv) {
+    this(cv, false);
+  }
+
+  /**
+   * @param dynamicHooks true if notification hooks may be added as invokedynamic instructions.
+   * This should be false for classes loaded by the bootstrap classloader, which may be needed to
+   * link the invokedynamic instructions in the first place.
+   */
+  public AbstractClassVisitor(ClassVisitor cv, boolean dynamicHooks) {
     super(ASM7, cv);
+    this.dynamicHooks = dynamicHooks;
   }
 
   public void visit(int version, int access, String name, String signature, String superName,
                     String[] interfaces) {
     super.visit(version, access, name, signature, superName, interfaces);
     className = name;
+    classVersion = version & 0xFFFF;
   }
 
   @Override
@@ -69,6 +82,15 @@ public abstract class AbstractClassVisitor extends ClassVisitor {
     return this.sourceFile;
   }
 
+  /**
+   * True if notification hooks should be added as invokedynamic instructions. Classes older than
+   * 1.7 can't contain invokedynamic, and we don't compute the stack map frames needed to upgrade
+   * them, so those classes always use plain static calls.
+   */
+  public boolean useDynamicHooks() {
+    return dynamicHooks && classVersion >= Opcodes.V1_7;
+  }
+
   public int getLastLineNumber() {
     return lastLineNumber;
   }
@@ -32,23 +32,50 @@ import org.objectweb.asm.util.CheckClassAdapter;
 public class AsmTransformer implements ClassFileTransformer {
 
   private final MethodEntryExitFilter methodFilter;
+  private final boolean retransformable;
+  private final boolean synchronizationOnly;
 
   public AsmTransformer(MethodEntryExitFilter methodFilter) {
+    this(methodFilter, false);
+  }
+
+  /**
+   * @param retransformable if true, classes are always transformed as if they were being
+   * retransformed, so the result does not change the shape of the class. This allows classes
+   * that are loaded already transformed to be restored to their original bytecode later.
+   */
+  public AsmTransformer(MethodEntryExitFilter methodFilter, boolean retransformable) {
+    this(methodFilter, retransformable, false);
+  }
+
+  /**
+   * @param synchronizationOnly if true, only the hooks for monitors, wait and notify, parking and
+   * starting, joining and interrupting threads are added. That is enough for the scheduler to
+   * know which threads are blocked, for code whose field accesses and method calls it otherwise
+   * ignores.
+   */
+  public AsmTransformer(MethodEntryExitFilter methodFilter, boolean retransformable,
+                        boolean synchronizationOnly) {
     this.methodFilter = methodFilter;
+    this.retransformable = retransformable;
+    this.synchronizationOnly = synchronizationOnly;
   }
 
   @Override
   public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
                           ProtectionDomain protectionDomain, byte[] classfileBuffer) {
     try {
+      //Classes from the bootstrap classloader may be needed to link invokedynamic instructions,
+      //so they always call the hooks directly
+      boolean dynamicHooks = loader != null;
       ClassReader reader = new ClassReader(classfileBuffer);
       ClassWriter outputWriter = new ClassWriter(reader, 0);
       ClassVisitor transformingVisitor = outputWriter;
       transformingVisitor = new IncreaseMaxStack(transformingVisitor, 6);
       transformingVisitor = new MinimumVersionVisitor(transformingVisitor);
       transformingVisitor = new InstrumentThreadSynchronizedMethods(transformingVisitor);
-      transformingVisitor = new InstrumentSynchronizedBlock(transformingVisitor);
-      if(classBeingRedefined == null) {
+      transformingVisitor = new InstrumentSynchronizedBlock(transformingVisitor, dynamicHooks);
+      if(classBeingRedefined == null && !retransformable) {
         transformingVisitor = new InstrumentSynchronizedMethod(transformingVisitor);
       }
       transformingVisitor = new InstrumentWaitNotify(transformingVisitor);
@@ -56,9 +83,12 @@ public class AsmTransformer implements ClassFileTransformer {
       transformingVisitor = new InstrumentThreadExit(transformingVisitor);
       transformingVisitor = new InstrumentJoin(transformingVisitor);
       transformingVisitor = new InstrumentThreadInterrupt(transformingVisitor);
-      transformingVisitor = new InstrumentFieldAccess(transformingVisitor);
-      transformingVisitor = new InstrumentMethodCalls(transformingVisitor, methodFilter);
-      transformingVisitor = new InstrumentNewObject(transformingVisitor);
+      if(!synchronizationOnly) {
+        transformingVisitor = new InstrumentFieldAccess(transformingVisitor, dynamicHooks);
+        transformingVisitor = new InstrumentArrayStore(transformingVisitor, dynamicHooks);
+        transformingVisitor = new InstrumentMethodCalls(transformingVisitor, methodFilter, dynamicHooks);
+        transformingVisitor = new InstrumentNewObject(transformingVisitor, dynamicHooks);
+      }
       reader.accept(transformingVisitor, ClassReader.EXPAND_FRAMES);
       byte[] result =  outputWriter.toByteArray();
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument.asm;
+
+import static com.github.upthewaterspout.fates.core.threading.instrument.asm.SingletonCall.OBJECT;
+import static org.objectweb.asm.Opcodes.AASTORE;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.DASTORE;
+import static org.objectweb.asm.Opcodes.DUP2_X1;
+import static org.objectweb.asm.Opcodes.DUP2_X2;
+import static org.objectweb.asm.Opcodes.DUP_X1;
+import static org.objectweb.asm.Opcodes.DUP_X2;
+import static org.objectweb.asm.Opcodes.IASTORE;
+import static org.objectweb.asm.Opcodes.LASTORE;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.POP2;
+import static org.objectweb.asm.Opcodes.SASTORE;
+import static org.objectweb.asm.Opcodes.SWAP;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * Adds calls to {@link ExecutionEventSingleton#beforeSetArrayElement(Object, Object)} before
+ * every instruction that changes an array element. The new value is only passed for arrays of
+ * objects.
+ */
+public class InstrumentArrayStore extends AbstractClassVisitor {
+
+  public InstrumentArrayStore(ClassVisitor cv) {
+    super(cv);
+  }
+
+  public InstrumentArrayStore(ClassVisitor cv, boolean dynamicHooks) {
+    super(cv, dynamicHooks);
+  }
+
+  @Override
+  public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                                   String[] exceptions) {
+    return new ArrayStoreHookMethodVisitor(
+        super.visitMethod(access, name, desc, signature, exceptions), access, name, desc);
+  }
+
+  private class ArrayStoreHookMethodVisitor extends HookMethodVisitor {
+
+    protected ArrayStoreHookMethodVisitor(MethodVisitor mv, int access, String name,
+                                          String desc) {
+      super(mv, access, name, desc);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+      if(opcode == AASTORE) {
+        callBeforeSetObjectElement();
+      } else if(opcode == LASTORE || opcode == DASTORE) {
+        callBeforeSetWideElement();
+      } else if(opcode >= IASTORE && opcode <= SASTORE) {
+        callBeforeSetElement();
+      }
+
+      super.visitInsn(opcode);
+    }
+
+    private void callBeforeSetObjectElement() {
+      //Stack = array, index, value
+      pushArray();
+
+      //Stack = array, index, value, array
+
+      super.visitInsn(SWAP);
+      super.visitInsn(DUP_X1);
+
+      //Stack = array, index, value, array, value
+      invokeHook();
+    }
+
+    private void callBeforeSetElement() {
+      //Stack = array, index, value
+      pushArray();
+
+      //Stack = array, index, value, array
+      super.visitInsn(ACONST_NULL);
+      invokeHook();
+    }
+
+    private void callBeforeSetWideElement() {
+      //Stack = array, index, valueHigh, valueLow
+
+      super.visitInsn(DUP2_X2);
+      super.visitInsn(POP2);
+
+      //Stack = valueHigh, valueLow, array, index
+
+      super.visitInsn(DUP2_X2);
+      super.visitInsn(POP);
+
+      //Stack = array, index, valueHigh, valueLow, array
+      super.visitInsn(ACONST_NULL);
+      invokeHook();
+    }
+
+    /**
+     * Copy the array of a single slot array store to the top of the stack
+     */
+    private void pushArray() {
+      //Stack = array, index, value
+
+      super.visitInsn(DUP_X2);
+      super.visitInsn(POP);
+
+      //Stack = value, array, index
+
+      super.visitInsn(DUP2_X1);
+      super.visitInsn(POP);
+
+      //Stack = array, index, value, array
+    }
+
+    private void invokeHook() {
+      SingletonCall.addHook(this, useDynamicHooks(), "beforeSetArrayElement", Type.VOID_TYPE,
+          OBJECT, OBJECT);
+    }
+  }
+}
@@ -17,7 +17,6 @@
 package com.github.upthewaterspout.fates.core.threading.instrument.asm;
 
 import static com.github.upthewaterspout.fates.core.threading.instrument.asm.SingletonCall.OBJECT;
-import static com.github.upthewaterspout.fates.core.threading.instrument.asm.SingletonCall.STRING;
 import static org.objectweb.asm.Opcodes.DUP;
 import static org.objectweb.asm.Opcodes.DUP2;
 import static org.objectweb.asm.Opcodes.DUP2_X1;
@@ -31,6 +30,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.SiteTable;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -39,9 +39,12 @@ import org.objectweb.asm.Type;
 
 
 /**
- * Adds calls to {@link ExecutionEventSingleton#beforeSetField(Object, Object, String, String, String, int)} and
- * {@link ExecutionEventSingleton#beforeGetField(Object, String, String, String, int)} before all
+ * Adds calls to {@link ExecutionEventSingleton#beforeSetField(Object, Object, int)} and
+ * {@link ExecutionEventSingleton#beforeGetField(Object, int)} before all
  * field access.
+ *
+ * Each field access is registered in the {@link SiteTable}, and only the id of the site is passed
+ * to {@link ExecutionEventSingleton}.
  */
 public class InstrumentFieldAccess extends AbstractClassVisitor {
 
@@ -51,6 +54,10 @@ public class InstrumentFieldAccess extends AbstractClassVisitor {
     super(cv);
   }
 
+  public InstrumentFieldAccess(ClassVisitor cv, boolean dynamicHooks) {
+    super(cv, dynamicHooks);
+  }
+
   @Override
   public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
     return new FieldAccessHookMethodVisitor(super.visitMethod(access, name, desc, signature, exceptions), access, name, desc);
@@ -93,9 +100,9 @@ public class InstrumentFieldAccess extends AbstractClassVisitor {
       } else {
         visitInsn(DUP);
       }
-      putClassMethodAndLine(fieldName, className, methodName, lineNumber);
-      SingletonCall.add(this, "beforeGetField", Type.VOID_TYPE, OBJECT,
-          STRING, STRING, STRING, Type.INT_TYPE);
+      putSite(fieldName, className, methodName, lineNumber);
+      SingletonCall.addHook(this, useDynamicHooks(), "beforeGetField", Type.VOID_TYPE, OBJECT,
+          Type.INT_TYPE);
     }
 
     protected void callBeforeSetField(int opcode, String owner, String fieldName, Type fieldType, String className,
@@ -132,7 +139,7 @@ public class InstrumentFieldAccess extends AbstractClassVisitor {
         //Stack = owner, value, owner, value
       }
 
-      putClassMethodAndLine(fieldName, className, methodName, lineNumber);
+      putSite(fieldName, className, methodName, lineNumber);
       invokeSetFieldHook();
     }
 
@@ -155,15 +162,13 @@ public class InstrumentFieldAccess extends AbstractClassVisitor {
     }
 
     private void invokeSetFieldHook() {
-      SingletonCall.add(this, "beforeSetField", Type.VOID_TYPE, OBJECT, OBJECT, STRING,
-          STRING, STRING, Type.INT_TYPE);
+      SingletonCall.addHook(this, useDynamicHooks(), "beforeSetField", Type.VOID_TYPE, OBJECT,
+          OBJECT, Type.INT_TYPE);
     }
 
-    private void putClassMethodAndLine(String fieldName, String className, String methodName, int lineNumber) {
-      visitLdcInsn(fieldName);
-      visitLdcInsn(className.replace('/', '.'));
-      visitLdcInsn(methodName);
-      visitIntInsn(Opcodes.SIPUSH, lineNumber);
+    private void putSite(String fieldName, String className, String methodName, int lineNumber) {
+      visitLdcInsn(SiteTable.register(fieldName, className.replace('/', '.'), methodName,
+          lineNumber));
     }
 
     private void callBeforeStaticSetField(String owner, Type fieldType, String fieldName, String className,
@@ -187,7 +192,7 @@ public class InstrumentFieldAccess extends AbstractClassVisitor {
         //Stack  = value, owner_class, value
       }
 
-      putClassMethodAndLine(fieldName, className, methodName, lineNumber);
+      putSite(fieldName, className, methodName, lineNumber);
       invokeSetFieldHook();
     }
 
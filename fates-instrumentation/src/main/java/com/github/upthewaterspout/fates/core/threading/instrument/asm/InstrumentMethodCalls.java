@@ -31,7 +31,12 @@ public class InstrumentMethodCalls extends AbstractClassVisitor {
   private final MethodEntryExitFilter filter;
 
   public InstrumentMethodCalls(ClassVisitor cv, MethodEntryExitFilter filter) {
-    super(cv);
+    this(cv, filter, false);
+  }
+
+  public InstrumentMethodCalls(ClassVisitor cv, MethodEntryExitFilter filter,
+                               boolean dynamicHooks) {
+    super(cv, dynamicHooks);
     this.filter = filter;
   }
 
@@ -50,8 +55,8 @@ public class InstrumentMethodCalls extends AbstractClassVisitor {
     protected void onMethodEnter() {
       if(filter.test(getBinaryClassName(), getMethodName())) {
         pushClassAndMethod();
-        SingletonCall
-            .add(this, "beforeMethod", Type.VOID_TYPE, SingletonCall.STRING, SingletonCall.STRING);
+        SingletonCall.addHook(this, useDynamicHooks(), "beforeMethod", Type.VOID_TYPE,
+            SingletonCall.STRING, SingletonCall.STRING);
       }
       super.onMethodEnter();
     }
@@ -68,8 +73,8 @@ public class InstrumentMethodCalls extends AbstractClassVisitor {
     protected void onMethodExit(int opcode) {
       if(filter.test(getBinaryClassName(), getMethodName())) {
         pushClassAndMethod();
-        SingletonCall
-            .add(this, "afterMethod", Type.VOID_TYPE, SingletonCall.STRING, SingletonCall.STRING);
+        SingletonCall.addHook(this, useDynamicHooks(), "afterMethod", Type.VOID_TYPE,
+            SingletonCall.STRING, SingletonCall.STRING);
       }
 
       super.onMethodExit(opcode);
@@ -16,8 +16,10 @@
 
 package com.github.upthewaterspout.fates.core.threading.instrument.asm;
 
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
 import static org.objectweb.asm.Opcodes.DUP;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.NEWARRAY;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -29,12 +31,19 @@ import org.objectweb.asm.Type;
  * after the constructor for java.lang.object is called. We instrument this point rather than
  * after the NEW opcode because because we can't actually pass the object to the hook until this
  * constructor is called. This should still happen
+ *
+ * Arrays don't have a constructor, so for arrays the hook is called right after the array is
+ * created.
  */
 public class InstrumentNewObject  extends AbstractClassVisitor  {
   public InstrumentNewObject(ClassVisitor cv) {
     super(cv);
   }
 
+  public InstrumentNewObject(ClassVisitor cv, boolean dynamicHooks) {
+    super(cv, dynamicHooks);
+  }
+
   @Override
   public MethodVisitor visitMethod(int access, String name, String desc, String signature,
                                    String[] exceptions) {
@@ -42,7 +51,7 @@ public class InstrumentNewObject  extends AbstractClassVisitor  {
     return new InstrumentNew(Opcodes.ASM7, delegate, access, name, desc);
   }
 
-  public static class InstrumentNew extends MethodVisitor {
+  public class InstrumentNew extends MethodVisitor {
 
     protected InstrumentNew(int api, MethodVisitor methodVisitor, int access, String name,
                             String descriptor) {
@@ -59,6 +68,34 @@ public class InstrumentNewObject  extends AbstractClassVisitor  {
       }
     }
 
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+      super.visitIntInsn(opcode, operand);
+      if(opcode == NEWARRAY) {
+        addAfterNewArrayCall();
+      }
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+      super.visitTypeInsn(opcode, type);
+      if(opcode == ANEWARRAY) {
+        addAfterNewArrayCall();
+      }
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+      super.visitMultiANewArrayInsn(descriptor, numDimensions);
+      addAfterNewArrayCall();
+    }
+
+    private void addAfterNewArrayCall() {
+      visitInsn(DUP);
+      SingletonCall.addHook(this, useDynamicHooks(), "afterNew", Type.VOID_TYPE,
+          SingletonCall.OBJECT);
+    }
+
     private void addAfterNewCall(int opcode, String owner, String name, String descriptor,
                                  boolean isInterface) {
       //Make a copy of the object on the stack
@@ -67,7 +104,8 @@ public class InstrumentNewObject  extends AbstractClassVisitor  {
       super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
 
       //Invoke the hook
-      SingletonCall.add(this, "afterNew", Type.VOID_TYPE, SingletonCall.OBJECT);
+      SingletonCall.addHook(this, useDynamicHooks(), "afterNew", Type.VOID_TYPE,
+          SingletonCall.OBJECT);
     }
   }
 
@@ -37,6 +37,10 @@ public class InstrumentSynchronizedBlock extends AbstractClassVisitor {
     super(cv);
   }
 
+  public InstrumentSynchronizedBlock(ClassVisitor cv, boolean dynamicHooks) {
+    super(cv, dynamicHooks);
+  }
+
   @Override
   public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
     final MethodVisitor delegate = super.visitMethod(access, name, desc, signature, exceptions);
@@ -59,12 +63,14 @@ public class InstrumentSynchronizedBlock extends AbstractClassVisitor {
     public void visitInsn(int opcode) {
       if (Opcodes.MONITORENTER == opcode) {
         visitInsn(DUP);
-        SingletonCall.add(this, "beforeSynchronization", Type.VOID_TYPE, SingletonCall.OBJECT);
+        SingletonCall.addHook(this, useDynamicHooks(), "beforeSynchronization", Type.VOID_TYPE,
+            SingletonCall.OBJECT);
         super.visitInsn(opcode);
       } else if (Opcodes.MONITOREXIT == opcode) {
         visitInsn(DUP);
         super.visitInsn(opcode);
-        SingletonCall.add(this, "afterSynchronization", Type.VOID_TYPE, SingletonCall.OBJECT);
+        SingletonCall.addHook(this, useDynamicHooks(), "afterSynchronization", Type.VOID_TYPE,
+            SingletonCall.OBJECT);
 
       } else {
         super.visitInsn(opcode);
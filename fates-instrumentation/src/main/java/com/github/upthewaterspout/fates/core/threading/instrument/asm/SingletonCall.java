@@ -16,9 +16,13 @@
 
 package com.github.upthewaterspout.fates.core.threading.instrument.asm;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.HookCallSites;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -31,6 +35,11 @@ public class SingletonCall {
   public static final Type OBJECT = Type.getType(Object.class);
   public static final Type STRING = Type.getType(String.class);
 
+  private static final Handle BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+      Type.getInternalName(HookCallSites.class), "bootstrap",
+      Type.getMethodDescriptor(Type.getType(CallSite.class), Type.getType(MethodHandles.Lookup.class),
+          STRING, Type.getType(MethodType.class)), false);
+
   /**
    * Add a call to {@link ExecutionEventSingleton in this method}. It is the responsibility
    * of the caller of this method to have already prepared the stack correctly!
@@ -45,4 +54,28 @@ public class SingletonCall {
         Type.getInternalName(ExecutionEventSingleton.class), methodName, Type.getMethodDescriptor(returnType, parameterTypes), false);
 
   }
+
+  /**
+   * Add a call to a notification hook in {@link ExecutionEventSingleton}. If dynamic is true, the
+   * call is added as an invokedynamic instruction linked by {@link HookCallSites}, which does
+   * nothing while no listener is installed. Otherwise this is the same as
+   * {@link #add(MethodVisitor, String, Type, Type...)}
+   *
+   * @param methodVisitor A methodvisitor to pass the method call to
+   * @param dynamic whether to use invokedynamic. The class must be at least version 1.7
+   * @param methodName The name of the method
+   * @param returnType The return type of the method
+   * @param parameterTypes The parameter types of the method
+   */
+  public static void addHook(MethodVisitor methodVisitor, boolean dynamic, String methodName,
+                             Type returnType, Type... parameterTypes) {
+    if(!dynamic) {
+      add(methodVisitor, methodName, returnType, parameterTypes);
+      return;
+    }
+
+    methodVisitor.visitInvokeDynamicInsn(methodName,
+        Type.getMethodDescriptor(returnType, parameterTypes), BOOTSTRAP);
+  }
+
 }
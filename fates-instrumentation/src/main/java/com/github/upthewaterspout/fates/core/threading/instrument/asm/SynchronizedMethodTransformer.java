@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument.asm;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+/**
+ * Transformer that only converts synchronized methods into synchronized blocks, using
+ * {@link InstrumentSynchronizedMethod}, without adding any hooks.
+ *
+ * Retransforming a class can't change the modifiers of its methods, so an {@link AsmTransformer}
+ * that is used to retransform classes can't do this itself. This transformer is registered as
+ * not retransformable instead, so that it runs once when each class is loaded. Its output is what
+ * later retransformations start from, so they can add hooks to the synchronized blocks.
+ */
+public class SynchronizedMethodTransformer implements ClassFileTransformer {
+
+  @Override
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                          ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+    try {
+      ClassReader reader = new ClassReader(classfileBuffer);
+      if(classBeingRedefined != null || !hasSynchronizedMethods(reader)) {
+        return null;
+      }
+      ClassWriter outputWriter = new ClassWriter(reader, 0);
+      ClassVisitor transformingVisitor = outputWriter;
+      transformingVisitor = new IncreaseMaxStack(transformingVisitor, 1);
+      transformingVisitor = new MinimumVersionVisitor(transformingVisitor);
+      transformingVisitor = new InstrumentSynchronizedMethod(transformingVisitor);
+      reader.accept(transformingVisitor, ClassReader.EXPAND_FRAMES);
+      byte[] result = outputWriter.toByteArray();
+
+      new ClassReader(result).accept(new CheckClassAdapter(new ClassWriter(0)), 0);
+
+      return result;
+    } catch(Throwable t) {
+      System.err.println("Error transforming " + className);
+      t.printStackTrace();
+      throw t;
+    }
+  }
+
+  private boolean hasSynchronizedMethods(ClassReader reader) {
+    boolean[] found = new boolean[1];
+    reader.accept(new ClassVisitor(Opcodes.ASM7) {
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                       String signature, String[] exceptions) {
+        found[0] |= (access & Opcodes.ACC_SYNCHRONIZED) != 0;
+        return null;
+      }
+    }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return found[0];
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ThreadContextTest {
+
+  @Test
+  public void ignoresEventsFromThreadOutsideTest() {
+    NonReentrantExecutionEventListener listener =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void beforeMethod(String className, String methodName) {
+            ThreadContext.current().setOutsideTest(true);
+          }
+        });
+
+    listener.beforeMethod("class", "method");
+
+    ThreadContext context = ThreadContext.current();
+    assertTrue(context.ignoresEvents());
+    assertTrue(context.ignoresFieldRead("owner"));
+    assertTrue(context.ignoresFieldUpdate("owner"));
+    assertTrue(context.ignoresSynchronization());
+  }
+
+  @Test
+  public void ignoresReadsAndSynchronizationInAtomicMethod() {
+    NonReentrantExecutionEventListener listener =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void beforeMethod(String className, String methodName) {
+            ThreadContext.current().setInAtomicMethod(true);
+          }
+        });
+
+    listener.beforeMethod("class", "method");
+
+    ThreadContext context = ThreadContext.current();
+    assertFalse(context.ignoresEvents());
+    assertTrue(context.ignoresFieldRead("owner"));
+    assertFalse(context.ignoresFieldUpdate("owner"));
+    assertTrue(context.ignoresSynchronization());
+  }
+
+  @Test
+  public void ignoresFieldAccessOnConfinedObjects() {
+    Object confined = new Object();
+    NonReentrantExecutionEventListener listener =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void afterNew(Object object) {
+            ThreadContext.current().getConfinedObjects(this).add(object);
+          }
+        });
+
+    listener.afterNew(confined);
+
+    ThreadContext context = ThreadContext.current();
+    assertTrue(context.ignoresFieldRead(confined));
+    assertTrue(context.ignoresFieldUpdate(confined));
+    assertFalse(context.ignoresFieldRead(new Object()));
+    assertFalse(context.ignoresFieldUpdate(new Object()));
+  }
+
+  @Test
+  public void forgetsStateWhenListenerIsUninstalled() {
+    NonReentrantExecutionEventListener listener =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void beforeMethod(String className, String methodName) {
+            ThreadContext.current().setOutsideTest(true);
+          }
+        });
+
+    listener.beforeMethod("class", "method");
+    listener.uninstall();
+
+    assertFalse(ThreadContext.current().ignoresEvents());
+  }
+
+  @Test
+  public void forgetsStateWhenAnotherListenerDispatchesEvent() {
+    NonReentrantExecutionEventListener first =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void beforeMethod(String className, String methodName) {
+            ThreadContext.current().setOutsideTest(true);
+          }
+        });
+    NonReentrantExecutionEventListener second =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener());
+
+    first.beforeMethod("class", "method");
+    second.beforeMethod("class", "method");
+
+    assertFalse(ThreadContext.current().ignoresEvents());
+  }
+
+  @Test
+  public void ignoresEventsWhileInsideListener() {
+    boolean[] ignored = new boolean[1];
+    NonReentrantExecutionEventListener listener =
+        new NonReentrantExecutionEventListener(new NoopExecutionEventListener() {
+          @Override
+          public void beforeMethod(String className, String methodName) {
+            ignored[0] = ThreadContext.current().ignoresEvents();
+          }
+        });
+
+    listener.beforeMethod("class", "method");
+
+    assertTrue(ignored[0]);
+    assertFalse(ThreadContext.current().ignoresEvents());
+  }
+}
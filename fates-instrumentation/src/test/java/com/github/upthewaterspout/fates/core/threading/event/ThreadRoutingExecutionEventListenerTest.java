@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadRoutingExecutionEventListenerTest {
+
+  private ExecutionEventListener first;
+  private ExecutionEventListener second;
+  private ThreadRoutingExecutionEventListener router;
+
+  @Before
+  public void setup() {
+    first = mock(ExecutionEventListener.class);
+    second = mock(ExecutionEventListener.class);
+    router = new ThreadRoutingExecutionEventListener();
+  }
+
+  @Test
+  public void routesEventsToListenerForCurrentThread() throws InterruptedException {
+    router.register(Thread.currentThread(), first);
+    Thread thread = new Thread(() -> {
+      router.register(Thread.currentThread(), second);
+      router.beforeGetField("owner", "field", "class", "method", 1);
+    });
+    thread.start();
+    thread.join();
+
+    router.beforeGetField("owner", "field", "class", "method", 0);
+
+    verify(first).beforeGetField("owner", "field", "class", "method", 0);
+    verify(second).beforeGetField("owner", "field", "class", "method", 1);
+  }
+
+  @Test
+  public void routesStartedThreadsToParentListener() throws InterruptedException {
+    router.register(Thread.currentThread(), first);
+    Thread thread = new Thread(() -> {
+      router.beforeGetField("owner", "field", "class", "method", 1);
+    });
+    router.beforeThreadStart(thread);
+    thread.start();
+    router.afterThreadStart(thread);
+    thread.join();
+
+    verify(first).beforeThreadStart(thread);
+    verify(first).beforeGetField("owner", "field", "class", "method", 1);
+  }
+
+  @Test
+  public void ignoresUnroutedThreads() throws InterruptedException {
+    router.register(Thread.currentThread(), first);
+    Thread thread = new Thread(() -> {
+      router.beforeGetField("owner", "field", "class", "method", 1);
+    });
+    thread.start();
+    thread.join();
+
+    verify(first, times(0)).beforeGetField(any(), any(), any(), any(), anyInt());
+  }
+
+  @Test
+  public void unregisterStopsRoutingStartedThreads() {
+    router.register(Thread.currentThread(), first);
+    Thread thread = new Thread();
+    router.beforeThreadStart(thread);
+
+    router.unregister(Thread.currentThread());
+
+    verify(first).beforeThreadStart(thread);
+    assertTrue(router.isEmpty());
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.upthewaterspout.fates.core.threading.event.NoopExecutionEventListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionEventSingletonTest {
+
+  private boolean wasAvailable;
+
+  @Before
+  public void makeAvailable() {
+    wasAvailable = ExecutionEventSingleton.setAvailable(true);
+  }
+
+  @After
+  public void removeListeners() {
+    ExecutionEventSingleton.setThreadListener(null);
+    ExecutionEventSingleton.setListener(null);
+    ExecutionEventSingleton.setAvailable(wasAvailable);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void setListenerFailsWhileAThreadListenerIsInstalled() {
+    ExecutionEventSingleton.setThreadListener(new NoopExecutionEventListener());
+    ExecutionEventSingleton.setListener(new NoopExecutionEventListener());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void setThreadListenerFailsWhileAGlobalListenerIsInstalled() {
+    ExecutionEventSingleton.setListener(new NoopExecutionEventListener());
+    ExecutionEventSingleton.setThreadListener(new NoopExecutionEventListener());
+  }
+
+  @Test
+  public void callSitesStayLinkedForTheWholeExploration() {
+    ExecutionEventSingleton.beginExploration();
+    try {
+      assertTrue(HookCallSites.isEnabled());
+      ExecutionEventSingleton.setListener(new NoopExecutionEventListener());
+      ExecutionEventSingleton.setListener(null);
+      assertTrue(HookCallSites.isEnabled());
+    } finally {
+      ExecutionEventSingleton.endExploration();
+    }
+    assertFalse(HookCallSites.isEnabled());
+  }
+
+  @Test
+  public void callSitesAreLinkedForAListenerOutsideOfAnExploration() {
+    ExecutionEventSingleton.setListener(new NoopExecutionEventListener());
+    assertTrue(HookCallSites.isEnabled());
+    ExecutionEventSingleton.setListener(null);
+    assertFalse(HookCallSites.isEnabled());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void endExplorationWithoutBeginFails() {
+    ExecutionEventSingleton.endExploration();
+  }
+}
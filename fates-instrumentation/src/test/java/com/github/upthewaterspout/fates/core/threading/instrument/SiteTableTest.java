@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class SiteTableTest {
+
+  @Test
+  public void registeredSiteCanBeRetrieved() {
+    int id = SiteTable.register("field", "SiteTableTest", "registeredSiteCanBeRetrieved", 5);
+    SiteTable.Site site = SiteTable.get(id);
+    assertEquals("field", site.getFieldName());
+    assertEquals("SiteTableTest", site.getClassName());
+    assertEquals("registeredSiteCanBeRetrieved", site.getMethodName());
+    assertEquals(5, site.getLineNumber());
+  }
+
+  @Test
+  public void identicalSitesShareAnId() {
+    int id = SiteTable.register("field", "SiteTableTest", "identicalSitesShareAnId", 5);
+    assertEquals(id, SiteTable.register("field", "SiteTableTest", "identicalSitesShareAnId", 5));
+    assertNotEquals(id, SiteTable.register("field", "SiteTableTest", "identicalSitesShareAnId", 6));
+  }
+
+  @Test
+  public void tableGrowsToHoldManySites() {
+    int first = SiteTable.register("field", "SiteTableTest", "tableGrowsToHoldManySites", 0);
+    for(int line = 1; line < 5000; line++) {
+      SiteTable.register("field", "SiteTableTest", "tableGrowsToHoldManySites", line);
+    }
+    int last = SiteTable.register("field", "SiteTableTest", "tableGrowsToHoldManySites", 4999);
+    assertEquals(0, SiteTable.get(first).getLineNumber());
+    assertEquals(4999, SiteTable.get(last).getLineNumber());
+  }
+
+  @Test
+  public void savedSitesCanBeLoadedWithTheSameIds() throws IOException {
+    int id = SiteTable.register("field", "SiteTableTest", "savedSitesCanBeLoadedWithTheSameIds", 5);
+    ByteArrayOutputStream saved = new ByteArrayOutputStream();
+    SiteTable.save(saved);
+    SiteTable.load(new ByteArrayInputStream(saved.toByteArray()));
+    assertEquals(id, SiteTable.register("field", "SiteTableTest",
+        "savedSitesCanBeLoadedWithTheSameIds", 5));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void loadingSitesThatCantKeepTheirIdsFails() throws IOException {
+    SiteTable.register("field", "SiteTableTest", "loadingSitesThatCantKeepTheirIdsFails", 5);
+    ByteArrayOutputStream saved = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(saved);
+    data.writeInt(1);
+    data.writeUTF("field");
+    data.writeUTF("SiteTableTest");
+    data.writeUTF("loadingSitesThatCantKeepTheirIdsFails");
+    data.writeInt(6);
+    SiteTable.load(new ByteArrayInputStream(saved.toByteArray()));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.nio.file.Files;
+import java.security.ProtectionDomain;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.SiteTable;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingTransformerTest {
+
+  private File directory;
+  private AtomicInteger transforms;
+  private ClassFileTransformer delegate;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("CachingTransformerTest").toFile();
+    directory.deleteOnExit();
+    transforms = new AtomicInteger();
+    delegate = new ClassFileTransformer() {
+      @Override
+      public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                              ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        transforms.incrementAndGet();
+        SiteTable.register("field", className, "method", classfileBuffer.length);
+        byte[] result = classfileBuffer.clone();
+        result[0]++;
+        return result;
+      }
+    };
+  }
+
+  @Test
+  public void sameClassIsOnlyTransformedOnce() throws IllegalClassFormatException {
+    CachingTransformer transformer = new CachingTransformer(delegate, directory, "1");
+    byte[] first = transformer.transform(null, "Some", null, null, new byte[] {1, 2, 3});
+    byte[] second = transformer.transform(null, "Some", null, null, new byte[] {1, 2, 3});
+
+    assertArrayEquals(new byte[] {2, 2, 3}, first);
+    assertArrayEquals(first, second);
+    assertEquals(1, transforms.get());
+  }
+
+  @Test
+  public void cacheIsSharedByNewTransformers() throws IllegalClassFormatException {
+    new CachingTransformer(delegate, directory, "1")
+        .transform(null, "Shared", null, null, new byte[] {1, 2, 3});
+    byte[] result = new CachingTransformer(delegate, directory, "1")
+        .transform(null, "Shared", null, null, new byte[] {1, 2, 3});
+
+    assertArrayEquals(new byte[] {2, 2, 3}, result);
+    assertEquals(1, transforms.get());
+  }
+
+  @Test
+  public void changedClassOrVersionIsTransformedAgain() throws IllegalClassFormatException {
+    new CachingTransformer(delegate, directory, "1")
+        .transform(null, "Changed", null, null, new byte[] {1, 2, 3});
+    new CachingTransformer(delegate, directory, "1")
+        .transform(null, "Changed", null, null, new byte[] {1, 2, 4});
+    new CachingTransformer(delegate, directory, "2")
+        .transform(null, "Changed", null, null, new byte[] {1, 2, 3});
+    new CachingTransformer(delegate, directory, "1")
+        .transform(getClass().getClassLoader(), "Changed", null, null, new byte[] {1, 2, 3});
+
+    assertEquals(4, transforms.get());
+  }
+
+  @Test
+  public void uncacheableClassIsAlwaysTransformed() throws IllegalClassFormatException {
+    CachingTransformer transformer = new CachingTransformer(delegate, directory, "1",
+        className -> !className.equals("Uncached"));
+    transformer.transform(null, "Uncached", null, null, new byte[] {1, 2, 3});
+    transformer.transform(null, "Uncached", null, null, new byte[] {1, 2, 3});
+    assertEquals(2, transforms.get());
+
+    transformer.transform(null, "Cached", null, null, new byte[] {1, 2, 3});
+    transformer.transform(null, "Cached", null, null, new byte[] {1, 2, 3});
+    assertEquals(3, transforms.get());
+  }
+
+  @Test
+  public void nullResultIsNotCached() throws IllegalClassFormatException {
+    ClassFileTransformer unchanged = new ClassFileTransformer() {
+      @Override
+      public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                              ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        transforms.incrementAndGet();
+        return null;
+      }
+    };
+    CachingTransformer transformer = new CachingTransformer(unchanged, directory, "1");
+    assertEquals(null, transformer.transform(null, "Unchanged", null, null, new byte[] {1}));
+    assertEquals(null, transformer.transform(null, "Unchanged", null, null, new byte[] {1}));
+    assertEquals(2, transforms.get());
+  }
+}
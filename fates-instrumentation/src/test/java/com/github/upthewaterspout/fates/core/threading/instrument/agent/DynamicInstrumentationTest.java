@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DynamicInstrumentationTest {
+
+  private Instrumentation instrumentation = mock(Instrumentation.class);
+  private ClassFileTransformer delegate = mock(ClassFileTransformer.class);
+  private byte[] transformed = new byte[0];
+  private DynamicInstrumentation dynamic;
+
+  @Before
+  public void setUp() throws Exception {
+    when(instrumentation.getAllLoadedClasses()).thenReturn(new Class[] {String.class, Integer.class});
+    when(instrumentation.isModifiableClass(any())).thenReturn(true);
+    when(delegate.transform(any(), any(), any(), any(), any())).thenReturn(transformed);
+    dynamic = new DynamicInstrumentation(instrumentation,
+        new FilterTransformer(delegate, "java/lang/Integer"));
+  }
+
+  @Test
+  public void classesAreOnlyTransformedWhileTestIsRunning() throws Exception {
+    assertNull(dynamic.transform(null, "Class", null, null, null));
+
+    dynamic.begin();
+    assertTrue(dynamic.isEnabled());
+    assertEquals(transformed, dynamic.transform(null, "Class", null, null, null));
+    verify(instrumentation).retransformClasses(String.class);
+
+    dynamic.end();
+    assertFalse(dynamic.isEnabled());
+    assertNull(dynamic.transform(null, "Class", null, null, null));
+    verify(instrumentation, times(2)).retransformClasses(String.class);
+  }
+
+  @Test
+  public void nestedTestsOnlyRetransformOnce() throws Exception {
+    dynamic.begin();
+    dynamic.begin();
+    verify(instrumentation, times(1)).retransformClasses(String.class);
+
+    dynamic.end();
+    assertTrue(dynamic.isEnabled());
+    verify(instrumentation, times(1)).retransformClasses(String.class);
+
+    dynamic.end();
+    assertFalse(dynamic.isEnabled());
+    verify(instrumentation, times(2)).retransformClasses(String.class);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void endWithoutBeginFails() {
+    dynamic.end();
+  }
+
+  @Test
+  public void testChoosesTheFilter() throws Exception {
+    FilterTransformer filter = new FilterTransformer(delegate, "java/lang/String");
+    assertEquals(filter, dynamic.begin(filter));
+    verify(instrumentation).retransformClasses(Integer.class);
+
+    dynamic.end();
+    verify(instrumentation, times(2)).retransformClasses(Integer.class);
+  }
+
+  @Test
+  public void nestedTestsShareTheFirstFilter() throws Exception {
+    FilterTransformer filter = new FilterTransformer(delegate, "java/lang/String");
+    dynamic.begin();
+    assertNotEquals(filter, dynamic.begin(filter));
+    verify(instrumentation, never()).retransformClasses(Integer.class);
+  }
+}
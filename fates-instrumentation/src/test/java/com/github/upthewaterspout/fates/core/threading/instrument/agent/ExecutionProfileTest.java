@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionProfileTest {
+
+  private File file;
+
+  @Before
+  public void createDirectory() throws IOException {
+    file = new File(Files.createTempDirectory("ExecutionProfileTest").toFile(), "test.profile");
+  }
+
+  @Test
+  public void missingFileIsRecording() throws IOException {
+    ExecutionProfile profile = ExecutionProfile.load(file);
+    assertTrue(profile.isRecording());
+    assertTrue(profile.getClasses().isEmpty());
+  }
+
+  @Test
+  public void savedProfileIsLoaded() throws IOException {
+    ExecutionProfile profile = ExecutionProfile.load(file);
+    profile.record("a.A");
+    profile.record("b.B");
+    profile.save();
+
+    ExecutionProfile loaded = ExecutionProfile.load(file);
+    assertFalse(loaded.isRecording());
+    assertEquals(new HashSet<>(Arrays.asList("a.A", "b.B")), loaded.getClasses());
+  }
+
+  @Test
+  public void saveMergesWithExistingFile() throws IOException {
+    ExecutionProfile first = ExecutionProfile.load(file);
+    ExecutionProfile second = ExecutionProfile.load(file);
+    first.record("a.A");
+    second.record("b.B");
+    first.save();
+    second.save();
+
+    assertEquals(new HashSet<>(Arrays.asList("a.A", "b.B")),
+        ExecutionProfile.load(file).getClasses());
+  }
+
+  @Test
+  public void classFileHashIsSaved() throws IOException {
+    ExecutionProfile profile = ExecutionProfile.load(file);
+    profile.record("java.lang.String");
+    profile.addTest("a.ATest.test");
+    profile.save();
+
+    assertEquals(
+        Arrays.asList("class java.lang.String " + ExecutionProfile.hash("java.lang.String"),
+            "test a.ATest.test"),
+        Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    ExecutionProfile loaded = ExecutionProfile.load(file);
+    assertFalse(loaded.isRecording());
+    assertTrue(loaded.covers("a.ATest.test"));
+    assertFalse(loaded.covers("a.ATest.other"));
+  }
+
+  @Test
+  public void changedClassRecordsNewProfile() throws IOException {
+    Files.write(file.toPath(), Arrays.asList("class java.lang.String 00", "class a.A -",
+        "test a.ATest.test"), StandardCharsets.UTF_8);
+
+    ExecutionProfile profile = ExecutionProfile.load(file);
+    assertTrue(profile.isRecording());
+    assertTrue(profile.getClasses().isEmpty());
+    assertFalse(profile.covers("a.ATest.test"));
+
+    profile.record("b.B");
+    profile.save();
+    assertEquals(Collections.singleton("b.B"), ExecutionProfile.load(file).getClasses());
+  }
+
+  @Test
+  public void deletedClassIsLeftOut() throws IOException {
+    Files.write(file.toPath(), Arrays.asList("class a.Deleted 00",
+        "class java.lang.String " + ExecutionProfile.hash("java.lang.String")),
+        StandardCharsets.UTF_8);
+
+    ExecutionProfile profile = ExecutionProfile.load(file);
+    assertFalse(profile.isRecording());
+    assertEquals(Collections.singleton("java.lang.String"), profile.getClasses());
+  }
+
+  @Test
+  public void profileInOlderFormatRecordsNewProfile() throws IOException {
+    Files.write(file.toPath(), Collections.singletonList("a.A"), StandardCharsets.UTF_8);
+
+    assertTrue(ExecutionProfile.load(file).isRecording());
+  }
+
+  @Test
+  public void saveAddsProfileFromOtherJVMs() throws IOException {
+    ExecutionProfile first = ExecutionProfile.load(file);
+    ExecutionProfile second = ExecutionProfile.load(file);
+    first.addTest("a.ATest.test");
+    first.save();
+    second.save();
+
+    assertTrue(second.covers("a.ATest.test"));
+  }
+}
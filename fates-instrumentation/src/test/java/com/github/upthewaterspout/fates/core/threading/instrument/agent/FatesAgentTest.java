@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FatesAgentTest {
+
+  @Before
+  public void setPreinstrumented() {
+    System.setProperty(ExecutionEventSingleton.PREINSTRUMENTED_PROPERTY, "true");
+    System.setProperty(FatesAgent.PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY, "com.example.Woven");
+  }
+
+  @After
+  public void clearPreinstrumented() {
+    System.clearProperty(ExecutionEventSingleton.PREINSTRUMENTED_PROPERTY);
+    System.clearProperty(FatesAgent.PREINSTRUMENTED_ATOMIC_CLASSES_PROPERTY);
+  }
+
+  @Test
+  public void preinstrumentedAtomicClassesCanBeAdded() {
+    FatesAgent.addAtomicClasses(Arrays.asList("com.example.Woven", String.class.getName()));
+  }
+
+  @Test
+  public void addingClassesThatWereNotWovenFails() {
+    assertThatThrownBy(() -> FatesAgent.addAtomicClasses(
+        Collections.singletonList("com.example.NotWoven")))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("com.example.NotWoven");
+  }
+
+  @Test
+  public void findsLoadedApplicationClassesWithSynchronizedMethods() {
+    Instrumentation inst = mock(Instrumentation.class);
+    when(inst.getAllLoadedClasses()).thenReturn(new Class[] {SynchronizedClass.class,
+        UnsynchronizedClass.class, StringBuffer.class});
+    when(inst.isModifiableClass(any())).thenReturn(true);
+    FilterTransformer filter = new FilterTransformer(mock(ClassFileTransformer.class));
+
+    assertEquals(Collections.singletonList(SynchronizedClass.class.getName()),
+        FatesAgent.findSynchronizedClasses(inst, filter));
+  }
+
+  private static class SynchronizedClass {
+    synchronized void update() {
+    }
+  }
+
+  private static class UnsynchronizedClass {
+    void update() {
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FatesMethodEntryExitFilterTest {
+
+  @Test
+  public void classesCanBeAddedAfterCreation() {
+    FatesMethodEntryExitFilter filter = new FatesMethodEntryExitFilter("example.Initial");
+    assertTrue(filter.test("example.Initial", "method"));
+    assertFalse(filter.test("example.Added", "method"));
+    assertTrue(filter.test("example.Other", FatesMethodEntryExitFilter.CLASS_INITIALIZER_METHOD_NAME));
+
+    assertTrue(filter.addClass("example.Added"));
+    assertFalse(filter.addClass("example.Added"));
+    assertFalse(filter.addClass("example.Initial"));
+
+    assertTrue(filter.test("example.Added", "method"));
+    assertTrue(filter.isAdded("example.Added"));
+    assertFalse(filter.isAdded("example.Initial"));
+  }
+}
@@ -23,6 +23,7 @@ import static org.mockito.Mockito.when;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
+import java.util.Collections;
 
 import org.junit.Test;
 
@@ -41,4 +42,53 @@ public class FilterTransformerTest {
     assertEquals(null, filterTransformer.transform(null, "excluded", null, null, null));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void transformOnlyIncludesIncludedPackages() throws IllegalClassFormatException {
+    ClassFileTransformer delegate = mock(ClassFileTransformer.class);
+    byte[] transformed = new byte[0];
+    when(delegate.transform(any(), any(), any() ,any() ,any())).thenReturn(transformed);
+    FilterTransformer filterTransformer = new FilterTransformer(delegate,
+        new String[] {"included", "other"}, "included/excluded");
+
+    assertEquals(transformed, filterTransformer.transform(null, "included/Class", null, null, null));
+    assertEquals(transformed, filterTransformer.transform(null, "other/Class", null, null, null));
+    assertEquals(null, filterTransformer.transform(null, "notincluded/Class", null, null, null));
+    assertEquals(null, filterTransformer.transform(null, "included/excluded/Class", null, null, null));
+  }
+
+  @Test
+  public void includedClassesAreTransformedInExcludedPackages() throws IllegalClassFormatException {
+    ClassFileTransformer delegate = mock(ClassFileTransformer.class);
+    byte[] transformed = new byte[0];
+    when(delegate.transform(any(), any(), any() ,any() ,any())).thenReturn(transformed);
+    FilterTransformer filterTransformer = new FilterTransformer(delegate, new String[0],
+        Collections.singleton("excluded/Included"), "excluded");
+
+    assertEquals(transformed, filterTransformer.transform(null, "excluded/Included", null, null, null));
+    assertEquals(null, filterTransformer.transform(null, "excluded/Other", null, null, null));
+    assertEquals(transformed, filterTransformer.transform(null, "other/Class", null, null, null));
+  }
+
+  @Test
+  public void classesOutsideIncludedPackagesGoToTheOtherTransformer()
+      throws IllegalClassFormatException {
+    ClassFileTransformer delegate = mock(ClassFileTransformer.class);
+    ClassFileTransformer notIncludedDelegate = mock(ClassFileTransformer.class);
+    byte[] transformed = new byte[0];
+    byte[] notIncludedTransformed = new byte[0];
+    when(delegate.transform(any(), any(), any() ,any() ,any())).thenReturn(transformed);
+    when(notIncludedDelegate.transform(any(), any(), any() ,any() ,any()))
+        .thenReturn(notIncludedTransformed);
+    FilterTransformer filterTransformer = new FilterTransformer(delegate, notIncludedDelegate,
+        new String[] {"included"}, Collections.singleton("other/Included"), "excluded");
+
+    assertSame(transformed, filterTransformer.transform(null, "included/Class", null, null, null));
+    assertSame(transformed, filterTransformer.transform(null, "other/Included", null, null, null));
+    assertSame(notIncludedTransformed,
+        filterTransformer.transform(null, "other/Class", null, null, null));
+    assertEquals(null, filterTransformer.transform(null, "excluded/Class", null, null, null));
+    assertFalse(filterTransformer.isExcluded("other/Class"));
+    assertTrue(filterTransformer.isExcluded("excluded/Class"));
+  }
+
+}
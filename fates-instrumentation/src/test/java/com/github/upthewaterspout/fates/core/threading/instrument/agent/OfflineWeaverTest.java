@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.instrument.agent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class OfflineWeaverTest {
+
+  private static final String CLASS_NAME = "example/ClassWithField";
+  private static final String CLASS_FILE = CLASS_NAME + ".class";
+  private Path input;
+  private File output;
+  private byte[] original;
+
+  @Before
+  public void createInput() throws IOException {
+    input = Files.createTempDirectory("OfflineWeaverTest");
+    output = new File(input.toFile(), "woven/output.jar");
+    original = generateClass();
+    Path classFile = input.resolve(CLASS_FILE);
+    Files.createDirectories(classFile.getParent());
+    Files.write(classFile, original);
+    Files.createDirectories(input.resolve("META-INF"));
+    Files.write(input.resolve("META-INF/resource.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+    Files.write(input.resolve("META-INF/SIGNER.SF"), "signature".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void weavesClassesInDirectory() throws IOException {
+    new OfflineWeaver("").weave(input.toFile(), output);
+
+    try (ZipFile jar = new ZipFile(output)) {
+      byte[] woven = IOUtils.toByteArray(jar.getInputStream(jar.getEntry(CLASS_FILE)));
+      assertFalse(contains(original, "HookCallSites"));
+      assertTrue(contains(woven, "HookCallSites"));
+
+      ZipEntry resource = jar.getEntry("META-INF/resource.txt");
+      assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8),
+          IOUtils.toByteArray(jar.getInputStream(resource)));
+      assertNull(jar.getEntry("META-INF/SIGNER.SF"));
+    }
+  }
+
+  @Test
+  public void weavesClassesInJar() throws IOException {
+    File inputJar = new File(input.toFile(), "input.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(inputJar))) {
+      out.putNextEntry(new ZipEntry(CLASS_FILE));
+      out.write(original);
+      out.closeEntry();
+    }
+
+    new OfflineWeaver("").weave(inputJar, output);
+
+    try (ZipFile jar = new ZipFile(output)) {
+      assertEquals(1, jar.size());
+      byte[] woven = IOUtils.toByteArray(jar.getInputStream(jar.getEntry(CLASS_FILE)));
+      assertTrue(contains(woven, "HookCallSites"));
+    }
+  }
+
+  /**
+   * Generate a class outside of the fates packages, which are never instrumented
+   */
+  private byte[] generateClass() {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, CLASS_NAME, null, "java/lang/Object", null);
+    writer.visitField(Opcodes.ACC_PRIVATE, "value", "I", null, null).visitEnd();
+    MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "getValue", "()I", null, null);
+    method.visitCode();
+    method.visitVarInsn(Opcodes.ALOAD, 0);
+    method.visitFieldInsn(Opcodes.GETFIELD, CLASS_NAME, "value", "I");
+    method.visitInsn(Opcodes.IRETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private boolean contains(byte[] bytes, String string) {
+    return new String(bytes, StandardCharsets.ISO_8859_1).contains(string);
+  }
+}
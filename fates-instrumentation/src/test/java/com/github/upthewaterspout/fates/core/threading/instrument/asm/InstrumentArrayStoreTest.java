@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument.asm;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Callable;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithArrayStore;
+import org.junit.Test;
+
+public class InstrumentArrayStoreTest extends InstrumentationTest {
+
+  @Test
+  public void arrayStoreAddsHook() throws Exception {
+    String className = ClassWithArrayStore.class.getCanonicalName();
+    Callable<String> object = transformAndCreate(className);
+    assertEquals("value:1:2:3.0:c", object.call());
+
+    Object[] objects = (Object[]) object.getClass().getField("objects").get(object);
+    Object ints = object.getClass().getField("ints").get(object);
+    Object longs = object.getClass().getField("longs").get(object);
+    Object doubles = object.getClass().getField("doubles").get(object);
+    Object chars = object.getClass().getField("chars").get(object);
+    verify(hook, times(1)).beforeSetArrayElement(eq(objects), eq("value"));
+    verify(hook, times(1)).beforeSetArrayElement(eq(ints), eq(null));
+    verify(hook, times(1)).beforeSetArrayElement(eq(longs), eq(null));
+    verify(hook, times(1)).beforeSetArrayElement(eq(doubles), eq(null));
+    verify(hook, times(1)).beforeSetArrayElement(eq(chars), eq(null));
+  }
+}
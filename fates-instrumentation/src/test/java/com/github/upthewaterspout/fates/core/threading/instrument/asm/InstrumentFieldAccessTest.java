@@ -18,16 +18,19 @@ package com.github.upthewaterspout.fates.core.threading.instrument.asm;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.refEq;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.util.concurrent.Callable;
 
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithAnonymousInnerClass;
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithFieldAccess;
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithFieldAccessLong;
@@ -130,4 +133,18 @@ public class InstrumentFieldAccessTest extends InstrumentationTest {
     verify(hook, times(1)).beforeGetField(refEq(ClassWithStaticField.class), eq("RESULT"), eq(className), eq("call"), eq(29));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void hooksAreSwitchedOffWhileNoListenerIsInstalled() throws Exception {
+    String className = ClassWithFieldAccess.class.getCanonicalName();
+    Callable<Integer> object = transformAndCreate(className);
+
+    ExecutionEventSingleton.setListener(null);
+    assertEquals(6, (int) object.call());
+    verify(hook, never()).beforeGetField(any(), anyString(), anyString(), anyString(), anyInt());
+
+    ExecutionEventSingleton.setListener(hook);
+    assertEquals(6, (int) object.call());
+    verify(hook, times(1)).beforeGetField(eq(object), eq("a"), eq(className), eq("call"), eq(26));
+  }
+
+}
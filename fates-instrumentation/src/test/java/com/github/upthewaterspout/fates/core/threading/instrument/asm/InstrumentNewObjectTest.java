@@ -23,6 +23,7 @@ import static org.mockito.Mockito.verify;
 import java.util.concurrent.Callable;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithNew;
+import com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented.ClassWithNewArray;
 import org.junit.Test;
 
 public class InstrumentNewObjectTest extends InstrumentationTest {
@@ -35,4 +36,15 @@ public class InstrumentNewObjectTest extends InstrumentationTest {
       verify(hook, times(1)).afterNew(eq(value));
     }
 
+    @Test
+    public void newArrayHookIsInvoked() throws Exception {
+      String className = ClassWithNewArray.class.getCanonicalName();
+      Callable<Object[]> object = transformAndCreate(className);
+      Object[] value = object.call();
+      verify(hook, times(1)).afterNew(eq(value));
+      verify(hook, times(1)).afterNew(eq(value[0]));
+      verify(hook, times(1)).afterNew(eq(value[1]));
+      verify(hook, times(1)).afterNew(eq(value[2]));
+    }
+
 }
\ No newline at end of file
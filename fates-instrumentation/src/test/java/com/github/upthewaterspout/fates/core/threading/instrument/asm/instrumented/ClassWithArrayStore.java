@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented;
+
+import java.util.concurrent.Callable;
+
+
+public class ClassWithArrayStore implements Callable {
+  public final Object[] objects = new Object[1];
+  public final int[] ints = new int[1];
+  public final long[] longs = new long[1];
+  public final double[] doubles = new double[1];
+  public final char[] chars = new char[1];
+
+  public Object call() {
+    objects[0] = "value";
+    ints[0] = 1;
+    longs[0] = 2L;
+    doubles[0] = 3.0;
+    chars[0] = 'c';
+    return objects[0] + ":" + ints[0] + ":" + longs[0] + ":" + doubles[0] + ":" + chars[0];
+  }
+}
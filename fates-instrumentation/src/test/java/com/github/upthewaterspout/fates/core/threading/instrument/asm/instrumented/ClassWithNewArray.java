@@ -14,13 +14,14 @@
  * limitations under the License.
  */
 
-package com.github.upthewaterspout.fates.core.threading.daemon;
+package com.github.upthewaterspout.fates.core.threading.instrument.asm.instrumented;
 
-import java.rmi.Remote;
+import java.util.concurrent.Callable;
 
-/**
- * RMI interface for {@link Daemon}
- */
-interface DaemonRemote extends Remote {
-  <V> V execute(SerializableCallable<V> callable) throws Exception;
+
+public class ClassWithNewArray implements Callable {
+
+  public Object call() {
+    return new Object[] {new int[1], new String[1], new long[1][1]};
+  }
 }
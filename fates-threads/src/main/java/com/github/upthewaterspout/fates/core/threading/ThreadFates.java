@@ -16,17 +16,23 @@
 
 package com.github.upthewaterspout.fates.core.threading;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
 
+import com.github.upthewaterspout.fates.core.states.ExplorerSupplier;
 import com.github.upthewaterspout.fates.core.states.Fates;
 import com.github.upthewaterspout.fates.core.states.StateExplorer;
+import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.CheckpointingExplorer;
+import com.github.upthewaterspout.fates.core.threading.harness.AgentAttacher;
+import com.github.upthewaterspout.fates.core.threading.harness.ConcurrentLocalHarness;
 import com.github.upthewaterspout.fates.core.threading.harness.ErrorCapturingExplorer;
 import com.github.upthewaterspout.fates.core.threading.harness.Harness;
 import com.github.upthewaterspout.fates.core.threading.harness.LocalHarness;
+import com.github.upthewaterspout.fates.core.threading.harness.ParallelHarness;
 import com.github.upthewaterspout.fates.core.threading.harness.RemoteHarness;
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
 
@@ -43,7 +49,9 @@ import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEvent
  * </p><p>
  * Optionally, the java agent can enabled manually by launching your test JVM using <code>-javaagent:.../fates-intstrumentation-[version].jar</code>
  * JVM. If {@link #run(MultiThreadedTest)} is invoked within a JVM that is already instrumented,
- * the test will run within that JVM.
+ * the test will run within that JVM. Setting the system property <code>fates.selfAttach</code> to
+ * true attaches the agent to the current JVM instead of launching a separate JVM, see
+ * {@link AgentAttacher}.
  * </p><p>
  *
  * The agent will extensively modify the bytecode being used. Although the modifications should have
@@ -94,15 +102,76 @@ public class ThreadFates {
     return this;
   }
 
-  public ThreadFates setExplorer(Supplier<StateExplorer> explorer) {
+  /**
+   * Set the algorithm used to explore thread orderings. By default, all orderings are explored with a
+   * {@link com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer}.
+   *
+   * The {@link com.github.upthewaterspout.fates.core.states.explorers.partialorder.PartialOrderReductionExplorer}
+   * can be used to skip orderings that only differ in the order of independent field accesses.
+   *
+   * @param explorer A supplier for the explorer. This must be serializable, because the test
+   * may be run in a separate JVM.
+   * @return this
+   */
+  public ThreadFates setExplorer(ExplorerSupplier explorer) {
     fates.setExplorer(() -> new ErrorCapturingExplorer(explorer.get()));
     return this;
   }
 
+  /**
+   * Set the algorithm used to explore thread orderings. See {@link #setExplorer(ExplorerSupplier)}.
+   *
+   * @param explorer A supplier for the explorer. If the test is run in a separate JVM, this
+   * must also be serializable.
+   * @return this
+   */
+  public ThreadFates setExplorer(Supplier<StateExplorer> explorer) {
+    return setExplorer((ExplorerSupplier) explorer::get);
+  }
+
+  /**
+   * Explore the thread orderings of the test in parallel. The remaining orderings are split into
+   * disjoint parts after a first pass through the test, and each part is explored exhaustively.
+   *
+   * If the fates agent is installed in this JVM, the parts are explored by worker threads in this
+   * JVM, each with its own scheduler. In that case the test must not share state between
+   * concurrent runs. Otherwise, the parts are explored in separate JVMs with the agent installed.
+   *
+   * This always uses a depth first search, so it should not be combined with
+   * {@link #setExplorer(ExplorerSupplier)}.
+   *
+   * @param parallelism The number of workers to use. A value of 1 disables parallel exploration.
+   * @return this
+   */
+  public ThreadFates setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+    }
+    harness = parallelism > 1 ? chooseParallelHarness(parallelism) : chooseHarness();
+    return this;
+  }
+
+  /**
+   * Save the progress of the test to a checkpoint file periodically, so that a test that is
+   * killed before it finishes can be resumed by a later run with the same test id. This replaces
+   * the explorer with a {@link CheckpointingExplorer}.
+   *
+   * Checkpoints are not used when {@link #setParallelism(int)} is greater than 1.
+   *
+   * @param directory the directory to store checkpoints in
+   * @param testId an identifier for the test, which must be unique within the directory
+   * @return this
+   */
+  public ThreadFates setCheckpoint(File directory, String testId) {
+    return setExplorer(() -> new CheckpointingExplorer(directory, testId));
+  }
+
   /**
    * Run a multithreaded test in FATES. The test will be run many times, with all possible
    * thread execution orders.
    *
+   * If the test is a {@link MultiThreadedSnapshotTest}, the set up of the test is only done once.
+   *
    * @param runnable The test to run
    * @throws Exception if the test fails.
    */
@@ -123,12 +192,64 @@ public class ThreadFates {
     void run() throws Exception;
   }
 
+  /**
+   * A multithreaded test with an expensive set up phase. The set up is only run once, without
+   * any control over thread ordering, and each run of the test starts with a fresh copy of the
+   * state that was set up.
+   *
+   * The set up must be deterministic from the point of view of the test, and must not leave
+   * any threads running.
+   *
+   * @param <S> the type of the state created by the set up
+   */
+  public interface MultiThreadedSnapshotTest<S> extends MultiThreadedTest {
+    /**
+     * Set up the state for the test. This is called once.
+     * @return a snapshot of the state after set up
+     * @throws Exception if set up fails
+     */
+    S setUp() throws Exception;
+
+    /**
+     * Create a fresh copy of the state from the snapshot, for a single run of the test
+     * @param snapshot the snapshot returned by {@link #setUp()}
+     * @return a copy of the state that is not shared with other runs of the test
+     * @throws Exception if the state could not be copied
+     */
+    S restore(S snapshot) throws Exception;
+
+    /**
+     * Run the test, with a state restored from the snapshot
+     * @param state the restored state
+     * @throws Exception if the test fails.
+     */
+    void run(S state) throws Exception;
+
+    @Override
+    default void run() throws Exception {
+      run(restore(setUp()));
+    }
+  }
+
+  private static Harness chooseParallelHarness(int parallelism) {
+    if(isInstrumented()) {
+      return new ConcurrentLocalHarness(parallelism);
+    }
+
+    return new ParallelHarness(parallelism);
+  }
+
   private static Harness chooseHarness() {
-    if(ExecutionEventSingleton.isAvailable()) {
+    if(isInstrumented()) {
       return new LocalHarness();
     }
 
     return new RemoteHarness();
   }
 
+  private static boolean isInstrumented() {
+    AgentAttacher.attachIfEnabled();
+    return ExecutionEventSingleton.isAvailable();
+  }
+
 }
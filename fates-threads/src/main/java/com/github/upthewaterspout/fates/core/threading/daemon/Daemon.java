@@ -13,24 +13,91 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
-import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * RMI object that lives in the {@link FatesDaemon} JVM. The launching JVM can make calls into
- * the daemon JVM through this object's {@link #execute(SerializableCallable)} method.
+ * Lives in the {@link FatesDaemon} JVM. Executes the callables sent by the launching JVM one at a
+ * time, and sends back their results. See {@link DaemonProtocol}.
+ *
+ * The callables run on a separate worker thread, so that the connection is read the whole time.
+ * That way a closed connection is noticed straight away, even while a callable is still running
+ * or is stuck.
  */
-class Daemon extends UnicastRemoteObject implements DaemonRemote {
+class Daemon {
+  private final DataInputStream in;
+  private final DataOutputStream out;
+
+  public Daemon(InputStream in, OutputStream out) {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+  }
+
+  /**
+   * Execute callables until the launching JVM closes the connection. This returns as soon as
+   * the connection is closed, without waiting for a running callable to finish.
+   */
+  public void run() throws IOException {
+    //Not a daemon thread, so threads started by the callables are not daemon threads either
+    ExecutorService worker =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Fates Daemon Worker"));
+    try {
+      while (true) {
+        DaemonProtocol.Message message;
+        try {
+          message = DaemonProtocol.read(in);
+        } catch (EOFException | SocketException e) {
+          return;
+        }
+        if (message.type != DaemonProtocol.CALL) {
+          throw new IllegalStateException("Unexpected message type " + message.type);
+        }
+        worker.execute(() -> call(message));
+      }
+    } finally {
+      worker.shutdownNow();
+    }
+  }
+
+  private void call(DaemonProtocol.Message message) {
+    try {
+      Object result;
+      try {
+        result = ((SerializableCallable<?>) message.getPayload()).call();
+      } catch (Throwable t) {
+        sendFailure(t);
+        return;
+      }
 
-  public Daemon() throws RemoteException {
-    super();
+      try {
+        DaemonProtocol.write(out, DaemonProtocol.RESULT, result);
+      } catch (IOException e) {
+        sendFailure(e);
+      }
+    } catch (IOException e) {
+      //The connection is gone, the reading thread will notice and shut down the daemon
+    }
   }
 
-  @Override
-  public synchronized <V> V execute(SerializableCallable<V> callable) throws Exception {
-    return callable.call();
+  private void sendFailure(Throwable t) throws IOException {
+    try {
+      DaemonProtocol.write(out, DaemonProtocol.FAILURE, t);
+    } catch (IOException e) {
+      //The exception itself can't be serialized, send something that can
+      IllegalStateException replacement = new IllegalStateException(t.toString());
+      replacement.setStackTrace(t.getStackTrace());
+      DaemonProtocol.write(out, DaemonProtocol.FAILURE, replacement);
+    }
   }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.daemon;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Measurements of the resources used by a daemon JVM, used to decide when to replace a daemon
+ * that has slowed down after running many tests. See {@link #getRetireReason(int)}.
+ *
+ * The limits are configured with system properties in the launching JVM. A limit of 0 disables
+ * that check.
+ */
+class DaemonHealth implements Serializable {
+  /**
+   * Fraction of the maximum heap that may still be in use after garbage collection.
+   */
+  public static final String MAX_HEAP_PROPERTY = "fates.daemonMaxHeap";
+  /**
+   * Fraction of the code cache that may be used. When the code cache fills up the JIT compiler
+   * is disabled, and the daemon gets much slower.
+   */
+  public static final String MAX_CODE_CACHE_PROPERTY = "fates.daemonMaxCodeCache";
+  /**
+   * Megabytes of class metadata that may be used
+   */
+  public static final String MAX_METASPACE_PROPERTY = "fates.daemonMaxMetaspace";
+  /**
+   * Number of calls a daemon may run
+   */
+  public static final String MAX_CALLS_PROPERTY = "fates.daemonMaxCalls";
+
+  private static final long MEGABYTE = 1024 * 1024;
+
+  private final long heapUsed;
+  private final long heapMax;
+  private final long codeCacheUsed;
+  private final long codeCacheMax;
+  private final long metaspaceUsed;
+
+  DaemonHealth(long heapUsed, long heapMax, long codeCacheUsed, long codeCacheMax,
+               long metaspaceUsed) {
+    this.heapUsed = heapUsed;
+    this.heapMax = heapMax;
+    this.codeCacheUsed = codeCacheUsed;
+    this.codeCacheMax = codeCacheMax;
+    this.metaspaceUsed = metaspaceUsed;
+  }
+
+  /**
+   * Measure the current JVM. The heap is measured as it was after the last garbage collection, so
+   * that garbage that has not been collected yet does not count.
+   */
+  static DaemonHealth measure() {
+    long heapUsed = 0;
+    long codeCacheUsed = 0;
+    long codeCacheMax = 0;
+    long metaspaceUsed = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        MemoryUsage usage = pool.getCollectionUsage();
+        heapUsed += (usage != null ? usage : pool.getUsage()).getUsed();
+      } else if (pool.getName().startsWith("Code")) {
+        //"Code Cache" on java 8, several "CodeHeap" pools on later versions
+        codeCacheUsed += pool.getUsage().getUsed();
+        codeCacheMax += Math.max(0, pool.getUsage().getMax());
+      } else if (pool.getName().equals("Metaspace")) {
+        metaspaceUsed += pool.getUsage().getUsed();
+      }
+    }
+    return new DaemonHealth(heapUsed, Runtime.getRuntime().maxMemory(), codeCacheUsed,
+        codeCacheMax, metaspaceUsed);
+  }
+
+  /**
+   * Check this daemon against the limits configured in this JVM.
+   *
+   * @param calls the number of calls the daemon has run
+   * @return why the daemon should be replaced, or null if it is still healthy
+   */
+  String getRetireReason(int calls) {
+    return getRetireReason(calls, getLimit(MAX_HEAP_PROPERTY, 0.7),
+        getLimit(MAX_CODE_CACHE_PROPERTY, 0.9), getLimit(MAX_METASPACE_PROPERTY, 0),
+        getLimit(MAX_CALLS_PROPERTY, 0));
+  }
+
+  String getRetireReason(int calls, double maxHeap, double maxCodeCache, double maxMetaspace,
+                         double maxCalls) {
+    if (maxHeap > 0 && heapMax > 0 && heapUsed > maxHeap * heapMax) {
+      return "heap usage after GC is " + heapUsed / MEGABYTE + " of " + heapMax / MEGABYTE + " MB";
+    }
+    if (maxCodeCache > 0 && codeCacheMax > 0 && codeCacheUsed > maxCodeCache * codeCacheMax) {
+      return "code cache usage is " + codeCacheUsed / MEGABYTE + " of " + codeCacheMax / MEGABYTE
+          + " MB";
+    }
+    if (maxMetaspace > 0 && metaspaceUsed > maxMetaspace * MEGABYTE) {
+      return "metaspace usage is " + metaspaceUsed / MEGABYTE + " MB";
+    }
+    if (maxCalls > 0 && calls >= maxCalls) {
+      return "it reached the limit of " + (long) maxCalls + " calls";
+    }
+    return null;
+  }
+
+  private static double getLimit(String property, double defaultValue) {
+    String value = System.getProperty(property);
+    if (value == null || value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Invalid value for " + property + ": " + value, e);
+    }
+  }
+}
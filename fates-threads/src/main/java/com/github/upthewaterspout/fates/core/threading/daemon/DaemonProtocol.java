@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.daemon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The messages exchanged between a {@link DaemonRunner} and the {@link Daemon} it launched, over
+ * a socket on the loopback interface.
+ *
+ * Each message is a type byte, followed by the length of the payload and the payload itself,
+ * which is a java serialized object. The runner sends a {@link #CALL} with a
+ * {@link SerializableCallable}, and the daemon answers with a {@link #RESULT} or a
+ * {@link #FAILURE} containing the exception the callable threw.
+ */
+class DaemonProtocol {
+  static final byte CALL = 1;
+  static final byte RESULT = 2;
+  static final byte FAILURE = 3;
+
+  private DaemonProtocol() {
+  }
+
+  /**
+   * Write a message. The payload is serialized before anything is written, so a payload that
+   * can't be serialized throws without corrupting the stream.
+   */
+  static void write(DataOutputStream out, byte type, Object payload) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+      objects.writeObject(payload);
+    }
+    out.writeByte(type);
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+    out.flush();
+  }
+
+  /**
+   * Read the next message.
+   *
+   * @throws java.io.EOFException if the other side closed the connection
+   */
+  static Message read(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    byte[] payload = new byte[in.readInt()];
+    in.readFully(payload);
+    return new Message(type, payload);
+  }
+
+  static class Message {
+    final byte type;
+    private final byte[] payload;
+
+    private Message(byte type, byte[] payload) {
+      this.type = type;
+      this.payload = payload;
+    }
+
+    Object getPayload() throws IOException, ClassNotFoundException {
+      try (ObjectInputStream objects =
+               new ObjectInputStream(new ByteArrayInputStream(payload))) {
+        return objects.readObject();
+      }
+    }
+  }
+}
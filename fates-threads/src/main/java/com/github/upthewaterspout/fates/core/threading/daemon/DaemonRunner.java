@@ -1,57 +1,93 @@
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
 import java.io.*;
-import java.net.URL;
-import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
-import java.security.CodeSource;
-import java.security.ProtectionDomain;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
-
 /**
  * Runs callables in a separate JVM. This runner launches the separate JVM on construction,
  * and reuses it for future calls to {@link #execute(SerializableCallable)}.
  *
+ * The callables and their results are sent over a socket on the loopback interface, see
+ * {@link DaemonProtocol}. If the separate JVM dies, the call that is running fails straight away.
+ *
  * For a {@link DaemonRunner} that has the fates java agent enabled, see {@link DaemonRunnerWithAgent}
  */
 class DaemonRunner {
+  private static final long CONNECT_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+  private static final int ACCEPT_POLL_MILLIS = 100;
+  private static final long EXIT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
 
-  private final DaemonRemote daemon;
-  private final Controller controller;
   private final Process process;
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private int calls;
 
 
   public DaemonRunner(String... extraJVMArgs)
-      throws IOException, ExecutionException, InterruptedException, TimeoutException {
-    process = launchProcess(extraJVMArgs);
-    ObjectOutputStream out = new ObjectOutputStream(process.getOutputStream());
-    controller = new Controller();
-    try {
-      out.writeObject(UnicastRemoteObject.toStub(controller));
-      out.flush();
-    } catch(IOException e) {
-      throw new IllegalStateException("Error launching test process. Please check the process output for errors", e);
+      throws IOException, InterruptedException, TimeoutException {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      process = launchProcess(extraJVMArgs);
+      try {
+        DataOutputStream portOut = new DataOutputStream(process.getOutputStream());
+        portOut.writeInt(server.getLocalPort());
+        portOut.flush();
+        socket = waitForDaemon(server);
+      } catch (IOException | InterruptedException | TimeoutException | RuntimeException e) {
+        process.destroyForcibly();
+        throw e;
+      }
     }
+    socket.setTcpNoDelay(true);
+    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
 
-    this.daemon = controller.waitForDaemon(5, TimeUnit.MINUTES);
+  /**
+   * Wait for the daemon to connect back, checking that the process is still alive in the meantime
+   */
+  private Socket waitForDaemon(ServerSocket server)
+      throws IOException, InterruptedException, TimeoutException {
+    server.setSoTimeout(ACCEPT_POLL_MILLIS);
+    long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        return server.accept();
+      } catch (SocketTimeoutException e) {
+        if (!process.isAlive()) {
+          throw new IllegalStateException("Test process exited with status " + process.waitFor()
+              + " before it started. Please check the process output for errors");
+        }
+      }
+    }
+    throw new TimeoutException("Test process did not start within " + CONNECT_TIMEOUT + " ms");
   }
 
+  /**
+   * Shut down the separate JVM. Closing the connection makes the JVM exit by itself, which gives
+   * it a chance to run its shutdown hooks and write anything it saves at exit, such as a class
+   * data sharing archive. It is only killed if it has not exited after a while.
+   */
   public void destroy() throws IOException {
-  {
-    process.getOutputStream().close();
-    process.destroyForcibly();
-    UnicastRemoteObject.unexportObject(controller, true);
+    try {
+      socket.close();
+      process.getOutputStream().close();
+      process.waitFor(EXIT_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      process.destroyForcibly();
+    }
   }
-}
 
   /**
    * Execute the callable in a separate JVM configured with the fates agent and return the result.
@@ -59,12 +95,56 @@ class DaemonRunner {
    * @param <V>
    * @return
    */
-  public <V> V execute(SerializableCallable<V> callable) throws Throwable {
+  public synchronized <V> V execute(SerializableCallable<V> callable) throws Throwable {
+    calls++;
+    return call(callable);
+  }
+
+  /**
+   * Execute a callable that prepares the separate JVM for later calls. This does not count as
+   * a call in {@link #getCalls()}.
+   */
+  public synchronized void warmUp(SerializableCallable<?> callable) throws Throwable {
+    call(callable);
+  }
+
+  /**
+   * Measure the resources used by the separate JVM. This does not count as a call in
+   * {@link #getCalls()}.
+   */
+  public synchronized DaemonHealth getHealth() throws Throwable {
+    return call(DaemonHealth::measure);
+  }
+
+  /**
+   * @return the number of callables that have been executed by this runner
+   */
+  public synchronized int getCalls() {
+    return calls;
+  }
+
+  private <V> V call(SerializableCallable<V> callable) throws Throwable {
+    DaemonProtocol.Message response;
     try {
-      return daemon.execute(callable);
-    } catch (RemoteException e) {
-      throw e.getCause();
+      DaemonProtocol.write(out, DaemonProtocol.CALL, callable);
+      response = DaemonProtocol.read(in);
+    } catch (EOFException | SocketException e) {
+      throw new IllegalStateException(getExitDescription(), e);
+    }
+
+    Object payload = response.getPayload();
+    if (response.type == DaemonProtocol.FAILURE) {
+      throw (Throwable) payload;
+    }
+    return (V) payload;
+  }
+
+  private String getExitDescription() throws InterruptedException {
+    if (process.waitFor(1, TimeUnit.SECONDS)) {
+      return "Test process exited with status " + process.exitValue()
+          + ". Please check the process output for errors";
     }
+    return "Lost the connection to the test process";
   }
 
   private Process launchProcess(String[] extraJVMArgs) throws IOException {
@@ -16,13 +16,24 @@
 
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
 
 /**
  * Utility for running a Callable in a separate JVM that has the fates java agent installed.
@@ -30,24 +41,233 @@ import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEvent
  * The first call to {@link #execute(SerializableCallable, String)} will launch a separate JVM. Future
  * calls will reuse the same JVM. Concurrent {@link #execute(SerializableCallable, String)} calls are
  * not currently supported, they will be run serially.
+ *
+ * {@link #executeInParallel(List, String, int)} can be used to run many callables in a pool
+ * of separate JVMs.
+ *
+ * {@link #prestart(String, int, SerializableCallable)} launches JVMs in the background ahead of
+ * time, so that the first calls don't have to wait for a JVM to start.
+ *
+ * After each call the JVM's resource usage is checked against the limits in {@link DaemonHealth}.
+ * A JVM that is over a limit, or that died, is destroyed and a replacement is started in the
+ * background.
  */
 public class DaemonRunnerWithAgent {
-  private static HashMap<String, DaemonRunner> daemonRunners = new HashMap<>();
+  private static HashMap<String, List<Future<DaemonRunner>>> daemonRunners = new HashMap<>();
+  private static HashMap<String, SerializableCallable<?>> warmUps = new HashMap<>();
+  private static final ExecutorService launcher = Executors.newCachedThreadPool(daemonThreads());
 
   public static <V> V execute(SerializableCallable<V> callable, String agentArgs) throws Throwable {
-    DaemonRunner runner = launchRunner(agentArgs);
+    DaemonRunner runner = launchRunners(agentArgs, 1).get(0);
+
+    try {
+      return runner.execute(callable);
+    } finally {
+      retireIfUnhealthy(agentArgs, runner);
+    }
+  }
+
+  /**
+   * Execute a list of callables, spread across a pool of separate JVMs that have the fates
+   * java agent installed. Each JVM executes one callable at a time, taking the next callable from
+   * the list when it is done.
+   *
+   * If any callable fails, no further callables are started and the failure is thrown.
+   * Callables that are already running in other JVMs are not interrupted.
+   *
+   * @param callables the callables to run
+   * @param agentArgs the arguments to pass to the fates java agent
+   * @param parallelism the number of JVMs to use
+   * @return the results of the callables, in the same order as the callables
+   */
+  public static <V> List<V> executeInParallel(List<? extends SerializableCallable<V>> callables,
+                                              String agentArgs, int parallelism) throws Throwable {
+    List<DaemonRunner> runners = launchRunners(agentArgs, Math.min(parallelism, callables.size()));
+    Queue<Integer> remaining = new ConcurrentLinkedQueue<>();
+    for (int i = 0; i < callables.size(); i++) {
+      remaining.add(i);
+    }
+    Object[] results = new Object[callables.size()];
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, runners.size()));
+    try {
+      CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+      for (DaemonRunner runner : runners) {
+        completionService.submit(() -> {
+          Integer next;
+          try {
+            while ((next = remaining.poll()) != null) {
+              try {
+                results[next] = runner.execute(callables.get(next));
+              } catch (Exception | Error e) {
+                throw e;
+              } catch (Throwable t) {
+                throw new ExecutionException(t);
+              }
+            }
+          } finally {
+            retireIfUnhealthy(agentArgs, runner);
+          }
+          return null;
+        });
+      }
 
-    return runner.execute(callable);
+      for (int i = 0; i < runners.size(); i++) {
+        Future<Void> finished = completionService.take();
+        try {
+          finished.get();
+        } catch (ExecutionException e) {
+          remaining.clear();
+          Throwable cause = e.getCause();
+          throw cause instanceof ExecutionException ? cause.getCause() : cause;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return (List<V>) Arrays.asList(results);
+  }
+
+  /**
+   * Start launching JVMs in the background, so that there are at least count JVMs for the given
+   * agent arguments. This returns immediately. Later calls to {@link #execute(SerializableCallable,
+   * String)} and {@link #executeInParallel(List, String, int)} use these JVMs, waiting for them to
+   * finish starting if necessary.
+   *
+   * @param agentArgs the arguments to pass to the fates java agent
+   * @param count the number of JVMs to keep
+   * @param warmUp a callable that each new JVM runs once before it is used, including JVMs that
+   * replace retired ones, or null
+   */
+  public static synchronized void prestart(String agentArgs, int count,
+                                           SerializableCallable<?> warmUp) {
+    if (warmUp != null) {
+      warmUps.put(agentArgs, warmUp);
+    }
+    launch(agentArgs, count);
   }
 
-  private static synchronized DaemonRunner launchRunner(String agentArgs)
-      throws InterruptedException, ExecutionException, IOException, TimeoutException {
-    DaemonRunner runner = daemonRunners.get(agentArgs);
-    if(runner == null) {
-      runner = new DaemonRunner("-javaagent:" + findInstrumentationJar() + "=" + agentArgs);
-      daemonRunners.put(agentArgs, runner);
+  private static synchronized void launch(String agentArgs, int count) {
+    SerializableCallable<?> warmUp = warmUps.get(agentArgs);
+    List<Future<DaemonRunner>> runners = daemonRunners.computeIfAbsent(agentArgs,
+        key -> new ArrayList<>());
+    while (runners.size() < count) {
+      runners.add(launcher.submit(() -> {
+        DaemonRunner runner = new DaemonRunner(getAgentJVMArgs(agentArgs));
+        if (warmUp != null) {
+          try {
+            runner.warmUp(warmUp);
+          } catch (Throwable t) {
+            runner.destroy();
+            throw new IllegalStateException("Error warming up test process", t);
+          }
+        }
+        return runner;
+      }));
     }
-    return runner;
+  }
+
+  /**
+   * Get at least count runners for the given agent arguments, launching new JVMs in parallel
+   * if necessary. A JVM that failed to start is forgotten, so that the next call launches
+   * a replacement. This waits for the JVMs to start without holding the lock, so that other
+   * threads can still prestart and retire JVMs in the meantime.
+   */
+  private static List<DaemonRunner> launchRunners(String agentArgs, int count) throws Throwable {
+    List<Future<DaemonRunner>> launches;
+    synchronized (DaemonRunnerWithAgent.class) {
+      launch(agentArgs, count);
+      launches = new ArrayList<>(daemonRunners.get(agentArgs).subList(0, count));
+    }
+
+    List<DaemonRunner> runners = new ArrayList<>();
+    for (Future<DaemonRunner> launch : launches) {
+      try {
+        runners.add(launch.get());
+      } catch (ExecutionException e) {
+        synchronized (DaemonRunnerWithAgent.class) {
+          daemonRunners.get(agentArgs).remove(launch);
+        }
+        throw e.getCause();
+      }
+    }
+    return runners;
+  }
+
+  /**
+   * Check the resource usage of a runner after a call, and if it should be retired, destroy it
+   * and start a replacement in the background. A runner that can't be reached anymore is also
+   * replaced.
+   */
+  private static void retireIfUnhealthy(String agentArgs, DaemonRunner runner) {
+    String reason;
+    try {
+      reason = runner.getHealth().getRetireReason(runner.getCalls());
+    } catch (Throwable t) {
+      reason = "it could not be reached: " + t;
+    }
+    if (reason == null) {
+      return;
+    }
+
+    System.out.println("Replacing test process because " + reason);
+    synchronized (DaemonRunnerWithAgent.class) {
+      List<Future<DaemonRunner>> launches = daemonRunners.get(agentArgs);
+      int count = launches.size();
+      launches.removeIf(launch -> launch.isDone() && getNow(launch) == runner);
+      launch(agentArgs, count);
+    }
+    //Give the process time to exit by itself without holding up the test
+    launcher.execute(() -> {
+      try {
+        runner.destroy();
+      } catch (IOException e) {
+        //The process has been killed anyway
+      }
+    });
+  }
+
+  private static DaemonRunner getNow(Future<DaemonRunner> launch) {
+    try {
+      return launch.get();
+    } catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  private static ThreadFactory daemonThreads() {
+    ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    return runnable -> {
+      Thread thread = defaultFactory.newThread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static String[] getAgentJVMArgs(String agentArgs) {
+    List<String> args = new ArrayList<>();
+    args.add(getCacheArgument());
+    for (String property : Arrays.asList(FatesAgent.INSTRUMENTED_PACKAGES_PROPERTY,
+        FatesAgent.PROFILE_PROPERTY, FatesAgent.DYNAMIC_PROPERTY)) {
+      String value = System.getProperty(property);
+      if (value != null) {
+        args.add("-D" + property + "=" + value);
+      }
+    }
+    args.add("-javaagent:" + findInstrumentationJar() + "=" + agentArgs);
+    return args.toArray(new String[0]);
+  }
+
+  /**
+   * Share a cache of transformed classes between all of the daemons, so only the first daemon pays
+   * the cost of transforming the JDK. The cache can be moved by setting the same system property in
+   * this JVM, or disabled by setting it to an empty string.
+   */
+  private static String getCacheArgument() {
+    String directory = System.getProperty(FatesAgent.CACHE_DIRECTORY_PROPERTY,
+        new File(System.getProperty("java.io.tmpdir"), "fates-transform-cache").getPath());
+    return "-D" + FatesAgent.CACHE_DIRECTORY_PROPERTY + "=" + directory;
   }
 
   private static String findInstrumentationJar() {
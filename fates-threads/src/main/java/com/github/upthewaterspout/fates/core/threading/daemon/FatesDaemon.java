@@ -1,33 +1,24 @@
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.net.InetAddress;
+import java.net.Socket;
 
 /**
- * Main method of the daemon JVM. This method will create an RMI object to receive requests,
- * and will keep running until it can no longer ping the launching JVM through the {@link Controller}
+ * Main method of the daemon JVM. The launching JVM writes the port it is listening on to this
+ * JVM's standard input. This connects to that port and executes callables sent over the
+ * connection, see {@link Daemon}. It exits as soon as the connection is closed, which also happens
+ * if the launching JVM dies, even if a callable is still running.
  */
 class FatesDaemon {
 
-  public static final int PING_TIME = 1000;
+  public static void main(String[] args) throws IOException {
+    int port = new DataInputStream(System.in).readInt();
 
-  public static void main(String[] args)
-      throws IOException, ClassNotFoundException, InterruptedException {
-    ObjectInputStream in = new ObjectInputStream(System.in);
-    ControllerRemote  controller = (ControllerRemote) in.readObject();
-
-    DaemonRemote daemon = new Daemon();
-    controller.setDaemon((DaemonRemote) UnicastRemoteObject.toStub(daemon));
-
-    try {
-      while (true) {
-        Thread.sleep(PING_TIME);
-        controller.ping();
-      }
-    } catch (RemoteException e) {
-      //controller has shut down
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      socket.setTcpNoDelay(true);
+      new Daemon(socket.getInputStream(), socket.getOutputStream()).run();
     } finally {
       System.exit(0);
     }
@@ -58,11 +58,15 @@ public class AtomicClassLoadingDecorator extends DelegatingExecutionEventListene
   }
 
   private void beginAtomic() {
-    atomicEntryCount.get().increment();
+    EntryCount count = atomicEntryCount.get();
+    count.increment();
+    ThreadContext.current().setInClassInitialization(!count.isZero());
   }
 
   private void endAtomic() {
-    atomicEntryCount.get().decrement();
+    EntryCount count = atomicEntryCount.get();
+    count.decrement();
+    ThreadContext.current().setInClassInitialization(!count.isZero());
   }
 
 
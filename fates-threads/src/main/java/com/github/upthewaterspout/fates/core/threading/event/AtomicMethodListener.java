@@ -25,6 +25,8 @@ import java.util.stream.Collectors;
  * A decorator for a {@link ExecutionEventListener} that allows disabling execution events
  * while inside a certain list of classes.
  *
+ * The delegate only sees the method events that begin and end an atomic section, which tell it
+ * that the current thread is about to do things that it won't see events for.
  */
 public class AtomicMethodListener extends DelegatingExecutionEventListener {
 
@@ -45,25 +47,29 @@ public class AtomicMethodListener extends DelegatingExecutionEventListener {
   @Override
   public void beforeMethod(String className, String methodName) {
     if(suppressedClasses.contains(className)) {
+      super.beforeMethod(className, methodName);
       beginAtomic();
     }
-    super.beforeMethod(className, methodName);
   }
 
   @Override
   public void afterMethod(String className, String methodName) {
-    super.afterMethod(className, methodName);
     if(suppressedClasses.contains(className)) {
       endAtomic();
+      super.afterMethod(className, methodName);
     }
   }
 
   private void beginAtomic() {
-    atomicEntryCount.get().increment();
+    EntryCount count = atomicEntryCount.get();
+    count.increment();
+    ThreadContext.current().setInAtomicMethod(!count.isZero());
   }
 
   private void endAtomic() {
-    atomicEntryCount.get().decrement();
+    EntryCount count = atomicEntryCount.get();
+    count.decrement();
+    ThreadContext.current().setInAtomicMethod(!count.isZero());
   }
 
 
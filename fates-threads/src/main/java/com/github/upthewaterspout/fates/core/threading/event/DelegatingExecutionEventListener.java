@@ -189,6 +189,13 @@ public abstract class DelegatingExecutionEventListener implements ExecutionEvent
     }
   }
 
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    if(beforeEvent()) {
+      delegate.beforeSetArrayElement(array, value);
+    }
+  }
+
   @Override
   public void afterNew(Object object) {
     if(beforeEvent()) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.ExecutionProfile;
+
+/**
+ * Records the classes that threads under test execute in an {@link ExecutionProfile}. This should
+ * be placed behind the {@link ThreadLocalEventListener}, so that only threads under test are
+ * recorded.
+ */
+public class ProfilingListener extends DelegatingExecutionEventListener {
+  private final ExecutionProfile profile;
+
+  public ProfilingListener(ExecutionEventListener delegate, ExecutionProfile profile) {
+    super(delegate);
+    this.profile = profile;
+  }
+
+  @Override
+  public void beforeMethod(String className, String methodName) {
+    profile.record(className);
+    super.beforeMethod(className, methodName);
+  }
+
+  @Override
+  public void beforeGetField(Object owner, String fieldName, String className, String methodName,
+                             int lineNumber) {
+    profile.record(className);
+    super.beforeGetField(owner, fieldName, className, methodName, lineNumber);
+  }
+
+  @Override
+  public void beforeSetField(Object owner, Object fieldValue, String fieldName, String className,
+                             String methodName, int lineNumber) {
+    profile.record(className);
+    super.beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
+  }
+}
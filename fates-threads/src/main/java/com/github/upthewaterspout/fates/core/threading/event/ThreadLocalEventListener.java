@@ -32,14 +32,26 @@ import java.util.concurrent.CopyOnWriteArraySet;
  */
 public class ThreadLocalEventListener extends DelegatingExecutionEventListener {
   private Set<Thread> enabledThreads = new CopyOnWriteArraySet<>();
-  private ThreadLocal<Boolean> currentThreadEnabled =
-      ThreadLocal.withInitial(() -> enabledThreads.contains(Thread.currentThread()));
+  private ThreadLocal<Boolean> currentThreadEnabled = ThreadLocal.withInitial(() -> {
+    boolean enabled = enabledThreads.contains(Thread.currentThread());
+    ThreadContext.current().setOutsideTest(!enabled);
+    return enabled;
+  });
 
 
   public ThreadLocalEventListener(ExecutionEventListener delegate) {
     super(delegate);
     enabledThreads.add(Thread.currentThread());
-    currentThreadEnabled.set(Boolean.TRUE);
+    setEnabled(Boolean.TRUE);
+  }
+
+  /**
+   * Enable or disable events for the current thread. This is also recorded in the
+   * {@link ThreadContext} so events for disabled threads can be dropped early.
+   */
+  private void setEnabled(Boolean enabled) {
+    currentThreadEnabled.set(enabled);
+    ThreadContext.current().setOutsideTest(!enabled);
   }
 
   @Override
@@ -55,7 +67,7 @@ public class ThreadLocalEventListener extends DelegatingExecutionEventListener {
   public void beforeThreadStart(Thread thread) {
     if(beforeEvent()) {
       //Make the rest of thread creation atomic until after the thread start
-      currentThreadEnabled.set(FALSE);
+      setEnabled(FALSE);
 
       //Mark the new thread as enabled
       enabledThreads.add(thread);
@@ -65,7 +77,7 @@ public class ThreadLocalEventListener extends DelegatingExecutionEventListener {
 
   @Override
   public void afterThreadStart(Thread thread) {
-    currentThreadEnabled.set(enabledThreads.contains(Thread.currentThread()));
+    setEnabled(enabledThreads.contains(Thread.currentThread()));
     if(enabled()) {
       delegate.afterThreadStart(thread);
     }
@@ -78,7 +90,7 @@ public class ThreadLocalEventListener extends DelegatingExecutionEventListener {
 
   public void beforeThreadExit(Thread thread) {
     if(enabled()) {
-      currentThreadEnabled.set(FALSE);
+      setEnabled(FALSE);
       enabledThreads.remove(thread);
       delegate.beforeThreadExit();
     }
@@ -16,12 +16,11 @@
 
 package com.github.upthewaterspout.fates.core.threading.event.confinement;
 
-import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.Set;
 
 import com.github.upthewaterspout.fates.core.threading.event.DelegatingExecutionEventListener;
 import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListener;
+import com.github.upthewaterspout.fates.core.threading.event.ThreadContext;
 
 /**
  * {@link ExecutionEventListener} that does not pass on events that happen to objects
@@ -32,12 +31,15 @@ import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListe
  * <ul>
  * <li> When an object is created, it is stored in a thread confined set </li>
  * <li> Calls to beforeGet/Set on anything in the thread local set are not passed on </li>
- * <li> If thread confined object added as the value of a field on a non thread confined object,
- *      the object anything reachable by it are removed from the the test </li>
+ * <li> If thread confined object added as the value of a field or array element on a non thread
+ *      confined object, the object anything reachable by it are removed from the the test </li>
  * </ul>
  *
  * Reachability is determined by transversing references from the object through reflection.
  *
+ * The thread confined objects are kept in the {@link ThreadContext} of each thread, which
+ * allows accesses to thread confined objects to be dropped before they reach this listener.
+ *
  */
 
 //TODO - also skip these calls if they affect a thread confined object. These are more
@@ -52,9 +54,6 @@ import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListe
 public class ThreadConfinementListener extends DelegatingExecutionEventListener {
   private ReachableObjectFinder reachableObjects = new ReachableObjectFinder();
 
-  private ThreadLocal<Set<Object>> threadConfinedObjects = ThreadLocal.withInitial(() -> Collections
-      .newSetFromMap(new IdentityHashMap<>()));
-
   public ThreadConfinementListener(
       ExecutionEventListener listener) {
     super(listener);
@@ -64,7 +63,7 @@ public class ThreadConfinementListener extends DelegatingExecutionEventListener
   @Override
   public void beforeGetField(Object owner, String fieldName, String className,
                              String methodName, int lineNumber) {
-    if(threadConfinedObjects.get().contains(owner)) {
+    if(threadConfinedObjects().contains(owner)) {
       //Do nothing if the object is confined to this thread
       return;
     }
@@ -75,7 +74,7 @@ public class ThreadConfinementListener extends DelegatingExecutionEventListener
   public void beforeSetField(Object owner, Object fieldValue, String fieldName,
                              String className, String methodName,
                              int lineNumber) {
-    if(threadConfinedObjects.get().contains(owner)) {
+    if(threadConfinedObjects().contains(owner)) {
       //Do nothing if the object is confined to this thread
       return;
     }
@@ -84,8 +83,19 @@ public class ThreadConfinementListener extends DelegatingExecutionEventListener
     delegate.beforeSetField(owner, fieldValue, fieldName, className, methodName, lineNumber);
   }
 
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    if(threadConfinedObjects().contains(array)) {
+      //Do nothing if the array is confined to this thread
+      return;
+    }
+
+    removeThreadConfinedObject(value);
+    delegate.beforeSetArrayElement(array, value);
+  }
+
   private void removeThreadConfinedObject(Object fieldValue) {
-    Set<Object> threadLocalObjects = threadConfinedObjects.get();
+    Set<Object> threadLocalObjects = threadConfinedObjects();
     reachableObjects.stream(fieldValue, threadLocalObjects::contains)
         .forEach(threadLocalObjects::remove);
   }
@@ -100,9 +110,13 @@ public class ThreadConfinementListener extends DelegatingExecutionEventListener
     delegate.afterMethod(className, methodName);
   }
 
+  private Set<Object> threadConfinedObjects() {
+    return ThreadContext.current().getConfinedObjects(this);
+  }
+
   @Override
   public void afterNew(Object object) {
-    threadConfinedObjects.get().add(object);
+    threadConfinedObjects().add(object);
     delegate.afterNew(object);
   }
 }
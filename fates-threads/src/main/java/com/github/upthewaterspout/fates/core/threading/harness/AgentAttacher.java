@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.harness;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
+
+/**
+ * Loads the fates java agent into the current JVM with the attach API, so that tests can run
+ * with a {@link LocalHarness} rather than in a separate JVM.
+ *
+ * The agent jar puts the instrumentation classes on the boot classpath, so the agent has to be
+ * attached before any of those classes are loaded from the application classpath. Otherwise the
+ * instrumented code and the harness would use different copies of {@link ExecutionEventSingleton}.
+ * The agent also refuses to install itself if classes with synchronized methods are already
+ * loaded, see {@link FatesAgent#agentmain(String, java.lang.instrument.Instrumentation)}.
+ *
+ * On Java 8 the attach API is in tools.jar, which is loaded from the JDK if it is not on the
+ * classpath. Later versions only allow a JVM to attach to itself if it was started with
+ * -Djdk.attach.allowAttachSelf=true.
+ */
+public class AgentAttacher {
+  /**
+   * System property that enables attaching the agent to the current JVM
+   */
+  public static final String SELF_ATTACH_PROPERTY = "fates.selfAttach";
+
+  //Not ExecutionEventSingleton.class, which would load the class
+  private static final String INSTRUMENTATION_CLASS =
+      "com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton";
+  private static final String VIRTUAL_MACHINE_CLASS = "com.sun.tools.attach.VirtualMachine";
+
+  private static boolean attempted;
+
+  /**
+   * Attach the agent to the current JVM, if {@link #SELF_ATTACH_PROPERTY} is set and the agent
+   * is not already installed. If attaching fails, a warning is printed and the JVM is left
+   * unmodified.
+   */
+  public static synchronized void attachIfEnabled() {
+    if(attempted || !Boolean.getBoolean(SELF_ATTACH_PROPERTY)
+        || Boolean.getBoolean(ExecutionEventSingleton.PREINSTRUMENTED_PROPERTY)
+        || isOnBootClassPath()) {
+      return;
+    }
+    attempted = true;
+
+    try {
+      attach();
+    } catch (Exception e) {
+      Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+      System.err.println("Could not attach the fates agent to this JVM, tests will run in a "
+          + "separate JVM: " + cause);
+    }
+  }
+
+  private static void attach() throws Exception {
+    File jar = getJarFile(AgentAttacher.class.getClassLoader()
+        .getResource(INSTRUMENTATION_CLASS.replace('.', '/') + ".class"));
+    if(jar == null) {
+      throw new IllegalStateException("The instrumentation classes are not in a jar");
+    }
+
+    Class<?> virtualMachine = loadVirtualMachineClass();
+    String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    Object vm = virtualMachine.getMethod("attach", String.class).invoke(null, pid);
+    try {
+      virtualMachine.getMethod("loadAgent", String.class, String.class)
+          .invoke(vm, jar.getAbsolutePath(), "");
+    } finally {
+      virtualMachine.getMethod("detach").invoke(vm);
+    }
+
+    if(Class.forName(INSTRUMENTATION_CLASS, false, AgentAttacher.class.getClassLoader())
+        .getClassLoader() != null) {
+      throw new IllegalStateException(
+          "The instrumentation classes were already loaded from the application classpath");
+    }
+    String failure = FatesAgent.getAttachFailure();
+    if(failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+
+  /**
+   * @return true if the instrumentation classes are on the boot classpath, which means the agent
+   * is already installed. This does not load the classes from the application classpath.
+   */
+  private static boolean isOnBootClassPath() {
+    try {
+      Class.forName(INSTRUMENTATION_CLASS, false, null);
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private static Class<?> loadVirtualMachineClass() throws Exception {
+    try {
+      return Class.forName(VIRTUAL_MACHINE_CLASS);
+    } catch (ClassNotFoundException e) {
+      File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+      if(!toolsJar.exists()) {
+        throw e;
+      }
+      ClassLoader loader = new URLClassLoader(new URL[] {toolsJar.toURI().toURL()}, null);
+      return Class.forName(VIRTUAL_MACHINE_CLASS, true, loader);
+    }
+  }
+
+  /**
+   * @return the jar containing a class file, or null if the class file is not in a jar
+   */
+  static File getJarFile(URL classFile) {
+    if(classFile == null || !classFile.getProtocol().equals("jar")) {
+      return null;
+    }
+    String path = classFile.getPath();
+    try {
+      return new File(new URI(path.substring(0, path.indexOf("!/"))));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
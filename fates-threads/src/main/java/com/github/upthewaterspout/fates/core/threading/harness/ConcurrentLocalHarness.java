@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.harness;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.github.upthewaterspout.fates.core.states.Fates;
+import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
+import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+
+/**
+ * A harness that explores a test with several worker threads in the current JVM, which must
+ * already have the fates agent installed.
+ *
+ * Like {@link ParallelHarness}, the test is first run until the unexplored thread orderings can
+ * be split into disjoint prefixes, and each prefix is then explored with a {@link
+ * DepthFirstExplorer}. Each worker runs the test with its own scheduler, which only controls the
+ * worker thread and the threads it starts. This avoids launching and communicating with separate
+ * JVMs, but it means the test must not share state between concurrent runs, for example through
+ * static fields.
+ */
+public class ConcurrentLocalHarness implements Harness {
+  private static final int PREFIXES_PER_WORKER = 4;
+
+  private final int parallelism;
+
+  public ConcurrentLocalHarness(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public void runTest(List<Class<?>> atomicClasses, Fates fates,
+                      ThreadFates.MultiThreadedTest runnable) throws Throwable {
+    List<List<Object>> prefixes = new LocalHarness(true)
+        .split(atomicClasses, fates, runnable, parallelism * PREFIXES_PER_WORKER);
+    Queue<List<Object>> remaining = new ConcurrentLinkedQueue<>(prefixes);
+
+    int workers = Math.max(1, Math.min(parallelism, prefixes.size()));
+    System.out.println("Exploring " + prefixes.size() + " prefixes with " + workers + " workers");
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    Throwable failure = null;
+    try {
+      CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+      for (int i = 0; i < workers; i++) {
+        completionService.submit(() -> {
+          LocalHarness harness = new LocalHarness(true);
+          List<Object> prefix;
+          while ((prefix = remaining.poll()) != null) {
+            harness.explore(atomicClasses, fates, runnable,
+                new ErrorCapturingExplorer(new DepthFirstExplorer(prefix)));
+          }
+          return null;
+        });
+      }
+
+      //Wait for all of the workers, so that no tests are still running when this returns
+      for (int i = 0; i < workers; i++) {
+        try {
+          completionService.take().get();
+        } catch (ExecutionException e) {
+          remaining.clear();
+          if (failure == null) {
+            failure = e.getCause();
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.github.upthewaterspout.fates.core.threading.harness;
 
+import java.util.List;
 import java.util.Set;
 
 import com.github.upthewaterspout.fates.core.states.StateExplorer;
@@ -84,4 +85,30 @@ public class ErrorCapturingExplorer implements StateExplorer {
 
     return options.stream().findFirst().orElse(null);
   }
+
+  @Override
+  public int decide(Object label, int optionCount) {
+    if (exception == null) {
+      try {
+        return delegate.decide(label, optionCount);
+      } catch (RuntimeException e) {
+        this.exception = e;
+      }
+    }
+
+    return 0;
+  }
+
+  @Override
+  public <K> int decideIndex(Object label, List<K> options) {
+    if (exception == null) {
+      try {
+        return delegate.decideIndex(label, options);
+      } catch (RuntimeException e) {
+        this.exception = e;
+      }
+    }
+
+    return 0;
+  }
 }
@@ -18,6 +18,8 @@ package com.github.upthewaterspout.fates.core.threading.harness;
 
 import static com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesMethodEntryExitFilter.DEFAULT_ATOMIC_CLASS_NAMES;
 
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -25,18 +27,37 @@ import java.util.stream.Stream;
 import com.github.upthewaterspout.fates.core.states.Decider;
 import com.github.upthewaterspout.fates.core.states.Fates;
 import com.github.upthewaterspout.fates.core.states.RepeatedTest;
+import com.github.upthewaterspout.fates.core.states.SnapshotTest;
+import com.github.upthewaterspout.fates.core.states.StateExplorer;
 import com.github.upthewaterspout.fates.core.threading.ThreadFates;
 import com.github.upthewaterspout.fates.core.threading.event.AtomicClassLoadingDecorator;
 import com.github.upthewaterspout.fates.core.threading.event.AtomicMethodListener;
 import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListener;
 import com.github.upthewaterspout.fates.core.threading.event.IgnoreFinalFieldsListener;
+import com.github.upthewaterspout.fates.core.threading.event.ProfilingListener;
 import com.github.upthewaterspout.fates.core.threading.event.ThreadLocalEventListener;
 import com.github.upthewaterspout.fates.core.threading.event.confinement.ThreadConfinementListener;
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.ExecutionProfile;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
 import com.github.upthewaterspout.fates.core.threading.scheduler.ThreadSchedulingListener;
 
 public class LocalHarness implements Harness {
+  private final boolean isolated;
 
+  public LocalHarness() {
+    this(false);
+  }
+
+  /**
+   * @param isolated if true, only events from the thread that runs the test and the threads it
+   * starts are sent to the scheduler, using
+   * {@link ExecutionEventSingleton#setThreadListener(ExecutionEventListener)}. This allows
+   * several isolated harnesses to run tests in the same JVM at the same time.
+   */
+  public LocalHarness(boolean isolated) {
+    this.isolated = isolated;
+  }
 
   @Override
   public void runTest(List<Class<?>> atomicClasses, Fates fates,
@@ -46,11 +67,99 @@ public class LocalHarness implements Harness {
 //      runnable.run();
 //    }
 
-    List<String> atomicClassNames = Stream.concat(
+    //Use the state exploration harness to explore the possible thread orderings
+    withInstrumentation(atomicClasses, runnable, test -> {
+      fates.explore(test);
+      return null;
+    });
+  }
+
+  /**
+   * Explore the thread orderings of a test with the given explorer, rather than the explorer
+   * configured on the {@link Fates} instance.
+   */
+  public void explore(List<Class<?>> atomicClasses, Fates fates,
+                      ThreadFates.MultiThreadedTest runnable, StateExplorer explorer)
+      throws Exception {
+    withInstrumentation(atomicClasses, runnable, test -> {
+      fates.explore(test, explorer);
+      return null;
+    });
+  }
+
+  /**
+   * Run a test until the remaining thread orderings can be split into the given number
+   * of disjoint prefixes. See {@link Fates#split(RepeatedTest, int)}. Errors from the explorer
+   * are held back by an {@link ErrorCapturingExplorer}, so they don't leave threads parked in
+   * the scheduler.
+   */
+  public List<List<Object>> split(List<Class<?>> atomicClasses, Fates fates,
+                                  ThreadFates.MultiThreadedTest runnable, int count)
+      throws Exception {
+    return withInstrumentation(atomicClasses, runnable,
+        test -> fates.split(test, count, ErrorCapturingExplorer::new));
+  }
+
+  /**
+   * Run an exploration with the agent's instrumentation in place. The atomic classes are
+   * registered with the agent first, so that they have the method entry and exit hooks that
+   * {@link AtomicMethodListener} relies on. If the agent instruments classes dynamically, they
+   * are restored to their original bytecode afterwards. The hooks are linked once for the whole
+   * exploration, rather than for each iteration.
+   *
+   * If the agent has an {@link ExecutionProfile} that doesn't cover the test yet, the classes the
+   * test executes are recorded into it.
+   */
+  private <T> T withInstrumentation(List<Class<?>> atomicClasses,
+                                    ThreadFates.MultiThreadedTest runnable,
+                                    Exploration<T> exploration) throws Exception {
+    FatesAgent.addAtomicClasses(
+        atomicClasses.stream().map(Class::getName).collect(Collectors.toList()));
+    ExecutionProfile profile = FatesAgent.getProfile();
+    String testName = getTestName(runnable);
+    boolean profiled = profile == null || profile.covers(testName);
+    boolean fullyInstrumented = FatesAgent.beginInstrumentation(profiled);
+    ExecutionProfile recording = profiled ? null : profile;
+    ExecutionEventSingleton.beginExploration();
+    try {
+      return exploration.explore(
+          instrumentTest(getAtomicClassNames(atomicClasses), runnable, recording));
+    } finally {
+      ExecutionEventSingleton.endExploration();
+      FatesAgent.endInstrumentation();
+      if(recording != null) {
+        FatesAgent.saveProfile(testName, fullyInstrumented);
+      }
+    }
+  }
+
+  private interface Exploration<T> {
+    T explore(RepeatedTest test) throws Exception;
+  }
+
+  /**
+   * @return a name for the test that is the same in every JVM. The classes of lambdas are
+   * generated, so a lambda is named after the method that implements it instead.
+   */
+  static String getTestName(ThreadFates.MultiThreadedTest test) {
+    Class<?> clazz = test.getClass();
+    if(clazz.isSynthetic()) {
+      try {
+        Method writeReplace = clazz.getDeclaredMethod("writeReplace");
+        writeReplace.setAccessible(true);
+        SerializedLambda lambda = (SerializedLambda) writeReplace.invoke(test);
+        return lambda.getImplClass().replace('/', '.') + "." + lambda.getImplMethodName();
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        //Not a serializable lambda, so use the class name
+      }
+    }
+    return clazz.getName();
+  }
+
+  private List<String> getAtomicClassNames(List<Class<?>> atomicClasses) {
+    return Stream.concat(
         DEFAULT_ATOMIC_CLASS_NAMES.stream(), atomicClasses.stream().map(Class::getName)).collect(
         Collectors.toList());
-    //Use the state exploration harness to explore the possible thread orderings
-    fates.explore(instrumentTest(atomicClassNames, runnable));
   }
 
   /**
@@ -59,30 +168,72 @@ public class LocalHarness implements Harness {
    * the {@link Decider} to pick which thread ordering to use
    */
   private RepeatedTest instrumentTest(List<String> atomicClasses,
-                                             ThreadFates.MultiThreadedTest runnable) {
+                                             ThreadFates.MultiThreadedTest runnable,
+                                             ExecutionProfile recording) {
+    if(runnable instanceof ThreadFates.MultiThreadedSnapshotTest) {
+      return instrumentSnapshotTest(atomicClasses,
+          (ThreadFates.MultiThreadedSnapshotTest<?>) runnable, recording);
+    }
     return decider -> {
 
-      ExecutionEventListener listener = createExecutionEventPipeline(atomicClasses, decider);
+      ExecutionEventListener listener =
+          createExecutionEventPipeline(atomicClasses, decider, recording);
 
-      ExecutionEventSingleton.setListener(listener);
+      setListener(listener);
       try {
         runnable.run();
         ExecutionEventSingleton.postValidation();
       } finally {
-        ExecutionEventSingleton.setListener(null);
+        setListener(null);
+      }
+    };
+  }
+
+  /**
+   * Convert a {@link ThreadFates.MultiThreadedSnapshotTest} into a {@link SnapshotTest}. The set up
+   * and restore phases run without instrumentation enabled, so only the test itself is controlled
+   * by the scheduler.
+   */
+  private <S> RepeatedTest instrumentSnapshotTest(List<String> atomicClasses,
+                                                  ThreadFates.MultiThreadedSnapshotTest<S> test,
+                                                  ExecutionProfile recording) {
+    return new SnapshotTest<S>() {
+      @Override
+      public S takeSnapshot() throws Exception {
+        return test.setUp();
+      }
+
+      @Override
+      public S restore(S snapshot) throws Exception {
+        return test.restore(snapshot);
+      }
+
+      @Override
+      public void doOnce(S state, Decider decider) throws Exception {
+        instrumentTest(atomicClasses, () -> test.run(state), recording).doOnce(decider);
       }
     };
   }
 
+  private void setListener(ExecutionEventListener listener) {
+    if(isolated) {
+      ExecutionEventSingleton.setThreadListener(listener);
+    } else {
+      ExecutionEventSingleton.setListener(listener);
+    }
+  }
+
   /**
    * Create the pipeline of listeners for processing execution events during a single run
    * of the test. This pipeline will control the order of threads in the test
    * @param decider The decider used to choose which thread to allow to proceed for this test
    * @param atomicClasses The classes to consider atomic. See {@link AtomicMethodListener}
+   * @param recording the profile to record the classes the test executes into, or null
    * @return the execution pipeline
    */
   public ExecutionEventListener createExecutionEventPipeline(List<String> atomicClasses,
-                                                                    Decider decider) {
+                                                                    Decider decider,
+                                                                    ExecutionProfile recording) {
 
     //At the end of the pipeline is the actual thread scheduler
     ThreadSchedulingListener scheduler = new ThreadSchedulingListener(decider);
@@ -101,6 +252,12 @@ public class LocalHarness implements Harness {
     //In front of that is a listener that detects if objects are only used by a single thread
     listener = new ThreadConfinementListener(listener);
 
+    //In front of that is a listener that records which classes the test executes, if the test
+    //is being recorded into a profile
+    if(recording != null) {
+      listener = new ProfilingListener(listener, recording);
+    }
+
     //In front of that is a listener which restricts instrumentation to threads started by
     //this test
     listener = new ThreadLocalEventListener(listener);
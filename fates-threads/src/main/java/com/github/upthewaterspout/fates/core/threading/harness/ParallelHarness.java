@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.upthewaterspout.fates.core.states.Fates;
+import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
+import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+import com.github.upthewaterspout.fates.core.threading.daemon.DaemonRunnerWithAgent;
+import com.github.upthewaterspout.fates.core.threading.daemon.SerializableCallable;
+
+/**
+ * A harness that explores a test in several separate JVMs at the same time.
+ *
+ * The test is first run in a single JVM until the unexplored thread orderings can be split into
+ * several disjoint prefixes of decisions. Each prefix is then explored exhaustively with a
+ * {@link DepthFirstExplorer} in whichever JVM is free next. There are more prefixes than JVMs, so
+ * that a JVM that finishes a small part of the test can pick up more work.
+ *
+ * Because the prefixes are explored with a depth first search, any explorer configured on
+ * the {@link Fates} instance is not used.
+ */
+public class ParallelHarness implements Harness {
+  private static final int PREFIXES_PER_WORKER = 4;
+
+  private final int parallelism;
+
+  public ParallelHarness(int parallelism) {
+    this.parallelism = parallelism;
+    RemoteHarness.startDaemonPool();
+  }
+
+  @Override
+  public void runTest(List<Class<?>> atomicClasses, Fates fates,
+                      ThreadFates.MultiThreadedTest runnable) throws Throwable {
+    //A local copy, so that the callable doesn't capture this harness, which is not serializable
+    int prefixCount = parallelism * PREFIXES_PER_WORKER;
+    List<List<Object>> prefixes = DaemonRunnerWithAgent.execute(
+        () -> new LocalHarness().split(atomicClasses, fates, runnable, prefixCount),
+        RemoteHarness.AGENT_ARGS);
+
+    List<SerializableCallable<Void>> callables = new ArrayList<>();
+    for (List<Object> prefix : prefixes) {
+      callables.add(() -> {
+        fates.setExplorer(() -> new ErrorCapturingExplorer(new DepthFirstExplorer(prefix)));
+        new LocalHarness().runTest(atomicClasses, fates, runnable);
+        return null;
+      });
+    }
+
+    System.out.println("Exploring " + prefixes.size() + " prefixes in " + parallelism + " JVMs");
+    DaemonRunnerWithAgent.executeInParallel(callables, RemoteHarness.AGENT_ARGS, parallelism);
+  }
+}
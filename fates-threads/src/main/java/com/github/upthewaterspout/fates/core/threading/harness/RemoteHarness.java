@@ -16,20 +16,81 @@
 
 package com.github.upthewaterspout.fates.core.threading.harness;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.github.upthewaterspout.fates.core.states.Fates;
 import com.github.upthewaterspout.fates.core.threading.ThreadFates;
 import com.github.upthewaterspout.fates.core.threading.daemon.DaemonRunnerWithAgent;
+import com.github.upthewaterspout.fates.core.threading.daemon.SerializableCallable;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.ExecutionProfile;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
 
 public class RemoteHarness implements  Harness {
+  /**
+   * The atomic classes are passed to the agent when each test runs, so all tests share daemons
+   * launched without any agent arguments.
+   */
+  static final String AGENT_ARGS = "";
+
+  /**
+   * System property with the number of separate JVMs to start in the background as soon as the
+   * first harness is created, see {@link #startDaemonPool(int)}
+   */
+  public static final String DAEMON_POOL_PROPERTY = "fates.daemonPool";
+
+  private static boolean poolStarted;
+
+  public RemoteHarness() {
+    startDaemonPool();
+  }
+
   public void runTest(List<Class<?>> atomicClasses, Fates fates,
                              ThreadFates.MultiThreadedTest runnable) throws Throwable {
-    String agentArgs = atomicClasses.stream().map(Class::getName).collect(Collectors.joining(","));
     DaemonRunnerWithAgent.execute(() -> {
       new LocalHarness().runTest(atomicClasses, fates, runnable);
       return null;
-    }, agentArgs);
+    }, AGENT_ARGS);
+  }
+
+  /**
+   * Start the number of JVMs configured with {@link #DAEMON_POOL_PROPERTY}, the first time
+   * this is called.
+   */
+  static synchronized void startDaemonPool() {
+    if (!poolStarted) {
+      poolStarted = true;
+      startDaemonPool(Integer.getInteger(DAEMON_POOL_PROPERTY, 0));
+    }
+  }
+
+  /**
+   * Start launching separate JVMs in the background, so that tests don't have to wait for a JVM to
+   * start. Each JVM runs a trivial test once before it is used, so that the
+   * scheduler's classes are loaded and instrumented ahead of time. This returns immediately.
+   *
+   * @param count the number of JVMs to keep warm. {@link ParallelHarness} uses as many JVMs as its
+   * parallelism. With 0, nothing is started and JVMs are not warmed up, so the first test doesn't
+   * wait for a warm up.
+   */
+  public static void startDaemonPool(int count) {
+    if (count > 0) {
+      DaemonRunnerWithAgent.prestart(AGENT_ARGS, count, warmUp());
+    }
+  }
+
+  private static SerializableCallable<Void> warmUp() {
+    return () -> {
+      //A profile that is being recorded would be saved after the warm up test, before any of
+      //the real tests have run
+      ExecutionProfile profile = FatesAgent.getProfile();
+      if (profile == null || !profile.isRecording()) {
+        //Fates classes are not instrumented, so the test only uses instrumented JDK classes
+        new LocalHarness().runTest(Collections.emptyList(), new Fates(),
+            () -> new ConcurrentHashMap<>().put("warm", "up"));
+      }
+      return null;
+    };
   }
 }
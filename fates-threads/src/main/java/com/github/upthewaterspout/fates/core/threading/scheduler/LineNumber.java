@@ -35,6 +35,14 @@ class LineNumber {
     this.lineNumber = lineNumber;
   }
 
+  /**
+   * @return true if this is the given line of the given method
+   */
+  boolean isAt(String className, String methodName, int lineNumber) {
+    return this.lineNumber == lineNumber && Objects.equals(this.className, className)
+        && Objects.equals(this.methodName, methodName);
+  }
+
   @Override
   public String toString() {
     return  className + "." + methodName + "(" + getShortClassName()
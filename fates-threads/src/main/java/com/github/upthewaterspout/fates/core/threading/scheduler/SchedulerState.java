@@ -17,11 +17,12 @@
 package com.github.upthewaterspout.fates.core.threading.scheduler;
 
 import com.github.upthewaterspout.fates.core.states.Decider;
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.Operation;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Keeps track of all of the state related to thread scheduling - which threads
@@ -43,13 +44,18 @@ class SchedulerState {
 
   public void newThread(Thread thread, Thread parent) {
     threadMapping.newThread(thread, parent);
-    threadState.newThread(thread);
+    threadState.newThread(thread, threadMapping.getThreadID(thread));
   }
 
   /**
-   * Last visited line number
+   * Last visited line number. This is recorded on every field access, so it is kept
+   * in separate fields and only turned into a {@link LineNumber} when a decision is made.
+   * See {@link ThreadState.Slot#getLineNumber(String, String, int)}
    */
-  private LineNumber lastLineNumber = new LineNumber("", "java.lang.Thread", "run", 0);
+  private Thread lastThread;
+  private String lastClassName = "java.lang.Thread";
+  private String lastMethodName = "run";
+  private int lastLineNumber;
 
   public SchedulerState(Decider decider) {
     this.decider = decider;
@@ -70,6 +76,14 @@ class SchedulerState {
     return threadState.isRunning(thread);
   }
 
+  /**
+   * Get the slot holding the state of the given thread, which the thread can use to wait
+   * until it is running.
+   */
+  ThreadState.Slot getSlot(Thread thread) {
+    return threadState.getSlot(thread);
+  }
+
 
   public Thread park(final Thread thread) {
     verifyThread(thread);
@@ -116,10 +130,18 @@ class SchedulerState {
 
     threadState.checkForUnscheduledThread();
 
-    ThreadID scheduledThreadID = decider.decide(lastLineNumber, threadState.getUnscheduledThreads().map(threadMapping::getThreadID).collect(
-        Collectors.toSet()));
-    Thread scheduledThread = threadMapping.getThread(scheduledThreadID);
-    threadState.resume(scheduledThread);
+    List<ThreadID> unscheduledThreads = threadState.getUnscheduledThreads();
+    int choice = decider.decideIndex(getLastLineNumber(), unscheduledThreads);
+    if(choice < 0 || choice >= unscheduledThreads.size()) {
+      throw new IllegalStateException("Decider chose " + choice + ", which is not one of the "
+          + unscheduledThreads.size() + " unscheduled threads");
+    }
+    ThreadState.Slot scheduled = threadState.getUnscheduledSlot(choice);
+    Thread scheduledThread = scheduled.getThread();
+    threadState.resume(scheduled);
+    //Once resumed, the thread's next operation is unknown until it reaches another scheduling point
+    scheduled.getThreadID().setNextOperation(null);
+    scheduled.getThreadID().setUnreportedEffects(false);
     Collection<Thread> blockedThreads = synchronizationTracker.threadResumed(scheduledThread);
     threadState.block(blockedThreads);
 
@@ -179,7 +201,44 @@ class SchedulerState {
 
   public void setLineNumber(Thread currentThread, String className, String methodName,
                             int lineNumber) {
-    this.lastLineNumber = new LineNumber(currentThread.getName(), className, methodName, lineNumber);
+    this.lastThread = currentThread;
+    this.lastClassName = className;
+    this.lastMethodName = methodName;
+    this.lastLineNumber = lineNumber;
+  }
+
+  private LineNumber getLastLineNumber() {
+    ThreadState.Slot slot = lastThread == null ? null : threadState.findSlot(lastThread);
+    if(slot == null) {
+      String threadName = lastThread == null ? "" : lastThread.getName();
+      return new LineNumber(threadName, lastClassName, lastMethodName, lastLineNumber);
+    }
+    return slot.getLineNumber(lastClassName, lastMethodName, lastLineNumber);
+  }
+
+  /**
+   * Record the operation a thread will perform when it is next scheduled
+   */
+  public void setNextOperation(Thread thread, Operation operation) {
+    getThreadID(thread).setNextOperation(operation);
+  }
+
+  /**
+   * Record that a thread did something since it was last scheduled that was not described by
+   * the operation it reported
+   */
+  public void unreportedEffects(Thread thread) {
+    verifyThread(thread);
+    getThreadID(thread).setUnreportedEffects(true);
+  }
+
+  /**
+   * Get the id of a thread, without looking it up in the {@link ThreadMapping} if it is
+   * still running.
+   */
+  private ThreadID getThreadID(Thread thread) {
+    ThreadState.Slot slot = threadState.findSlot(thread);
+    return slot == null ? threadMapping.getThreadID(thread) : slot.getThreadID();
   }
 
   public boolean isInterrupted(Thread thread, boolean clearInterrupt) {
@@ -192,7 +251,7 @@ class SchedulerState {
   }
 
   private void verifyThread(Thread thread) {
-    if(!threadMapping.hasThread(thread)) {
+    if(!threadState.hasThread(thread) && !threadMapping.hasThread(thread)) {
       throw new IllegalStateException("Scheduler was asked to handle untracked thread " + thread);
     }
 
@@ -32,6 +32,12 @@ import java.util.Map.Entry;
  */
 public class SynchronizationTracker<THREAD> {
   private final Map<Object, MonitorInfo<THREAD>> monitors = new IdentityHashMap<>();
+  /**
+   * The monitor each thread is waiting for, either to acquire it or to be notified. This lets
+   * {@link #threadResumed(Object)} and {@link #interrupt(Object)} go straight to the thread's
+   * monitor rather than looking through all of them.
+   */
+  private final Map<THREAD, Object> waitingOn = new HashMap<>();
 
   /**
    * Indicate that a thread is trying to get a monitor.
@@ -48,6 +54,7 @@ public class SynchronizationTracker<THREAD> {
     }
 
     if(currentHolder.owner == null) {
+      waitingOn.remove(currentThread);
       currentHolder.setOwner(currentThread);
       Integer depth = currentHolder.waitingForMonitor.remove(currentThread);
       if(depth != null) {
@@ -62,6 +69,7 @@ public class SynchronizationTracker<THREAD> {
     }
 
     currentHolder.waitingForMonitor.put(currentThread, 1);
+    waitingOn.put(currentThread, sync);
     return Collections.singleton(currentThread);
   }
 
@@ -94,6 +102,7 @@ public class SynchronizationTracker<THREAD> {
 
     monitorInfo.drainPendingNotifies();
     monitorInfo.waitingForNotify.put(currentThread, monitorInfo.depth);
+    waitingOn.put(currentThread, sync);
     monitorInfo.depth = 0;
     monitorInfo.owner = null;
     return monitorInfo.waitingForMonitor.keySet();
@@ -133,12 +142,10 @@ public class SynchronizationTracker<THREAD> {
    * @param scheduledThread The thread that is resumed
    */
   public Collection<THREAD> threadResumed(final THREAD scheduledThread) {
-    for(Entry<Object, MonitorInfo<THREAD>> entry : monitors.entrySet()) {
-      MonitorInfo<THREAD> monitor = entry.getValue();
-      Object object = entry.getKey();
-      if (monitor.waitingForMonitor.containsKey(scheduledThread)) {
-        return monitorEnter(scheduledThread, object);
-      }
+    Object sync = waitingOn.get(scheduledThread);
+    MonitorInfo<THREAD> monitor = sync == null ? null : monitors.get(sync);
+    if(monitor != null && monitor.waitingForMonitor.containsKey(scheduledThread)) {
+      return monitorEnter(scheduledThread, sync);
     }
     return Collections.emptySet();
   }
@@ -149,18 +156,19 @@ public class SynchronizationTracker<THREAD> {
    * @return true if the thread is still blocked (due to other threads owning the monitor)
    */
   public boolean interrupt(THREAD threadID) {
-    for(Entry<Object, MonitorInfo<THREAD>> entry : monitors.entrySet()) {
-      Object object = entry.getKey();
-      MonitorInfo<THREAD> monitor = entry.getValue();
+    Object sync = waitingOn.get(threadID);
+    if(sync == null) {
+      return false;
+    }
 
-      Integer depth = monitor.waitingForNotify.remove(threadID);
-      if(depth != null) {
-        monitor.waitingForMonitor.put(threadID, depth);
-        if (monitor.owner == null) {
-          return false;
-        } else {
-          return true;
-        }
+    MonitorInfo<THREAD> monitor = monitors.get(sync);
+    Integer depth = monitor == null ? null : monitor.waitingForNotify.remove(threadID);
+    if(depth != null) {
+      monitor.waitingForMonitor.put(threadID, depth);
+      if (monitor.owner == null) {
+        return false;
+      } else {
+        return true;
       }
     }
 
@@ -16,8 +16,12 @@
 
 package com.github.upthewaterspout.fates.core.threading.scheduler;
 
+import java.io.Serializable;
 import java.util.Objects;
 
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.Actor;
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.Operation;
+
 /**
  * A unique identifier for a thread. This thread id is designed
  * such that it will be consistent between runs of a test. The uniquely
@@ -40,12 +44,31 @@ import java.util.Objects;
  *
  * This ensures repeatability of thread ids between runs of the test,
  * whereas the thread name may change between runs.
+ *
+ * A thread id also describes the operation the thread is about to perform, if it is known, so that
+ * explorers that understand {@link Actor} can skip orderings of independent operations.
+ *
+ * Thread ids are serializable so that decisions can be passed between JVMs, for example to
+ * explore parts of a test in parallel.
  */
-public class ThreadID {
+public class ThreadID implements Actor, Serializable {
+  /**
+   * The id that was computed for this class before it was declared, so that checkpoints saved by
+   * earlier versions can still be loaded
+   */
+  private static final long serialVersionUID = 250982477246984900L;
+
   private int childCount;
   private final ThreadID parent;
   private final int childNumber;
   private final String name;
+  /**
+   * Cached, because computing the hash code walks up the chain of parents. Transient, so that
+   * the serialized form, and ids saved in existing checkpoints, are unchanged.
+   */
+  private transient int hashCode;
+  private transient Operation nextOperation;
+  private transient boolean unreportedEffects;
 
   private ThreadID(String name, ThreadID parent, int childNumber) {
     this.childNumber = childNumber;
@@ -58,18 +81,39 @@ public class ThreadID {
     return new ThreadID(thread.getName(), parent, childNumber);
   }
 
+  @Override
+  public Operation getNextOperation() {
+    return nextOperation;
+  }
+
+  void setNextOperation(Operation nextOperation) {
+    this.nextOperation = nextOperation;
+  }
+
+  @Override
+  public boolean hadUnreportedEffects() {
+    return unreportedEffects;
+  }
+
+  void setUnreportedEffects(boolean unreportedEffects) {
+    this.unreportedEffects = unreportedEffects;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     ThreadID threadID = (ThreadID) o;
-    return childNumber == threadID.childNumber &&
+    return childNumber == threadID.childNumber && hashCode() == threadID.hashCode() &&
         Objects.equals(parent, threadID.parent);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(parent, childNumber);
+    if (hashCode == 0) {
+      hashCode = Objects.hash(parent, childNumber);
+    }
+    return hashCode;
   }
 
   public String toString() {
@@ -24,10 +24,6 @@ class ThreadMapping {
    * All threads in this run
    */
   private final Map<Thread, ThreadID> threadtoID = new HashMap<Thread, ThreadID>();
-  /**
-   * All threads in this run
-   */
-  private final Map<ThreadID, Thread> idToThread = new HashMap<ThreadID, Thread>();
 
   public ThreadMapping() {
   }
@@ -43,11 +39,6 @@ class ThreadMapping {
   void newThread(Thread thread, Thread parent) {
     ThreadID threadID = ThreadID.create(thread, threadtoID.get(parent));
     threadtoID.put(thread, threadID);
-    idToThread.put(threadID, thread);
-  }
-
-  Thread getThread(ThreadID scheduledThreadID) {
-    return idToThread.get(scheduledThreadID);
   }
 
   boolean hasThread(Thread thread) {
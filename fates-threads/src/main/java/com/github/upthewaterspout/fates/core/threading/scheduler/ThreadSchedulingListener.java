@@ -16,11 +16,11 @@
 
 package com.github.upthewaterspout.fates.core.threading.scheduler;
 
-import java.util.*;
-import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.github.upthewaterspout.fates.core.states.Decider;
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.Operation;
 import com.github.upthewaterspout.fates.core.threading.event.ExecutionEventListener;
 import com.github.upthewaterspout.fates.core.threading.instrument.monitor.DefaultMonitorControl;
 import com.github.upthewaterspout.fates.core.threading.instrument.monitor.MonitorControl;
@@ -31,26 +31,33 @@ import com.github.upthewaterspout.fates.core.threading.instrument.monitor.Monito
  * does the majority of the work to control which threads are actually running.
  *
  * This class mostly manages concurrency control of the actual thread calls. Each
- * thread when it enters this class with either be allowed to proceed or forced to wait on
- * a {@link Condition}. Only one thread is allowed to proceed at a time. If the test ordering calls
- * for a change of threads, the existing thread will notify the newly scheduled thread and then
- * block itself on it's on {@link Condition}
+ * thread when it enters this class with either be allowed to proceed or forced to wait.
+ * Only one thread is allowed to proceed at a time. If the test ordering calls
+ * for a change of threads, the existing thread passes the baton directly to the newly scheduled
+ * thread by unparking it, and then parks itself until it's own state in {@link ThreadState}
+ * says it is running again. Waiting threads do not hold or reacquire the lock.
  *
  * All state related to tracking threads and deciding what threads should be scheduled belongs in
  * {@link SchedulerState}
  */
 public class ThreadSchedulingListener implements ExecutionEventListener {
-  private final SchedulerState schedulerState;
+  /**
+   * The location name used to describe acquiring a monitor as an {@link Operation}
+   */
+  private static final String MONITOR = "<monitor>";
 
   /**
-   * A lock used to guard the state of this scheduler
+   * Packages that update fields through Unsafe, which is not visible as a field
+   * access. Field accesses from these packages are reported as unknown operations.
    */
-  private final ReentrantLock lock = new ReentrantLock();
+  private static final String[] UNSAFE_PACKAGES = {"java.util.concurrent.", "sun.", "jdk.internal."};
+
+  private final SchedulerState schedulerState;
 
   /**
-   * A condition for each thread, used to have threads wait if they are not currently scheduled
+   * A lock used to guard the state of this scheduler
    */
-  private final Map<Thread, Condition> threadConditions = new HashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
 
   /**
    * An interface for controlling java object monitors. This is usually just a wrapper around
@@ -76,9 +83,7 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
   public void begin() {
     lock.lock();
     try {
-      Thread currentThread = Thread.currentThread();
-      threadConditions.put(currentThread, lock.newCondition());
-      schedulerState.newThread(currentThread, null);
+      schedulerState.newThread(Thread.currentThread(), null);
     } finally {
       lock.unlock();
     }
@@ -92,7 +97,6 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
   public void beforeThreadStart(final Thread thread) {
     lock.lock();
     try {
-      threadConditions.put(thread, lock.newCondition());
       schedulerState.newThread(thread, Thread.currentThread());
     } finally {
       lock.unlock();
@@ -116,7 +120,9 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
     lock.lock();
     try {
       Thread nextThread = schedulerState.threadTerminated(Thread.currentThread());
-      notify(nextThread);
+      if(nextThread != null) {
+        LockSupport.unpark(nextThread);
+      }
     } finally {
       lock.unlock();
     }
@@ -129,8 +135,7 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
   public void beforeGetField(Object owner, String fieldName, String className,
                              String methodName,
                              int lineNumber) {
-    schedulerState.setLineNumber(Thread.currentThread(), className, methodName, lineNumber);
-    yield();
+    yield(fieldOperation(owner, fieldName, className, false), className, methodName, lineNumber);
   }
 
   /**
@@ -141,13 +146,36 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
                              String className,
                              String methodName,
                              int lineNumber) {
-    schedulerState.setLineNumber(Thread.currentThread(), className, methodName, lineNumber);
-    yield();
+    yield(fieldOperation(owner, fieldName, className, true), className, methodName, lineNumber);
+  }
+
+  private static Operation fieldOperation(Object owner, String fieldName, String className,
+                                          boolean write) {
+    for (String unsafePackage : UNSAFE_PACKAGES) {
+      if (className.startsWith(unsafePackage)) {
+        return null;
+      }
+    }
+    return write ? Operation.write(owner, fieldName) : Operation.read(owner, fieldName);
   }
 
+  /**
+   * Before an array element is changed, record that the current thread did something that is
+   * not described by the operation it reported when it was scheduled.
+   */
+  @Override
+  public void beforeSetArrayElement(Object array, Object value) {
+    unreportedEffects();
+  }
+
+  /**
+   * Only called when the current thread enters an atomic section, see
+   * {@link com.github.upthewaterspout.fates.core.threading.event.AtomicMethodListener}. Whatever
+   * the section does is not reported, so record that.
+   */
   @Override
   public void beforeMethod(String className, String methodName) {
-    //Do nothing
+    unreportedEffects();
   }
 
   @Override
@@ -155,18 +183,53 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
     //Do nothing
   }
 
+  private void unreportedEffects() {
+    lock.lock();
+    try {
+      schedulerState.unreportedEffects(Thread.currentThread());
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /**
    * Potentially yield the current thread and switch to a new thread
    */
   protected void yield() {
+    yield(null);
+  }
+
+  /**
+   * Potentially yield the current thread and switch to a new thread
+   * @param nextOperation the operation the current thread will perform next, or null if
+   * it is not known
+   */
+  private void yield(Operation nextOperation) {
+    yield(nextOperation, null, null, 0);
+  }
+
+  /**
+   * Potentially yield the current thread and switch to a new thread
+   * @param nextOperation the operation the current thread will perform next, or null if
+   * it is not known
+   * @param className the class of the current line, or null to keep the last line number
+   * @param methodName the method of the current line
+   * @param lineNumber the current line number
+   */
+  private void yield(Operation nextOperation, String className, String methodName,
+                     int lineNumber) {
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.chooseNextThread(Thread.currentThread());
-      notify(nextThread);
-      waitToBeScheduled();
+      if(className != null) {
+        schedulerState.setLineNumber(Thread.currentThread(), className, methodName, lineNumber);
+      }
+      schedulerState.setNextOperation(Thread.currentThread(), nextOperation);
+      slot = passTo(schedulerState.chooseNextThread(Thread.currentThread()));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
   }
 
   /**
@@ -176,14 +239,14 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
   public void replacePark(
       ExecutionEventListener defaultAction,
       Object blocker) {
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.park(Thread.currentThread());
-      notify(nextThread);
-      waitToBeScheduled();
+      slot = passTo(schedulerState.park(Thread.currentThread()));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
   }
 
   /**
@@ -217,14 +280,14 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
     if(thread == null) {
       return;
     }
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.unpark(thread);
-      notify(nextThread);
-      waitToBeScheduled();
+      slot = passTo(schedulerState.unpark(thread));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
   }
 
   /**
@@ -233,15 +296,15 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
    */
   @Override
   public void beforeSynchronization(final Object sync) {
-    yield();
+    yield(Operation.write(sync, MONITOR));
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.monitorEnter(Thread.currentThread(), sync);
-      notify(nextThread);
-      waitToBeScheduled();
+      slot = passTo(schedulerState.monitorEnter(Thread.currentThread(), sync));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
   }
 
   /**
@@ -250,14 +313,14 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
    */
   @Override
   public void afterSynchronization(final Object sync) {
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.monitorExit(Thread.currentThread(), sync);
-      notify(nextThread);
-      waitToBeScheduled();
+      slot = passTo(schedulerState.monitorExit(Thread.currentThread(), sync));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
 
   }
 
@@ -283,15 +346,15 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
 
         return;
       }
+      ThreadState.Slot slot;
       lock.lock();
       try {
-        Thread nextThread = schedulerState.wait(Thread.currentThread(), sync);
-        notify(nextThread);
-        waitToBeScheduled();
-        checkInterrupt(Thread.currentThread());
+        slot = passTo(schedulerState.wait(Thread.currentThread(), sync));
       } finally {
         lock.unlock();
       }
+      slot.awaitRunning();
+      checkInterrupt(Thread.currentThread());
     } finally {
       monitorControl.monitorEnter(sync);
     }
@@ -314,19 +377,26 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
       waitForTimeout(timeout);
       return;
     }
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.join(Thread.currentThread(), thread);
-      notify(nextThread);
-      waitToBeScheduled();
-      checkInterrupt(Thread.currentThread());
+      slot = passTo(schedulerState.join(Thread.currentThread(), thread));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
+    checkInterrupt(Thread.currentThread());
   }
 
   private void checkInterrupt(Thread currentThread) throws InterruptedException {
-    if(schedulerState.isInterrupted(currentThread, true)) {
+    boolean interrupted;
+    lock.lock();
+    try {
+      interrupted = schedulerState.isInterrupted(currentThread, true);
+    } finally {
+      lock.unlock();
+    }
+    if(interrupted) {
       throw new InterruptedException();
     }
   }
@@ -358,47 +428,31 @@ public class ThreadSchedulingListener implements ExecutionEventListener {
   }
 
   /**
-   * Notify a thread to be scheduled
+   * Pass the baton to the thread chosen by the scheduler, if that is not the current thread.
+   * Must be called while holding the lock.
+   *
+   * @param scheduledThread the newly scheduled thread, or null if no new thread was scheduled
+   * @return the slot of the current thread, which should be used to wait to be scheduled
+   * after releasing the lock.
    */
-  private void notify(Thread scheduledThread) {
-    if(scheduledThread == null) {
-      return;
-    }
-    lock.lock();
-    try {
-      Condition condition = threadConditions.get(scheduledThread);
-      condition.signalAll();
-    } finally {
-      lock.unlock();
-    }
-  }
-
-  /**
-   * Wait to be scheduled in a thread
-   */
-  private void waitToBeScheduled() {
-    lock.lock();
-    try {
-      Thread currentThread = Thread.currentThread();
-      Condition condition = threadConditions.get(currentThread);
-      while (!schedulerState.running(currentThread)) {
-        condition.awaitUninterruptibly();
-      }
-    } finally {
-      lock.unlock();
+  private ThreadState.Slot passTo(Thread scheduledThread) {
+    Thread currentThread = Thread.currentThread();
+    if(scheduledThread != null && scheduledThread != currentThread) {
+      LockSupport.unpark(scheduledThread);
     }
+    return schedulerState.getSlot(currentThread);
   }
 
   public void replaceInterrupt(ExecutionEventListener defaultAction, Thread thread) {
     yield();
+    ThreadState.Slot slot;
     lock.lock();
     try {
-      Thread nextThread = schedulerState.interrupt(thread);
-      notify(nextThread);
-      waitToBeScheduled();
+      slot = passTo(schedulerState.interrupt(thread));
     } finally {
       lock.unlock();
     }
+    slot.awaitRunning();
   }
 
   @Override
@@ -16,9 +16,16 @@
 
 package com.github.upthewaterspout.fates.core.threading.scheduler;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Stream;
 
 /**
@@ -28,12 +35,69 @@ import java.util.stream.Stream;
  *
  * Additional state about the thread (like what monitor it is blocked on) is managed by other
  * classes such as {@link SynchronizationTracker} as another layer built on top of this.
+ *
+ * The state of each thread is kept in a {@link Slot}. Updates to the slots are guarded by
+ * {@link ThreadSchedulingListener}, but a thread waiting to be scheduled can watch its own
+ * slot without holding any lock.
+ *
+ * Each slot has a small index, which is reused once its thread terminates. The threads in
+ * each state are also kept in a bit set of those indexes, so that finding the running or
+ * unscheduled threads doesn't have to look at every thread.
+ *
+ * Most events come from the running thread, one after another, so the slot that was looked up
+ * last is kept to avoid looking up the thread again.
  */
 class ThreadState {
-  private final Map<Thread,State> threadStates = new HashMap<>();
+  private final Map<Thread,Slot> threadStates = new HashMap<>();
+  private final List<Slot> slots = new ArrayList<>();
+  private final BitSet freeIndexes = new BitSet();
+  private final BitSet running = new BitSet();
+  private final BitSet blocked = new BitSet();
+  private final BitSet unscheduled = new BitSet();
+  private final UnscheduledThreads unscheduledThreads = new UnscheduledThreads();
+  private Slot lastSlot;
+
+  void newThread(Thread thread, ThreadID threadID) {
+    int index = freeIndexes.nextSetBit(0);
+    if(index < 0) {
+      index = slots.size();
+      slots.add(null);
+    } else {
+      freeIndexes.clear(index);
+    }
+    Slot slot = new Slot(thread, threadID, index);
+    slots.set(index, slot);
+    running.set(index);
+    threadStates.put(thread, slot);
+    if(lastSlot != null && lastSlot.thread == thread) {
+      lastSlot = slot;
+    }
+  }
 
-  void newThread(Thread thread) {
-    threadStates.put(thread, State.RUNNING);
+  /**
+   * Get the slot holding the state of the given thread
+   */
+  Slot getSlot(Thread thread) {
+    Slot slot = findSlot(thread);
+    if(slot == null) {
+      throw new IllegalStateException("Unable to find state for untracked thread " + thread);
+    }
+    return slot;
+  }
+
+  /**
+   * Get the slot holding the state of the given thread, or null if the thread is not tracked
+   */
+  Slot findSlot(Thread thread) {
+    Slot slot = lastSlot;
+    if(slot != null && slot.thread == thread) {
+      return slot;
+    }
+    slot = threadStates.get(thread);
+    if(slot != null) {
+      lastSlot = slot;
+    }
+    return slot;
   }
 
   void block(final Thread thread) {
@@ -44,33 +108,70 @@ class ThreadState {
     setState(thread, State.UNSCHEDULED);
   }
 
-  void resume(Thread thread) {
-    setState(thread, State.RUNNING);
+  void resume(Slot slot) {
+    setState(slot, State.RUNNING);
   }
 
   private void setState(Thread thread, State state) {
-    if(threadStates.containsKey(thread)) {
-      threadStates.put(thread, state);
+    Slot slot = findSlot(thread);
+    if(slot != null) {
+      setState(slot, state);
     }
   }
 
+  private void setState(Slot slot, State state) {
+    getThreadsInState(slot.state).clear(slot.index);
+    getThreadsInState(state).set(slot.index);
+    slot.state = state;
+  }
+
   void terminate(Thread thread) {
-    threadStates.remove(thread);
+    Slot slot = threadStates.remove(thread);
+    if(slot != null) {
+      if(lastSlot == slot) {
+        lastSlot = null;
+      }
+      getThreadsInState(slot.state).clear(slot.index);
+      slots.set(slot.index, null);
+      freeIndexes.set(slot.index);
+    }
   }
 
-  Stream<Thread> getUnscheduledThreads() {
-    return getThreadsInState(State.UNSCHEDULED);
+  /**
+   * Get the ids of the unscheduled threads, from the highest slot index to the lowest, so that a
+   * thread that was just started usually comes before the thread that started it. The returned
+   * list is a view that is reused by the next call, so it should not be kept.
+   */
+  List<ThreadID> getUnscheduledThreads() {
+    unscheduledThreads.update();
+    return unscheduledThreads;
   }
 
-  private Stream<Thread> getThreadsInState(State state) {
-    return threadStates.entrySet().stream()
-        .filter(entry -> entry.getValue().equals(state))
-        .map(Map.Entry::getKey);
+  /**
+   * Get the slot of an unscheduled thread, by its position in the list returned by the last
+   * call to {@link #getUnscheduledThreads()}
+   */
+  Slot getUnscheduledSlot(int position) {
+    return unscheduledThreads.getSlot(position);
   }
 
+  private BitSet getThreadsInState(State state) {
+    switch(state) {
+      case RUNNING:
+        return running;
+      case BLOCKED:
+        return blocked;
+      default:
+        return unscheduled;
+    }
+  }
+
+  private Stream<Thread> getThreads(BitSet indexes) {
+    return indexes.stream().mapToObj(index -> slots.get(index).thread);
+  }
 
   boolean hasRunningThread() {
-    return getThreadsInState(State.RUNNING).findAny().isPresent();
+    return !running.isEmpty();
   }
 
   /**
@@ -78,37 +179,156 @@ class ThreadState {
    * @throws IllegalStateException if there are no unscheduled theads.
    */
   void checkForUnscheduledThread() {
-    if(!getUnscheduledThreads().findAny().isPresent()) {
+    if(unscheduled.isEmpty()) {
 
       StringBuilder builder = new StringBuilder();
       builder.append("Deadlock detected, all threads are blocked. Thread dumps: \n");
-      builder.append(ThreadUtils.getStackTraces(getThreadsInState(State.BLOCKED)));
+      builder.append(ThreadUtils.getStackTraces(getThreads(blocked)));
       throw new IllegalStateException(builder.toString());
     }
   }
 
   void block(final Collection<Thread> blockedThreads) {
-    blockedThreads.stream().forEach(this::block);
+    for(Thread thread : blockedThreads) {
+      block(thread);
+    }
   }
 
   void unblock(Collection<Thread> unblockedThreads) {
-    unblockedThreads.stream().forEach(this::unblock);
+    for(Thread thread : unblockedThreads) {
+      unblock(thread);
+    }
   }
 
   boolean isRunning(Thread thread) {
-    return State.RUNNING.equals(threadStates.get(thread));
+    return getState(thread) == State.RUNNING;
   }
 
   public boolean isBlocked(Thread thread) {
-    return State.BLOCKED.equals(threadStates.get(thread));
+    return getState(thread) == State.BLOCKED;
   }
 
   public boolean isUnscheduled(Thread thread) {
-    return State.UNSCHEDULED.equals(threadStates.get(thread));
+    return getState(thread) == State.UNSCHEDULED;
   }
 
   public boolean hasThread(Thread thread) {
-    return threadStates.containsKey(thread);
+    return findSlot(thread) != null;
+  }
+
+  private State getState(Thread thread) {
+    Slot slot = findSlot(thread);
+    return slot == null ? null : slot.state;
+  }
+
+  /**
+   * A read only list of the ids of the unscheduled threads, which is filled in from the
+   * bit set of unscheduled threads when a decision is made.
+   */
+  private class UnscheduledThreads extends AbstractList<ThreadID> implements RandomAccess {
+    private int[] indexes = new int[8];
+    private int size;
+
+    private void update() {
+      size = 0;
+      for(int i = unscheduled.length() - 1; i >= 0; i = unscheduled.previousSetBit(i - 1)) {
+        if(size == indexes.length) {
+          indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        indexes[size++] = i;
+      }
+    }
+
+    private Slot getSlot(int position) {
+      if(position < 0 || position >= size) {
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+      }
+      return slots.get(indexes[position]);
+    }
+
+    @Override
+    public ThreadID get(int position) {
+      return getSlot(position).threadID;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      for(int position = 0; position < size; position++) {
+        if(slots.get(indexes[position]).threadID.equals(o)) {
+          return position;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * The state of a single thread.
+   */
+  static class Slot {
+    /**
+     * The number of line numbers cached by each slot, which must be a power of two
+     */
+    private static final int LINE_NUMBER_CACHE_SIZE = 64;
+
+    private final Thread thread;
+    private final ThreadID threadID;
+    private final int index;
+    private volatile State state = State.RUNNING;
+    private LineNumber[] lineNumbers;
+
+    private Slot(Thread thread, ThreadID threadID, int index) {
+      this.thread = thread;
+      this.threadID = threadID;
+      this.index = index;
+    }
+
+    Thread getThread() {
+      return thread;
+    }
+
+    ThreadID getThreadID() {
+      return threadID;
+    }
+
+    /**
+     * Get a line number visited by this thread. Line numbers are cached by location, so a thread
+     * that keeps visiting the same lines doesn't create a new line number for each decision.
+     */
+    LineNumber getLineNumber(String className, String methodName, int lineNumber) {
+      if(lineNumbers == null) {
+        lineNumbers = new LineNumber[LINE_NUMBER_CACHE_SIZE];
+      }
+      int bucket = (className.hashCode() * 31 + lineNumber) & (LINE_NUMBER_CACHE_SIZE - 1);
+      LineNumber cached = lineNumbers[bucket];
+      if(cached == null || !cached.isAt(className, methodName, lineNumber)) {
+        cached = new LineNumber(thread.getName(), className, methodName, lineNumber);
+        lineNumbers[bucket] = cached;
+      }
+      return cached;
+    }
+
+    /**
+     * Wait, without holding any locks, until the thread owning this slot is running. Must
+     * be called by the thread owning this slot.
+     */
+    void awaitRunning() {
+      boolean interrupted = false;
+      while(state != State.RUNNING) {
+        LockSupport.park(this);
+        if(Thread.interrupted()) {
+          interrupted = true;
+        }
+      }
+      if(interrupted) {
+        thread.interrupt();
+      }
+    }
   }
 
   public static enum State {
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.daemon;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class DaemonHealthTest {
+  private static final long MB = 1024 * 1024;
+
+  private final DaemonHealth health = new DaemonHealth(80 * MB, 100 * MB, 50 * MB, 100 * MB,
+      200 * MB);
+
+  @Test
+  public void healthyDaemonShouldNotBeRetired() {
+    assertThat(health.getRetireReason(10, 0.9, 0.9, 300, 100)).isNull();
+  }
+
+  @Test
+  public void zeroLimitsShouldBeIgnored() {
+    assertThat(health.getRetireReason(10, 0, 0, 0, 0)).isNull();
+  }
+
+  @Test
+  public void heapOverLimitShouldRetireDaemon() {
+    assertThat(health.getRetireReason(10, 0.7, 0.9, 300, 100)).contains("heap");
+  }
+
+  @Test
+  public void codeCacheOverLimitShouldRetireDaemon() {
+    assertThat(health.getRetireReason(10, 0.9, 0.4, 300, 100)).contains("code cache");
+  }
+
+  @Test
+  public void metaspaceOverLimitShouldRetireDaemon() {
+    assertThat(health.getRetireReason(10, 0.9, 0.9, 100, 100)).contains("metaspace");
+  }
+
+  @Test
+  public void tooManyCallsShouldRetireDaemon() {
+    assertThat(health.getRetireReason(100, 0.9, 0.9, 300, 100)).contains("limit of 100 calls");
+  }
+
+  @Test
+  public void measureShouldFindCurrentJVMUsage() {
+    assertThat(DaemonHealth.measure().getRetireReason(0, 1, 1, 0, 0)).isNull();
+  }
+}
@@ -16,7 +16,13 @@
 
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import org.junit.Test;
 
@@ -43,4 +49,51 @@ public class DaemonRunnerTest {
 
     runner.destroy();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void executeShouldThrowExceptionFromJVM() throws Throwable {
+    DaemonRunner runner = new DaemonRunner();
+
+    assertThatThrownBy(() -> runner.execute(() -> {
+      throw new IllegalArgumentException("failed");
+    })).isInstanceOf(IllegalArgumentException.class).hasMessage("failed");
+    assertEquals("test", runner.execute(() -> "test"));
+
+    runner.destroy();
+  }
+
+  @Test
+  public void executeShouldFailIfJVMExits() throws Throwable {
+    DaemonRunner runner = new DaemonRunner();
+
+    assertThatThrownBy(() -> runner.execute(() -> {
+      System.exit(3);
+      return null;
+    })).isInstanceOf(IllegalStateException.class).hasMessageContaining("status 3");
+
+    runner.destroy();
+  }
+
+  @Test
+  public void destroyShouldLetJVMExitNormally() throws Throwable {
+    DaemonRunner runner = new DaemonRunner();
+    File exitedFile = Files.createTempFile("DaemonRunnerTest", "exited").toFile();
+    exitedFile.delete();
+    String exited = exitedFile.getPath();
+
+    runner.execute(() -> {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          new File(exited).createNewFile();
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+      return null;
+    });
+    runner.destroy();
+
+    assertTrue(exitedFile.exists());
+    exitedFile.delete();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.daemon;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class DaemonTest {
+
+  @Test(timeout = 30000)
+  public void runReturnsWhenConnectionClosesDuringACall() throws IOException {
+    ByteArrayOutputStream request = new ByteArrayOutputStream();
+    DaemonProtocol.write(new DataOutputStream(request), DaemonProtocol.CALL,
+        (SerializableCallable<Object>) () -> {
+          new CountDownLatch(1).await();
+          return null;
+        });
+
+    //The input ends while the callable is still blocked
+    new Daemon(new ByteArrayInputStream(request.toByteArray()), new ByteArrayOutputStream()).run();
+  }
+
+  @Test(timeout = 30000)
+  public void runSendsResultOfCall() throws Exception {
+    ByteArrayOutputStream request = new ByteArrayOutputStream();
+    DaemonProtocol.write(new DataOutputStream(request), DaemonProtocol.CALL,
+        (SerializableCallable<Object>) () -> "result");
+    CountDownLatch responded = new CountDownLatch(1);
+    ByteArrayOutputStream response = new ByteArrayOutputStream() {
+      @Override
+      public void flush() {
+        responded.countDown();
+      }
+    };
+    //Only close the input once the response has been sent
+    InputStream endAfterResponse = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        try {
+          responded.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        return -1;
+      }
+    };
+
+    new Daemon(new SequenceInputStream(new ByteArrayInputStream(request.toByteArray()),
+        endAfterResponse), response).run();
+
+    DaemonProtocol.Message message = DaemonProtocol.read(
+        new DataInputStream(new ByteArrayInputStream(response.toByteArray())));
+    assertEquals(DaemonProtocol.RESULT, message.type);
+    assertEquals("result", message.getPayload());
+  }
+}
@@ -19,6 +19,7 @@ package com.github.upthewaterspout.fates.core.threading.event;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -72,6 +73,19 @@ public class AtomicMethodListenerTest {
     verify(delegate).beforeGetField("owner", "any", CLASS_NAME, "method", 5);
   }
 
+  @Test
+  public void onlyTheOutermostAtomicMethodIsPassedOn() {
+    scheduler.beforeMethod("other", "method");
+    scheduler.beforeMethod(CLASS_NAME, "outer");
+    scheduler.beforeMethod(CLASS_NAME, "inner");
+    scheduler.afterMethod(CLASS_NAME, "inner");
+    scheduler.afterMethod(CLASS_NAME, "outer");
+    scheduler.afterMethod("other", "method");
+    verify(delegate).beforeMethod(CLASS_NAME, "outer");
+    verify(delegate).afterMethod(CLASS_NAME, "outer");
+    verifyNoMoreInteractions(delegate);
+  }
+
   @Test
   public void beforeMethodShouldPreventBeforeGetFieldCallForNamedInnerClass() {
     scheduler.beforeMethod(InnerClass.class.getName(), "someMethod");
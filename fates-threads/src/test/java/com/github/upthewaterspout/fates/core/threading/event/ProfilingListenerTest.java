@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.ExecutionProfile;
+import org.junit.Test;
+
+public class ProfilingListenerTest {
+
+  public ExecutionEventListener delegate = mock(ExecutionEventListener.class);
+
+  @Test
+  public void recordsClassesAndPassesEventsOn() throws IOException {
+    ExecutionProfile profile = ExecutionProfile.load(new File("does-not-exist.profile"));
+    ProfilingListener listener = new ProfilingListener(delegate, profile);
+
+    listener.beforeMethod("MethodClass", "method");
+    listener.beforeGetField("owner", "field", "GetClass", "method", 5);
+    listener.beforeSetField("owner", null, "field", "SetClass", "method", 6);
+
+    assertEquals(new HashSet<>(Arrays.asList("MethodClass", "GetClass", "SetClass")),
+        profile.getClasses());
+    verify(delegate).beforeMethod("MethodClass", "method");
+    verify(delegate).beforeGetField("owner", "field", "GetClass", "method", 5);
+    verify(delegate).beforeSetField("owner", null, "field", "SetClass", "method", 6);
+  }
+}
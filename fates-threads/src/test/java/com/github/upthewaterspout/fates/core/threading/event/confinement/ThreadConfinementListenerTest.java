@@ -83,6 +83,30 @@ public class ThreadConfinementListenerTest {
     verify(delegate).beforeGetField(object, "any", "any", "any", 0);
   }
 
+  @Test
+  public void listenerElidesSetToThreadConfinedArray() {
+    Object[] array = new Object[1];
+    listener.afterNew(array);
+    listener.beforeSetArrayElement(array, "value");
+    verify(delegate).afterNew(array);
+    verifyNoMoreInteractions(delegate);
+  }
+
+  @Test
+  public void objectBecomesSharedAfterSetOnSharedArray() {
+    Object object = new Object();
+    Object[] sharedArray = new Object[1];
+    listener.afterNew(object);
+
+    //Publish the object by adding it to a shared array
+    listener.beforeSetArrayElement(sharedArray, object);
+    verify(delegate).beforeSetArrayElement(sharedArray, object);
+
+    //After the object is published, events should be passed on
+    listener.beforeGetField(object, "any", "any", "any", 0);
+    verify(delegate).beforeGetField(object, "any", "any", "any", 0);
+  }
+
   @Test
   public void nestedConfinedObjectIsNotShared() {
     Object object = new Object();
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.upthewaterspout.fates.core.threading.harness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.junit.Test;
+
+public class AgentAttacherTest {
+
+  @Test
+  public void findsJarContainingClassFile() throws MalformedURLException {
+    File jar = new File("some dir/agent.jar").getAbsoluteFile();
+    URL classFile = new URL("jar:" + jar.toURI() + "!/com/example/Example.class");
+
+    assertEquals(jar, AgentAttacher.getJarFile(classFile));
+  }
+
+  @Test
+  public void classFileOutsideJarHasNoJar() throws MalformedURLException {
+    assertNull(AgentAttacher.getJarFile(new File("Example.class").toURI().toURL()));
+    assertNull(AgentAttacher.getJarFile(null));
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.core.threading.harness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+import org.junit.Test;
+
+public class LocalHarnessTest {
+
+  @Test
+  public void lambdaIsNamedAfterItsMethod() {
+    ThreadFates.MultiThreadedTest test = () -> {};
+    assertTrue(LocalHarness.getTestName(test).startsWith(
+        LocalHarnessTest.class.getName() + ".lambda$lambdaIsNamedAfterItsMethod$"));
+  }
+
+  @Test
+  public void classIsNamedAfterItself() {
+    assertEquals(NamedTest.class.getName(), LocalHarness.getTestName(new NamedTest()));
+  }
+
+  private static class NamedTest implements ThreadFates.MultiThreadedTest {
+    @Override
+    public void run() {
+    }
+  }
+}
@@ -21,6 +21,11 @@ import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFi
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -112,6 +117,29 @@ public class SchedulerStateTest {
     assertTrue(state.running(thread1));
   }
 
+  @Test
+  public void threadStartedAfterAnotherTerminatesIsScheduled(){
+    Decider decider = new DepthFirstExplorer();
+    SchedulerState state = new SchedulerState(decider);
+
+    Thread thread1 = new Thread();
+    Thread thread2 = new Thread();
+    Thread thread3 = new Thread();
+
+    state.newThread(thread1, null);
+    state.newThread(thread2, thread1);
+    assertEquals(null, state.chooseNextThread(thread1));
+    assertEquals(thread1, state.threadTerminated(thread2));
+
+    state.newThread(thread3, thread1);
+    assertEquals(null, state.chooseNextThread(thread1));
+    assertTrue(state.running(thread3));
+    assertFalse(state.running(thread2));
+    assertTrue(state.threadState.isUnscheduled(thread1));
+    assertEquals(thread1, state.threadTerminated(thread3));
+    assertTrue(state.running(thread1));
+  }
+
   @Test
   public void eventsForUntrackedThreadsDoNotCorruptState() {
     Decider decider = mock(Decider.class);
@@ -167,4 +195,80 @@ public class SchedulerStateTest {
     assertFalse(state.running(thread1));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void unreportedEffectsAreClearedWhenTheThreadIsScheduled() {
+    DepthFirstExplorer decider = new DepthFirstExplorer();
+    SchedulerState state = new SchedulerState(decider);
+    Thread thread1 = new Thread();
+    state.newThread(thread1, null);
+    ThreadID id = state.threadMapping.getThreadID(thread1);
+
+    state.unreportedEffects(thread1);
+    assertTrue(id.hadUnreportedEffects());
+
+    state.chooseNextThread(thread1);
+    assertFalse(id.hadUnreportedEffects());
+  }
+
+  @Test
+  public void theChosenIndexSchedulesThatThread() {
+    List<List<Object>> offered = new ArrayList<>();
+    SchedulerState state = new SchedulerState(new IndexDecider(1, offered, new ArrayList<>()));
+    Thread thread1 = new Thread();
+    Thread thread2 = new Thread();
+    state.newThread(thread1, null);
+    state.newThread(thread2, thread1);
+
+    assertNull(state.chooseNextThread(thread1));
+    assertEquals(thread1, state.chooseNextThread(thread2));
+    assertEquals(Arrays.asList(state.threadMapping.getThreadID(thread2),
+        state.threadMapping.getThreadID(thread1)), offered.get(0));
+    assertTrue(state.running(thread1));
+  }
+
+  @Test
+  public void decisionsAtTheSameLineShareALineNumber() {
+    List<Object> labels = new ArrayList<>();
+    SchedulerState state = new SchedulerState(new IndexDecider(0, new ArrayList<>(), labels));
+    Thread thread1 = new Thread("thread1");
+    state.newThread(thread1, null);
+
+    state.setLineNumber(thread1, "Foo", "bar", 1);
+    state.chooseNextThread(thread1);
+    state.setLineNumber(thread1, "Foo", "bar", 2);
+    state.chooseNextThread(thread1);
+    state.setLineNumber(thread1, "Foo", "bar", 1);
+    state.chooseNextThread(thread1);
+
+    assertSame(labels.get(0), labels.get(2));
+    assertNotEquals(labels.get(0), labels.get(1));
+    assertEquals("Foo.bar(Foo.java:1)(thread1)", labels.get(0).toString());
+  }
+
+  /**
+   * A decider that always chooses the same index, and records what it was offered
+   */
+  private static class IndexDecider implements Decider {
+    private final int choice;
+    private final List<List<Object>> offered;
+    private final List<Object> labels;
+
+    private IndexDecider(int choice, List<List<Object>> offered, List<Object> labels) {
+      this.choice = choice;
+      this.offered = offered;
+      this.labels = labels;
+    }
+
+    @Override
+    public <K> K decide(Object label, Set<K> options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <K> int decideIndex(Object label, List<K> options) {
+      offered.add(new ArrayList<>(options));
+      labels.add(label);
+      return choice;
+    }
+  }
+}
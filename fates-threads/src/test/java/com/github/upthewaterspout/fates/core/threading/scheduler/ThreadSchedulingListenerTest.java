@@ -22,13 +22,20 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.lang.Thread.State;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.upthewaterspout.fates.core.states.Decider;
 import com.github.upthewaterspout.fates.core.states.StateExplorer;
 import com.github.upthewaterspout.fates.core.states.explorers.depthfirst.DepthFirstExplorer;
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.PartialOrderReductionExplorer;
 import com.github.upthewaterspout.fates.core.threading.instrument.monitor.MonitorControl;
 import org.junit.Test;
 
@@ -289,6 +296,121 @@ public class ThreadSchedulingListenerTest {
     }
   }
 
+  @Test(timeout=30000)
+  public void yieldShouldHandOffToParkedThread() throws InterruptedException {
+    Thread mainThread = Thread.currentThread();
+    ScriptedDecider decider = new ScriptedDecider(mainThread.getName(), "T1");
+    ThreadSchedulingListener scheduler = new ThreadSchedulingListener(decider);
+    scheduler.begin();
+
+    List<String> events = new CopyOnWriteArrayList<>();
+    Thread t1 = startThread(scheduler, "T1", () -> {
+      Threads.waitUntilState(mainThread, EnumSet.of(State.WAITING));
+      //Hands control back to the main thread and parks until the main thread hands it back
+      scheduler.yield();
+      events.add("T1");
+      scheduler.beforeThreadExit();
+    });
+
+    scheduler.yield();
+    Threads.waitUntilState(t1, EnumSet.of(State.WAITING));
+    events.add("main");
+    scheduler.yield();
+    events.add("main");
+    t1.join();
+    assertEquals(Arrays.asList("main", "T1", "main"), events);
+  }
+
+  @Test(timeout=30000)
+  public void threadUnparkedBeforeItHasStartedShouldRun() throws InterruptedException {
+    Thread mainThread = Thread.currentThread();
+    ScriptedDecider decider = new ScriptedDecider("T1", "T1");
+    ThreadSchedulingListener scheduler = new ThreadSchedulingListener(decider);
+    scheduler.begin();
+
+    AtomicBoolean ran = new AtomicBoolean();
+    Thread t1 = startThread(scheduler, "T1", () -> {
+      //By the time the main thread is waiting, it has already handed off to this thread
+      Threads.waitUntilState(mainThread, EnumSet.of(State.WAITING));
+      scheduler.yield();
+      ran.set(true);
+      scheduler.beforeThreadExit();
+    });
+
+    scheduler.replaceUnpark(null, t1);
+    scheduler.yield();
+    assertTrue(ran.get());
+    t1.join();
+  }
+
+  @Test(timeout=30000)
+  public void interruptWhileWaitingToBeScheduledShouldBePreserved() throws InterruptedException {
+    Thread mainThread = Thread.currentThread();
+    ScriptedDecider decider = new ScriptedDecider(mainThread.getName(), "T1");
+    ThreadSchedulingListener scheduler = new ThreadSchedulingListener(decider);
+    scheduler.begin();
+
+    AtomicBoolean wasInterrupted = new AtomicBoolean();
+    Thread t1 = startThread(scheduler, "T1", () -> {
+      Threads.waitUntilState(mainThread, EnumSet.of(State.WAITING));
+      scheduler.yield();
+      wasInterrupted.set(Thread.currentThread().isInterrupted());
+      scheduler.beforeThreadExit();
+    });
+
+    scheduler.yield();
+    Threads.waitUntilState(t1, EnumSet.of(State.WAITING));
+    //Interrupt T1 directly rather than through the scheduler. It should keep waiting
+    //until it is scheduled, and still be interrupted afterwards
+    t1.interrupt();
+    Thread.sleep(100);
+    assertEquals(State.WAITING, t1.getState());
+    scheduler.yield();
+    t1.join();
+    assertTrue(wasInterrupted.get());
+  }
+
+  @Test(timeout=300000)
+  public void partialOrderReductionShouldSkipOrderingsOfIndependentWrites() throws InterruptedException {
+    Object owner1 = new Object();
+    Object owner2 = new Object();
+
+    int exhaustive = countIterationsWritingFields(new DepthFirstExplorer(), owner1, owner2);
+    int independent = countIterationsWritingFields(new PartialOrderReductionExplorer(), owner1, owner2);
+    int conflicting = countIterationsWritingFields(new PartialOrderReductionExplorer(), owner1, owner1);
+
+    assertTrue(independent < exhaustive);
+    assertTrue(independent < conflicting);
+  }
+
+  private int countIterationsWritingFields(StateExplorer explorer, Object owner1, Object owner2)
+      throws InterruptedException {
+    int iterations = 0;
+    while(!explorer.isCompletelyTested()) {
+      iterations++;
+      ThreadSchedulingListener scheduler = new ThreadSchedulingListener(explorer);
+      scheduler.begin();
+
+      Thread t1 = startThread(scheduler, "T1", () -> {
+        scheduler.beforeSetField(owner1, null, "field", "Test", "run", 1);
+        scheduler.beforeSetField(owner1, null, "field", "Test", "run", 2);
+        scheduler.beforeThreadExit();
+      });
+      Thread t2 = startThread(scheduler, "T2", () -> {
+        scheduler.beforeSetField(owner2, null, "field", "Test", "run", 1);
+        scheduler.beforeSetField(owner2, null, "field", "Test", "run", 2);
+        scheduler.beforeThreadExit();
+      });
+
+      scheduler.replaceJoin(null, t1, 0, 0);
+      scheduler.replaceJoin(null, t2, 0, 0);
+      t1.join();
+      t2.join();
+      explorer.done();
+    }
+    return iterations;
+  }
+
   private void markCurrentThreadAsDone(final ThreadSchedulingListener scheduler) {
     try {
       scheduler.beforeThreadExit();
@@ -304,4 +426,30 @@ public class ThreadSchedulingListenerTest {
     return newThread;
   }
 
+  /**
+   * A decider that chooses threads by name, in the given order. Once the names run out, it
+   * only accepts a single option.
+   */
+  private static class ScriptedDecider implements Decider {
+    private final Queue<String> threadNames;
+
+    private ScriptedDecider(String... threadNames) {
+      this.threadNames = new ArrayDeque<>(Arrays.asList(threadNames));
+    }
+
+    @Override
+    public <K> K decide(Object label, Set<K> options) {
+      if (threadNames.isEmpty() && options.size() == 1) {
+        return options.iterator().next();
+      }
+      String threadName = threadNames.remove();
+      for (K option : options) {
+        if (option.toString().startsWith(threadName + "[")) {
+          return option;
+        }
+      }
+      throw new IllegalStateException("No thread named " + threadName + " in " + options);
+    }
+  }
+
 }
\ No newline at end of file
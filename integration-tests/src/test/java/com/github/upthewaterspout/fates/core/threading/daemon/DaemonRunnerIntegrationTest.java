@@ -16,7 +16,18 @@
 
 package com.github.upthewaterspout.fates.core.threading.daemon;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import com.github.upthewaterspout.fates.core.threading.instrument.ExecutionEventSingleton;
 import org.junit.Test;
@@ -27,4 +38,122 @@ public class DaemonRunnerIntegrationTest {
   public void executeShouldHaveAgentEnabled() throws Throwable {
     assertEquals(true, DaemonRunnerWithAgent.execute(ExecutionEventSingleton::isAvailable, ""));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void executeInParallelShouldReturnResultsInOrder() throws Throwable {
+    List<SerializableCallable<Integer>> callables = Arrays.asList(() -> 1, () -> 2, () -> 3);
+    assertEquals(Arrays.asList(1, 2, 3),
+        DaemonRunnerWithAgent.executeInParallel(callables, "", 2));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void executeInParallelShouldThrowFailures() throws Throwable {
+    List<SerializableCallable<Integer>> callables = Arrays.asList(() -> 1, () -> {
+      throw new IllegalStateException();
+    });
+    DaemonRunnerWithAgent.executeInParallel(callables, "", 2);
+  }
+
+  /*
+   * The tests below use their own agent arguments, naming classes that don't exist, so that
+   * each of them gets its own pool of JVMs.
+   */
+
+  @Test
+  public void executeShouldReusePrestartedJVM() throws Throwable {
+    String agentArgs = getClass().getName() + "$Prestarted";
+    DaemonRunnerWithAgent.prestart(agentArgs, 1, DaemonRunnerIntegrationTest::countWarmUp);
+
+    assertEquals(null, DaemonRunnerWithAgent.execute(
+        () -> System.setProperty("DaemonRunnerIntegrationTest", "test"), agentArgs));
+    assertEquals("test", DaemonRunnerWithAgent.execute(
+        () -> System.getProperty("DaemonRunnerIntegrationTest"), agentArgs));
+    assertEquals(Integer.valueOf(1), DaemonRunnerWithAgent.execute(
+        () -> Integer.getInteger(WARM_UPS), agentArgs));
+  }
+
+  @Test
+  public void warmUpShouldRunOnceInEachNewJVM() throws Throwable {
+    String agentArgs = getClass().getName() + "$Replaced";
+    DaemonRunnerWithAgent.prestart(agentArgs, 1, DaemonRunnerIntegrationTest::countWarmUp);
+    assertEquals(Integer.valueOf(1), DaemonRunnerWithAgent.execute(
+        () -> Integer.getInteger(WARM_UPS), agentArgs));
+
+    //Kill the JVM, so that it is replaced by a new one
+    assertThatThrownBy(() -> DaemonRunnerWithAgent.execute(() -> {
+      System.exit(3);
+      return null;
+    }, agentArgs)).isInstanceOf(IllegalStateException.class);
+
+    assertEquals(null, DaemonRunnerWithAgent.execute(
+        () -> System.getProperty("DaemonRunnerIntegrationTest"), agentArgs));
+    assertEquals(Integer.valueOf(1), DaemonRunnerWithAgent.execute(
+        () -> Integer.getInteger(WARM_UPS), agentArgs));
+  }
+
+  @Test
+  public void failedLaunchShouldBeReplaced() throws Throwable {
+    String agentArgs = getClass().getName() + "$FailedLaunch";
+    File failWarmUp = File.createTempFile("DaemonRunnerIntegrationTest", "");
+    String failWarmUpPath = failWarmUp.getAbsolutePath();
+    try {
+      DaemonRunnerWithAgent.prestart(agentArgs, 1, () -> {
+        if (new File(failWarmUpPath).exists()) {
+          throw new IllegalStateException("Warm up failed");
+        }
+        return null;
+      });
+      assertThatThrownBy(() -> DaemonRunnerWithAgent.execute(() -> "test", agentArgs))
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessageContaining("Error warming up");
+    } finally {
+      failWarmUp.delete();
+    }
+
+    assertEquals("test", DaemonRunnerWithAgent.execute(() -> "test", agentArgs));
+  }
+
+  @Test
+  public void waitingForALaunchShouldNotBlockOtherThreads() throws Throwable {
+    String agentArgs = getClass().getName() + "$SlowLaunch";
+    File slowWarmUp = File.createTempFile("DaemonRunnerIntegrationTest", "");
+    String slowWarmUpPath = slowWarmUp.getAbsolutePath();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      DaemonRunnerWithAgent.prestart(agentArgs, 1, () -> {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (new File(slowWarmUpPath).exists() && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        return null;
+      });
+      Future<String> result = executor.submit(() -> {
+        try {
+          return DaemonRunnerWithAgent.execute(() -> "test", agentArgs);
+        } catch (Throwable t) {
+          throw new IllegalStateException(t);
+        }
+      });
+      //Give the executor time to start waiting for the launch
+      Thread.sleep(1000);
+
+      //Prestarting other JVMs should not wait for the slow launch above
+      long start = System.currentTimeMillis();
+      DaemonRunnerWithAgent.prestart(getClass().getName() + "$OtherLaunch", 0, null);
+      assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(30));
+      assertFalse(result.isDone());
+
+      slowWarmUp.delete();
+      assertEquals("test", result.get());
+    } finally {
+      slowWarmUp.delete();
+      executor.shutdownNow();
+    }
+  }
+
+  private static final String WARM_UPS = "DaemonRunnerIntegrationTest.warmUps";
+
+  private static Object countWarmUp() {
+    return System.setProperty(WARM_UPS, String.valueOf(Integer.getInteger(WARM_UPS, 0) + 1));
+  }
+}
@@ -69,6 +69,11 @@ public class InstrumentationAgentTest implements Serializable {
         fieldAccesses.incrementAndGet();
       }
 
+      @Override
+      public void beforeSetArrayElement(Object array, Object value) {
+        //do nothing
+      }
+
       @Override
       public void beforeMethod(String className, String methodName) {
         //do nothing
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.integrationtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+import com.github.upthewaterspout.fates.core.threading.daemon.DaemonRunnerWithAgent;
+import com.github.upthewaterspout.fates.core.threading.daemon.SerializableCallable;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
+import com.github.upthewaterspout.fates.executor.ParallelExecutor;
+import org.junit.Test;
+
+/**
+ * Tests that run in a separate JVM with {@link FatesAgent#DYNAMIC_PROPERTY} set. Each test uses
+ * its own agent arguments, naming a class that doesn't exist, so that it gets its own JVM rather
+ * than one launched by other tests without the property.
+ */
+public class DynamicInstrumentationIntegrationTest {
+
+  @Test(timeout = Constants.TIMEOUT)
+  public void shouldNotHangOnSynchronizedMethods() throws Throwable {
+    int iterations = executeWithDynamicInstrumentation(
+        DynamicInstrumentationIntegrationTest::incrementInParallel,
+        getClass().getName() + "$SynchronizedMethods");
+
+    //Both orders of the increments should have been run
+    assertTrue("Only ran " + iterations + " iterations", iterations > 1);
+  }
+
+  private static <V> V executeWithDynamicInstrumentation(SerializableCallable<V> callable,
+                                                         String agentArgs) throws Throwable {
+    System.setProperty(FatesAgent.DYNAMIC_PROPERTY, "true");
+    try {
+      return DaemonRunnerWithAgent.execute(callable, agentArgs);
+    } finally {
+      System.clearProperty(FatesAgent.DYNAMIC_PROPERTY);
+    }
+  }
+
+  private static Integer incrementInParallel() throws Exception {
+    AtomicInteger iterations = new AtomicInteger();
+    try {
+      new ThreadFates().run(() -> {
+        iterations.incrementAndGet();
+        SynchronizedCounter counter = new SynchronizedCounter();
+        new ParallelExecutor<Integer>()
+            .inParallel("updater1", counter::increment)
+            .inParallel("updater2", counter::increment)
+            .run();
+
+        assertEquals(2, counter.get());
+      });
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+    return iterations.get();
+  }
+
+  private static class SynchronizedCounter {
+    private int count;
+
+    public synchronized Integer increment() {
+      count++;
+      return count;
+    }
+
+    public synchronized int get() {
+      return count;
+    }
+  }
+}
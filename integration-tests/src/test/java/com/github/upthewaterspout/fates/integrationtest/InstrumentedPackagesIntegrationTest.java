@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Dan Smith
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.upthewaterspout.fates.integrationtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+import com.github.upthewaterspout.fates.core.threading.daemon.DaemonRunnerWithAgent;
+import com.github.upthewaterspout.fates.core.threading.instrument.agent.FatesAgent;
+import com.github.upthewaterspout.fates.executor.ParallelExecutor;
+import org.junit.Test;
+
+/**
+ * Tests that run in a separate JVM with {@link FatesAgent#INSTRUMENTED_PACKAGES_PROPERTY} set to
+ * this package and the {@link ParallelExecutor}. The test uses its own agent arguments, naming a class that doesn't exist, so that
+ * it gets its own JVM rather than one launched by other tests without the property.
+ */
+public class InstrumentedPackagesIntegrationTest {
+
+  @Test(timeout = Constants.TIMEOUT)
+  public void shouldNotHangWhenUninstrumentedCodeCallsBackWithAMonitorHeld() throws Throwable {
+    System.setProperty(FatesAgent.INSTRUMENTED_PACKAGES_PROPERTY,
+        getClass().getPackage().getName() + "," + ParallelExecutor.class.getPackage().getName());
+    try {
+      DaemonRunnerWithAgent.execute(InstrumentedPackagesIntegrationTest::putInParallel,
+          getClass().getName() + "$InstrumentedPackages");
+    } finally {
+      System.clearProperty(FatesAgent.INSTRUMENTED_PACKAGES_PROPERTY);
+    }
+  }
+
+  private static Void putInParallel() throws Exception {
+    try {
+      new ThreadFates().run(() -> {
+        //The synchronized map holds its monitor while it calls the keys' hashCode
+        Map<Key, Integer> map = Collections.synchronizedMap(new HashMap<>());
+        new ParallelExecutor<Integer>()
+            .inParallel("put1", () -> map.put(new Key(1), 1))
+            .inParallel("put2", () -> map.put(new Key(2), 2))
+            .run();
+
+        assertEquals(2, map.size());
+      });
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+    return null;
+  }
+
+  private static class Key {
+    //Read by hashCode, so that the scheduler can switch threads in it
+    private static int offset = 0;
+
+    private final int value;
+
+    private Key(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value + offset;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && ((Key) other).value == value;
+    }
+  }
+}
@@ -18,8 +18,11 @@ package com.github.upthewaterspout.fates.integrationtest;
 
 import static org.junit.Assert.assertEquals;
 
+import com.github.upthewaterspout.fates.core.states.explorers.partialorder.PartialOrderReductionExplorer;
+import com.github.upthewaterspout.fates.core.states.explorers.preemption.PreemptionBoundedExplorer;
 import com.github.upthewaterspout.fates.executor.ParallelExecutor;
 import com.github.upthewaterspout.fates.core.threading.ThreadFates;
+import com.github.upthewaterspout.fates.core.threading.daemon.DaemonRunnerWithAgent;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -46,6 +49,132 @@ public class UnsynchronizedUpdateTest {
     });
   }
 
+  @Test()
+  public void shouldFailOnUnsynchronizedUpdateWithPartialOrderReduction() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    new ThreadFates().setExplorer(PartialOrderReductionExplorer::new).run(() -> {
+      UnsynchronizedUpdate updater = new UnsynchronizedUpdate();
+      new ParallelExecutor<Integer>()
+          .inParallel("updater1", updater::update)
+          .inParallel("updater2", updater::update)
+          .run();
+
+      assertEquals(2, updater.getValue());
+    });
+  }
+
+  @Test()
+  public void shouldFailOnUnsynchronizedArrayUpdateWithPartialOrderReduction() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    new ThreadFates().setExplorer(PartialOrderReductionExplorer::new).run(() -> {
+      UnsynchronizedArrayUpdate updater = new UnsynchronizedArrayUpdate();
+      new ParallelExecutor<Integer>()
+          .inParallel("updater1", updater::update)
+          .inParallel("updater2", updater::update)
+          .run();
+
+      assertEquals(2, updater.getValue());
+    });
+  }
+
+  @Test()
+  public void shouldFailOnUnsynchronizedUpdateWithOnePreemption() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    new ThreadFates().setExplorer(() -> new PreemptionBoundedExplorer(1)).run(() -> {
+      UnsynchronizedUpdate updater = new UnsynchronizedUpdate();
+      new ParallelExecutor<Integer>()
+          .inParallel("updater1", updater::update)
+          .inParallel("updater2", updater::update)
+          .run();
+
+      assertEquals(2, updater.getValue());
+    });
+  }
+
+  @Test()
+  public void shouldFailOnUnsynchronizedUpdateInParallel() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    new ThreadFates().setParallelism(2).run(() -> {
+      UnsynchronizedUpdate updater = new UnsynchronizedUpdate();
+      new ParallelExecutor<Integer>()
+          .inParallel("updater1", updater::update)
+          .inParallel("updater2", updater::update)
+          .run();
+
+      assertEquals(2, updater.getValue());
+    });
+  }
+
+  @Test()
+  public void shouldFailOnUnsynchronizedUpdateWithWorkerThreads() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    //Run the harness inside a JVM with the agent, so that it uses worker threads
+    DaemonRunnerWithAgent.execute(() -> {
+      try {
+        new ThreadFates().setParallelism(2).run(() -> {
+          UnsynchronizedUpdate updater = new UnsynchronizedUpdate();
+          new ParallelExecutor<Integer>()
+              .inParallel("updater1", updater::update)
+              .inParallel("updater2", updater::update)
+              .run();
+
+          assertEquals(2, updater.getValue());
+        });
+      } catch (Exception | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+      return null;
+    }, "");
+  }
+
+  @Test()
+  public void shouldFailOnUnsynchronizedUpdateWithSnapshot() throws Throwable {
+    expectedException.expect(AssertionError.class);
+    new ThreadFates().run(new UnsynchronizedUpdateFromSnapshot());
+  }
+
+  private static class UnsynchronizedUpdateFromSnapshot
+      implements ThreadFates.MultiThreadedSnapshotTest<UnsynchronizedUpdate> {
+
+    @Override
+    public UnsynchronizedUpdate setUp() {
+      return new UnsynchronizedUpdate();
+    }
+
+    @Override
+    public UnsynchronizedUpdate restore(UnsynchronizedUpdate snapshot) {
+      UnsynchronizedUpdate copy = new UnsynchronizedUpdate();
+      copy.field = snapshot.field;
+      return copy;
+    }
+
+    @Override
+    public void run(UnsynchronizedUpdate updater) throws Exception {
+      new ParallelExecutor<Integer>()
+          .inParallel("updater1", updater::update)
+          .inParallel("updater2", updater::update)
+          .run();
+
+      assertEquals(2, updater.getValue());
+    }
+  }
+
+  private static class UnsynchronizedArrayUpdate {
+    int[] values = new int[1];
+
+    public int update() {
+      int old = values[0];
+      values[0] = old + 1;
+      return values[0];
+    }
+
+    public int getValue() {
+      return values[0];
+    }
+  }
+
   private static class UnsynchronizedUpdate {
     int field = 0;
 